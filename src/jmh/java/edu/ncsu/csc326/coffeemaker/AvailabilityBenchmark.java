@@ -0,0 +1,84 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Refreshing a menu board: asking the inventory about every recipe
+ * against reading the availability bitset, and what keeping the
+ * bitset costs an order.  Recipes need 1 to 8 units of each
+ * ingredient, and the stock is refilled to 400 whenever an order
+ * finds it short, so recipes keep dropping off and coming back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AvailabilityBenchmark {
+
+	@Param({"10", "100", "500"})
+	public int recipes;
+
+	/** Whether the availability index is kept while ordering */
+	@Param({"false", "true"})
+	public boolean indexed;
+
+	private Inventory inventory;
+	private CoffeeMaker coffeeMaker;
+
+	@Setup
+	public void setUp() {
+		inventory = new Inventory();
+		coffeeMaker = new CoffeeMaker(new RecipeBook(), inventory);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int i = 0; i < recipes; i++) {
+			int[] amounts = new int[Inventory.INGREDIENTS];
+			for (int j = 0; j < amounts.length; j++) {
+				amounts[j] = 1 + random.nextInt(8);
+			}
+			coffeeMaker.addRecipe(Recipe.restore("Recipe " + i, 50, amounts));
+		}
+		if (indexed) {
+			coffeeMaker.getAvailability();
+		}
+	}
+
+	@Benchmark
+	public int scanMenu() {
+		int available = 0;
+		for (Recipe recipe : coffeeMaker.getRecipes()) {
+			if (recipe != null && inventory.enoughIngredients(recipe)) {
+				available++;
+			}
+		}
+		return available;
+	}
+
+	@Benchmark
+	public int readBitset() {
+		return coffeeMaker.getAvailability().count();
+	}
+
+	@Benchmark
+	public int makeCoffee() {
+		int change = coffeeMaker.makeCoffee(ThreadLocalRandom.current().nextInt(recipes), 50);
+		if (change == 50) {
+			coffeeMaker.tryAddInventory(400, 400, 400, 400);
+		}
+		return change;
+	}
+}
@@ -0,0 +1,92 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Working out change at checkout: the {@link CoinChanger} tables
+ * against solving the bounded coin problem from scratch for every
+ * order.  Tubes hold 5, 10, 25 and 100 coins; the change asked for is
+ * a random multiple of 5 up to maxChange.  dispense puts the coins
+ * back afterwards, so it also pays for rebuilding the tables twice.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChangeBenchmark {
+	private static final int[] COINS = {5, 10, 25, 100};
+
+	@Param({"100", "500"})
+	public int maxChange;
+
+	@Param({"5", "50"})
+	public int coinsPerTube;
+
+	private CoinChanger changer;
+	private int[] counts;
+
+	@Setup
+	public void setUp() {
+		changer = new CoinChanger(COINS, maxChange);
+		counts = new int[COINS.length];
+		for (int i = 0; i < COINS.length; i++) {
+			changer.deposit(COINS[i], coinsPerTube);
+			counts[i] = coinsPerTube;
+		}
+	}
+
+	@Benchmark
+	public boolean canMakeChange() {
+		return changer.canMakeChange(amount());
+	}
+
+	@Benchmark
+	public int[] dispense() {
+		int[] coins = changer.dispense(amount());
+		if (coins != null) {
+			changer.giveBack(coins);
+		}
+		return coins;
+	}
+
+	@Benchmark
+	public int solveAtCheckout() {
+		return fewestCoins(counts, amount());
+	}
+
+	private int amount() {
+		return 5 * ThreadLocalRandom.current().nextInt(maxChange / 5 + 1);
+	}
+
+	/** Bounded coin change by plain dynamic programming, every call. */
+	private static int fewestCoins(int[] counts, int amount) {
+		int none = Integer.MAX_VALUE / 2;
+		int[] fewest = new int[amount + 1];
+		Arrays.fill(fewest, none);
+		fewest[0] = 0;
+		for (int i = 0; i < COINS.length; i++) {
+			for (int k = 0; k < counts[i]; k++) {
+				for (int a = amount; a >= COINS[i]; a--) {
+					fewest[a] = Math.min(fewest[a], fewest[a - COINS[i]] + 1);
+				}
+			}
+		}
+		return fewest[amount];
+	}
+}
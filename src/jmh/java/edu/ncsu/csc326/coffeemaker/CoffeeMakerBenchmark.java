@@ -0,0 +1,77 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * The customer-facing {@link CoffeeMaker} calls: ordering a beverage and
+ * polling the inventory, all threads sharing one machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoffeeMakerBenchmark {
+
+	private Inventory inventory;
+	private CoffeeMaker coffeeMaker;
+
+	@Setup
+	public void setUp() throws RecipeException {
+		Recipe recipe = new Recipe();
+		recipe.setName("Latte");
+		recipe.setPrice("100");
+		recipe.setAmtCoffee("3");
+		recipe.setAmtMilk("3");
+		recipe.setAmtSugar("1");
+
+		inventory = new Inventory();
+		coffeeMaker = new CoffeeMaker(new RecipeBook(), inventory);
+		coffeeMaker.addRecipe(recipe);
+	}
+
+	@Benchmark
+	public int makeCoffee() {
+		int change = coffeeMaker.makeCoffee(0, 100);
+		if (change == 100) {
+			inventory.setCoffee(Integer.MAX_VALUE / 2);
+			inventory.setMilk(Integer.MAX_VALUE / 2);
+			inventory.setSugar(Integer.MAX_VALUE / 2);
+		}
+		return change;
+	}
+
+	@Benchmark
+	public String checkInventory() {
+		return coffeeMaker.checkInventory();
+	}
+
+	/** What each polling dashboard keeps between polls. */
+	@State(Scope.Thread)
+	public static class Dashboard {
+		final InventorySnapshot snapshot = new InventorySnapshot();
+		final StringBuilder out = new StringBuilder(128);
+	}
+
+	@Benchmark
+	public StringBuilder checkInventorySnapshot(Dashboard dashboard) throws IOException {
+		dashboard.out.setLength(0);
+		coffeeMaker.checkInventory(dashboard.snapshot).appendTo(dashboard.out);
+		return dashboard.out;
+	}
+}
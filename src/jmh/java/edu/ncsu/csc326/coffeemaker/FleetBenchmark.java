@@ -0,0 +1,85 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Total order throughput of a fleet of independent {@link CoffeeMaker}s
+ * hosted in one JVM, with every thread ordering from a random machine.
+ *
+ * The setup also prints the approximate heap retained per machine,
+ * to compare with the figure documented on {@link CoffeeMaker}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(Threads.MAX)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FleetBenchmark {
+
+	@Param({"1", "16", "1024", "65536"})
+	public int machines;
+
+	private CoffeeMaker[] fleet;
+	private Inventory[] inventories;
+
+	@Setup
+	public void setUp() throws RecipeException {
+		Recipe recipe = new Recipe();
+		recipe.setName("Coffee");
+		recipe.setPrice("50");
+		recipe.setAmtCoffee("1");
+		recipe.setAmtMilk("1");
+
+		long before = usedHeap();
+		fleet = new CoffeeMaker[machines];
+		inventories = new Inventory[machines];
+		for (int i = 0; i < machines; i++) {
+			inventories[i] = new Inventory();
+			fleet[i] = new CoffeeMaker(new RecipeBook(), inventories[i]);
+		}
+		long after = usedHeap();
+		System.out.println("~" + (after - before) / machines + " bytes per idle machine");
+
+		for (CoffeeMaker coffeeMaker : fleet) {
+			coffeeMaker.addRecipe(recipe);
+		}
+	}
+
+	@Benchmark
+	public int makeCoffee() {
+		int machine = ThreadLocalRandom.current().nextInt(machines);
+		int change = fleet[machine].makeCoffee(0, 50);
+		if (change == 50) {
+			// Out of stock; restock this machine and keep going.
+			inventories[machine].setCoffee(15);
+			inventories[machine].setMilk(15);
+		}
+		return change;
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,90 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Routed order throughput as the fleet grows, every thread ordering
+ * through one {@link FleetRouter}.  Each machine holds five servings
+ * and the whole fleet is restocked whenever an order finds it empty,
+ * so machines run out one by one and the router has to steer orders
+ * to the ones that have not.  With more machines the orders spread
+ * over more inventory locks, so routed throughput should grow with the
+ * fleet on a multi-core host; on one core it stays flat, and no
+ * scaling has been shown yet.
+ *
+ * tryInTurn is the approach the router replaces: try makeCoffee on
+ * each machine from a random one until one serves the order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(Threads.MAX)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FleetRouterBenchmark {
+
+	@Param({"1", "4", "16", "64"})
+	public int machines;
+
+	private CoffeeMaker[] fleet;
+	private FleetRouter router;
+
+	@Setup
+	public void setUp() throws RecipeException {
+		Recipe recipe = new Recipe();
+		recipe.setName("Coffee");
+		recipe.setPrice("50");
+		recipe.setAmtCoffee("3");
+		recipe.setAmtMilk("1");
+
+		fleet = new CoffeeMaker[machines];
+		for (int i = 0; i < machines; i++) {
+			fleet[i] = new CoffeeMaker(new RecipeBook(), new Inventory());
+			fleet[i].addRecipe(recipe);
+		}
+		router = new FleetRouter(fleet);
+	}
+
+	@Benchmark
+	public int routed() {
+		int change = router.makeCoffee(0, 50);
+		if (change == 50) {
+			for (int m = 0; m < machines; m++) {
+				router.addInventory(m, 15, 15, 0, 0);
+			}
+		}
+		return change;
+	}
+
+	@Benchmark
+	public int tryInTurn() {
+		int machine = ThreadLocalRandom.current().nextInt(machines);
+		for (int tried = 0; tried < machines; tried++, machine = (machine + 1) % machines) {
+			int change = fleet[machine].makeCoffee(0, 50);
+			if (change != 50) {
+				return change;
+			}
+		}
+		for (CoffeeMaker coffeeMaker : fleet) {
+			coffeeMaker.tryAddInventory(15, 15, 0, 0);
+		}
+		return 50;
+	}
+}
@@ -0,0 +1,89 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Checking and deducting an order as more ingredients are registered.
+ * Every recipe uses the four built-in ingredients and, past those,
+ * three of the registered ones, as a drink with a milk and two syrups
+ * would.  useIngredients is the inventory's own check and deduct;
+ * checkEveryIngredient compares every registered id instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngredientsBenchmark {
+	private static final int RECIPES = 16;
+
+	@Param({"4", "16", "64"})
+	public int ingredients;
+
+	private Inventory inventory;
+	private Recipe[] recipes;
+
+	@Setup
+	public void setUp() {
+		while (Ingredients.count() < ingredients) {
+			Ingredients.register("Syrup " + Ingredients.count());
+		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		recipes = new Recipe[RECIPES];
+		for (int r = 0; r < RECIPES; r++) {
+			int[] amounts = new int[ingredients];
+			for (int i = 0; i < Inventory.INGREDIENTS; i++) {
+				amounts[i] = 1 + random.nextInt(3);
+			}
+			for (int k = 0; k < 3 && ingredients > Inventory.INGREDIENTS; k++) {
+				amounts[Inventory.INGREDIENTS + random.nextInt(ingredients - Inventory.INGREDIENTS)] = 1 + random.nextInt(3);
+			}
+			recipes[r] = Recipe.restore("Recipe " + r, 50, amounts);
+		}
+		inventory = new Inventory();
+		restock();
+	}
+
+	@Benchmark
+	public boolean useIngredients() {
+		Recipe recipe = recipes[ThreadLocalRandom.current().nextInt(RECIPES)];
+		if (inventory.useIngredients(recipe)) {
+			return true;
+		}
+		restock();
+		return false;
+	}
+
+	@Benchmark
+	public boolean checkEveryIngredient() {
+		Recipe recipe = recipes[ThreadLocalRandom.current().nextInt(RECIPES)];
+		synchronized (inventory) {
+			for (int i = 0; i < ingredients; i++) {
+				if (inventory.getUnits(i) < recipe.getAmount(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private void restock() {
+		for (int i = 0; i < ingredients; i++) {
+			inventory.setUnits(i, 30000);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Compares the synchronized {@link Inventory} with the
+ * {@link LockFreeInventory} when every thread orders from one
+ * shared inventory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(Threads.MAX)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryBenchmark {
+
+	@Param({"synchronized", "lock-free"})
+	public String mode;
+
+	private Inventory inventory;
+	private CoffeeMaker coffeeMaker;
+	private Recipe recipe;
+
+	private static final int BATCH = 16;
+	private final int[] batchRecipes = new int[BATCH];
+	private final int[] batchPaid = new int[BATCH];
+
+	@Setup
+	public void setUp() throws RecipeException {
+		inventory = "lock-free".equals(mode) ? new LockFreeInventory() : new Inventory();
+		refill();
+
+		recipe = new Recipe();
+		recipe.setName("Coffee");
+		recipe.setPrice("50");
+		recipe.setAmtCoffee("1");
+		recipe.setAmtMilk("1");
+		recipe.setAmtSugar("1");
+		recipe.setAmtChocolate("1");
+
+		RecipeBook recipeBook = new RecipeBook();
+		recipeBook.addRecipe(recipe);
+		coffeeMaker = new CoffeeMaker(recipeBook, inventory);
+		Arrays.fill(batchPaid, 50);
+	}
+
+	@Benchmark
+	public boolean useIngredients() {
+		if (inventory.useIngredients(recipe)) {
+			return true;
+		}
+		refill();
+		return false;
+	}
+
+	@Benchmark
+	public int makeCoffee() {
+		int change = coffeeMaker.makeCoffee(0, 50);
+		if (change == 50) {
+			refill();
+		}
+		return change;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int makeCoffeeBatch() {
+		int[] change = new int[BATCH];
+		int made = coffeeMaker.makeCoffeeBatch(batchRecipes, batchPaid, change);
+		if (made < BATCH) {
+			refill();
+		}
+		return made;
+	}
+
+	/** Tops every ingredient up to the most a lock-free lane can hold. */
+	private void refill() {
+		inventory.setCoffee(LockFreeInventory.MAX_UNITS);
+		inventory.setMilk(LockFreeInventory.MAX_UNITS);
+		inventory.setSugar(LockFreeInventory.MAX_UNITS);
+		inventory.setChocolate(LockFreeInventory.MAX_UNITS);
+	}
+}
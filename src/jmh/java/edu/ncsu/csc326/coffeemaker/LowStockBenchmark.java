@@ -0,0 +1,82 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Cost of low-water marks on the order path: makeCoffee with and
+ * without a mark on every ingredient, every thread ordering from one
+ * machine.  With marks, every ingredient crosses its mark and is
+ * refilled once per refill cycle, so notifications are queued too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(Threads.MAX)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LowStockBenchmark {
+
+	@Param({"false", "true"})
+	public boolean marks;
+
+	@Param({"synchronized", "lock-free"})
+	public String mode;
+
+	private Inventory inventory;
+	private CoffeeMaker coffeeMaker;
+	private final AtomicLong notified = new AtomicLong();
+
+	@Setup
+	public void setUp() throws RecipeException {
+		Recipe recipe = new Recipe();
+		recipe.setName("Coffee");
+		recipe.setPrice("50");
+		recipe.setAmtCoffee("1");
+		recipe.setAmtMilk("1");
+
+		inventory = "lock-free".equals(mode) ? new LockFreeInventory() : new Inventory();
+		coffeeMaker = new CoffeeMaker(new RecipeBook(), inventory);
+		coffeeMaker.addRecipe(recipe);
+		if (marks) {
+			for (int i = 0; i < Inventory.INGREDIENTS; i++) {
+				inventory.setLowWaterMark(i, 100);
+			}
+			inventory.addLowStockListener(new LowStockListener() {
+				public void lowStock(Inventory inventory, int ingredient, int units) {
+					notified.incrementAndGet();
+				}
+
+				public void restocked(Inventory inventory, int ingredient, int units) {
+					notified.incrementAndGet();
+				}
+			});
+		}
+	}
+
+	@Benchmark
+	public int makeCoffee() {
+		int change = coffeeMaker.makeCoffee(0, 50);
+		if (change == 50) {
+			inventory.setCoffee(LockFreeInventory.MAX_UNITS);
+			inventory.setMilk(LockFreeInventory.MAX_UNITS);
+		}
+		return change;
+	}
+}
@@ -0,0 +1,73 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * The {@link RecipeBook} mutators.  Edits and deletes hit one shared
+ * book; adds fill a fresh book each invocation so the book being
+ * measured never grows without bound.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecipeBookBenchmark {
+
+	private static final int RECIPES = 4;
+
+	private Recipe[] recipes;
+	private RecipeBook recipeBook;
+
+	@Setup
+	public void setUp() throws RecipeException {
+		recipes = new Recipe[RECIPES];
+		for (int i = 0; i < RECIPES; i++) {
+			recipes[i] = new Recipe();
+			recipes[i].setName("Recipe " + i);
+			recipes[i].setPrice("50");
+			recipes[i].setAmtCoffee("3");
+		}
+		recipeBook = new RecipeBook();
+		for (Recipe recipe : recipes) {
+			recipeBook.addRecipe(recipe);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECIPES)
+	public RecipeBook addRecipe() {
+		RecipeBook book = new RecipeBook();
+		for (Recipe recipe : recipes) {
+			book.addRecipe(recipe);
+		}
+		return book;
+	}
+
+	@Benchmark
+	public String editRecipe() {
+		int slot = ThreadLocalRandom.current().nextInt(RECIPES);
+		return recipeBook.editRecipe(slot, recipes[slot]);
+	}
+
+	@Benchmark
+	public String deleteRecipe() {
+		return recipeBook.deleteRecipe(ThreadLocalRandom.current().nextInt(RECIPES));
+	}
+}
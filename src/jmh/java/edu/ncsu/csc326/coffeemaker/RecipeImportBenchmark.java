@@ -0,0 +1,94 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Importing a third-party menu feed into recipes, where the given
+ * percentage of rows carries a malformed or negative field: the
+ * throwing setters against the {@link Validation} ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecipeImportBenchmark {
+
+	private static final int ROWS = 1024;
+
+	@Param({"0", "50", "90", "99"})
+	public int rejectPercent;
+
+	/** price, coffee, milk, sugar, chocolate */
+	private final String[][] feed = new String[ROWS][];
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		String[] bad = {"", "n/a", "-3", "2.5", "99999999999"};
+		for (int i = 0; i < ROWS; i++) {
+			String[] row = new String[5];
+			for (int j = 0; j < row.length; j++) {
+				row[j] = Integer.toString(random.nextInt(20));
+			}
+			if (random.nextInt(100) < rejectPercent) {
+				row[random.nextInt(row.length)] = bad[random.nextInt(bad.length)];
+			}
+			feed[i] = row;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public int throwing() {
+		int accepted = 0;
+		for (String[] row : feed) {
+			Recipe recipe = new Recipe();
+			try {
+				recipe.setPrice(row[0]);
+				recipe.setAmtCoffee(row[1]);
+				recipe.setAmtMilk(row[2]);
+				recipe.setAmtSugar(row[3]);
+				recipe.setAmtChocolate(row[4]);
+				accepted++;
+			} catch (RecipeException e) {
+				// Rejected row
+			}
+		}
+		return accepted;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public int validating() {
+		int accepted = 0;
+		for (String[] row : feed) {
+			Recipe recipe = new Recipe();
+			if (recipe.trySetPrice(row[0]).isValid()
+					&& recipe.trySetAmtCoffee(row[1]).isValid()
+					&& recipe.trySetAmtMilk(row[2]).isValid()
+					&& recipe.trySetAmtSugar(row[3]).isValid()
+					&& recipe.trySetAmtChocolate(row[4]).isValid()) {
+				accepted++;
+			}
+		}
+		return accepted;
+	}
+}
@@ -0,0 +1,95 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A search box querying a large menu on every keystroke: the name
+ * index against scanning every recipe's name.  Names look like
+ * "Caramel Latte 4711"; each query is the start of a random one, in
+ * upper case, and asks for the first ten matches.  Renaming a recipe
+ * is the cost of keeping the index.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecipeSearchBenchmark {
+	private static final String[] FLAVORS = {"Almond", "Caramel", "Cinnamon", "Coconut", "Hazelnut", "Honey",
+			"Irish", "Lavender", "Maple", "Mint", "Mocha", "Oat", "Peppermint", "Pumpkin", "Vanilla"};
+	private static final String[] DRINKS = {"Americano", "Cappuccino", "Chai", "Cold Brew", "Cortado", "Espresso",
+			"Flat White", "Frappe", "Latte", "Macchiato", "Mocha", "Ristretto"};
+	private static final int MATCHES = 10;
+
+	@Param({"10000"})
+	public int recipes;
+
+	/** Characters typed so far */
+	@Param({"1", "3", "8", "14"})
+	public int prefixLength;
+
+	private RecipeBook recipeBook;
+	private String[] queries;
+
+	@Setup
+	public void setUp() {
+		recipeBook = new RecipeBook();
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int i = 0; i < recipes; i++) {
+			String name = FLAVORS[random.nextInt(FLAVORS.length)] + " " + DRINKS[random.nextInt(DRINKS.length)] + " " + i;
+			recipeBook.addRecipe(Recipe.restore(name, 50, new int[Inventory.INGREDIENTS]));
+		}
+		queries = new String[1024];
+		Recipe[] book = recipeBook.getRecipes();
+		for (int q = 0; q < queries.length; q++) {
+			String name = book[random.nextInt(recipes)].getName();
+			queries[q] = name.substring(0, Math.min(prefixLength, name.length())).toUpperCase();
+		}
+	}
+
+	@Benchmark
+	public int[] findRecipes() {
+		return recipeBook.findRecipes(query(), MATCHES);
+	}
+
+	@Benchmark
+	public int[] scanRecipes() {
+		String prefix = query();
+		int[] found = new int[MATCHES];
+		int count = 0;
+		Recipe[] book = recipeBook.getRecipes();
+		for (int i = 0; i < book.length && count < MATCHES; i++) {
+			if (book[i] != null && book[i].getName().regionMatches(true, 0, prefix, 0, prefix.length())) {
+				found[count++] = i;
+			}
+		}
+		return found;
+	}
+
+	@Benchmark
+	public String renameRecipe() {
+		int slot = ThreadLocalRandom.current().nextInt(recipes);
+		Recipe renamed = Recipe.restore(query() + " " + slot, 50, new int[Inventory.INGREDIENTS]);
+		recipeBook.deleteRecipe(slot);
+		recipeBook.restoreRecipe(slot, renamed);
+		return renamed.getName();
+	}
+
+	private String query() {
+		return queries[ThreadLocalRandom.current().nextInt(queries.length)];
+	}
+}
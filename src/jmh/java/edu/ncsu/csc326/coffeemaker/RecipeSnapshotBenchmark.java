@@ -0,0 +1,77 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * A menu-display workload on one shared {@link RecipeBook}: 99% of
+ * operations read the recipes and 1% edit one.  Compares the
+ * copy-on-write snapshots with a book whose reads take the monitor, as
+ * getRecipes() used to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(Threads.MAX)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecipeSnapshotBenchmark {
+
+	private static final int RECIPES = 16;
+
+	@Param({"snapshot", "monitor"})
+	public String reads;
+
+	private RecipeBook recipeBook;
+	private Recipe[] edits;
+
+	/** Reads under the book's monitor, contending with writers. */
+	static class MonitorRecipeBook extends RecipeBook {
+		@Override
+		public synchronized Recipe[] getRecipes() {
+			return super.getRecipes();
+		}
+	}
+
+	@Setup
+	public void setUp() throws RecipeException {
+		recipeBook = "monitor".equals(reads) ? new MonitorRecipeBook() : new RecipeBook();
+		edits = new Recipe[RECIPES];
+		for (int i = 0; i < RECIPES; i++) {
+			Recipe recipe = new Recipe();
+			recipe.setName("Recipe " + i);
+			recipe.setPrice("50");
+			recipeBook.addRecipe(recipe);
+
+			edits[i] = new Recipe();
+			edits[i].setPrice("60");
+		}
+	}
+
+	@Benchmark
+	public int readMostly() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int slot = random.nextInt(RECIPES);
+		if (random.nextInt(100) == 0) {
+			recipeBook.editRecipe(slot, edits[slot]);
+			return 0;
+		}
+		return recipeBook.getRecipes()[slot].getPrice();
+	}
+}
@@ -0,0 +1,90 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Start-up time of a durable {@link CoffeeMaker} after a history of
+ * logged operations, replaying either the whole log or only the tail
+ * after the latest checkpoint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RecoveryBenchmark {
+
+	@Param({"1000", "100000", "10000000"})
+	public int operations;
+
+	/** Operations between checkpoints; 0 replays the whole log */
+	@Param({"0", "100000"})
+	public int checkpointEvery;
+
+	private Path directory;
+
+	@Setup
+	public void setUp() throws IOException, RecipeException, InventoryException {
+		Recipe recipe = new Recipe();
+		recipe.setName("Coffee");
+		recipe.setPrice("50");
+		recipe.setAmtCoffee("1");
+		recipe.setAmtMilk("1");
+
+		directory = Files.createTempDirectory("coffeemaker");
+		WriteAheadLog log = WriteAheadLog.open(directory, WriteAheadLog.FsyncPolicy.NEVER);
+		log.setCheckpointInterval(0);
+		CoffeeMaker coffeeMaker = new CoffeeMaker(new RecipeBook(), new Inventory(), log);
+		coffeeMaker.addRecipe(recipe);
+		for (int i = 1; i < operations; i++) {
+			if (coffeeMaker.makeCoffee(0, 50) == 50) {
+				coffeeMaker.addInventory("1000", "1000", "0", "0");
+			}
+			if (checkpointEvery > 0 && i % checkpointEvery == 0) {
+				coffeeMaker.checkpoint();
+			}
+		}
+		log.close();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public CoffeeMaker recover() throws IOException {
+		WriteAheadLog log = WriteAheadLog.open(directory, WriteAheadLog.FsyncPolicy.NEVER);
+		try {
+			return new CoffeeMaker(new RecipeBook(), new Inventory(), log);
+		} finally {
+			log.close();
+		}
+	}
+}
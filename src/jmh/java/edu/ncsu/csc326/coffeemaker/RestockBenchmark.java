@@ -0,0 +1,79 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+
+/**
+ * Restocking one machine from every thread: four strings parsed one
+ * ingredient at a time, four ints added as one update, and a 100,000
+ * line delivery manifest streamed in batches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(Threads.MAX)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RestockBenchmark {
+
+	private static final int MANIFEST_LINES = 100000;
+
+	private Inventory inventory;
+	private CoffeeMaker coffeeMaker;
+	private byte[] manifest;
+
+	@Setup
+	public void setUp() {
+		inventory = new Inventory();
+		coffeeMaker = new CoffeeMaker(new RecipeBook(), inventory);
+		StringBuilder lines = new StringBuilder("ingredient,units\n");
+		String[] names = {"coffee", "milk", "sugar", "chocolate"};
+		for (int i = 0; i < MANIFEST_LINES; i++) {
+			lines.append(names[i % names.length]).append(',').append(i % 7).append('\n');
+		}
+		manifest = lines.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public void addInventoryStrings() throws InventoryException {
+		coffeeMaker.addInventory("1", "1", "0", "1");
+		empty();
+	}
+
+	@Benchmark
+	public void addInventoryInts() throws InventoryException {
+		coffeeMaker.addInventory(1, 1, 1, 1);
+		empty();
+	}
+
+	@Benchmark
+	public long restockManifest() throws IOException, InventoryException {
+		long lines = coffeeMaker.restock(new ByteArrayInputStream(manifest));
+		empty();
+		return lines;
+	}
+
+	/** Keeps the counts far from overflowing. */
+	private void empty() {
+		if (inventory.getCoffee() > 1 << 28) {
+			inventory.restore(new int[Inventory.INGREDIENTS]);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Cost of recording every order in a {@link SalesLedger}: makeCoffee
+ * throughput with and without a ledger attached, every thread
+ * ordering from one machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(Threads.MAX)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SalesLedgerBenchmark {
+
+	@Param({"none", "ring"})
+	public String ledger;
+
+	private Inventory inventory;
+	private CoffeeMaker coffeeMaker;
+	private SalesLedger salesLedger;
+
+	@Setup
+	public void setUp() throws RecipeException {
+		Recipe recipe = new Recipe();
+		recipe.setName("Coffee");
+		recipe.setPrice("50");
+		recipe.setAmtCoffee("1");
+		recipe.setAmtMilk("1");
+
+		inventory = new LockFreeInventory();
+		coffeeMaker = new CoffeeMaker(new RecipeBook(), inventory);
+		coffeeMaker.addRecipe(recipe);
+		if ("ring".equals(ledger)) {
+			salesLedger = new SalesLedger();
+			coffeeMaker.setSalesLedger(salesLedger);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (salesLedger != null) {
+			salesLedger.close();
+		}
+	}
+
+	@Benchmark
+	public int makeCoffee() {
+		int change = coffeeMaker.makeCoffee(0, 50);
+		if (change == 50) {
+			inventory.setCoffee(LockFreeInventory.MAX_UNITS);
+			inventory.setMilk(LockFreeInventory.MAX_UNITS);
+		}
+		return change;
+	}
+}
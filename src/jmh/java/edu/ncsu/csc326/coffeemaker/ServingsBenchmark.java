@@ -0,0 +1,99 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Polling the servings left of every recipe: the cached answers,
+ * either unchanged since the last poll or after one order, against
+ * working them out by hand from the inventory getters.  Recipes use
+ * two of the four ingredients, 1 to 8 units of each, so an order
+ * leaves about half of them to recompute.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServingsBenchmark {
+
+	@Param({"10", "100", "500"})
+	public int recipes;
+
+	private Inventory inventory;
+	private CoffeeMaker coffeeMaker;
+	private int[] servings;
+
+	@Setup
+	public void setUp() {
+		inventory = new Inventory();
+		coffeeMaker = new CoffeeMaker(new RecipeBook(), inventory);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int i = 0; i < recipes; i++) {
+			int[] amounts = new int[Inventory.INGREDIENTS];
+			int first = random.nextInt(amounts.length);
+			amounts[first] = 1 + random.nextInt(8);
+			amounts[(first + 1 + random.nextInt(amounts.length - 1)) % amounts.length] = 1 + random.nextInt(8);
+			coffeeMaker.addRecipe(Recipe.restore("Recipe " + i, 50, amounts));
+		}
+		coffeeMaker.tryAddInventory(10000, 10000, 10000, 10000);
+		servings = coffeeMaker.getMaxServings(servings);
+	}
+
+	@Benchmark
+	public int[] pollUnchanged() {
+		return coffeeMaker.getMaxServings(servings);
+	}
+
+	@Benchmark
+	public int[] pollAfterOrder() {
+		order();
+		return coffeeMaker.getMaxServings(servings);
+	}
+
+	@Benchmark
+	public int[] countAfterOrder() {
+		order();
+		Recipe[] book = coffeeMaker.getRecipes();
+		for (int r = 0; r < book.length; r++) {
+			servings[r] = book[r] == null ? 0 : countServings(book[r]);
+		}
+		return servings;
+	}
+
+	private void order() {
+		if (coffeeMaker.makeCoffee(ThreadLocalRandom.current().nextInt(recipes), 50) == 50) {
+			coffeeMaker.tryAddInventory(10000, 10000, 10000, 10000);
+		}
+	}
+
+	/** What staff would do by hand, one getter per ingredient. */
+	private int countServings(Recipe recipe) {
+		int fewest = Integer.MAX_VALUE;
+		fewest = fewest(fewest, inventory.getCoffee(), recipe.getAmtCoffee());
+		fewest = fewest(fewest, inventory.getMilk(), recipe.getAmtMilk());
+		fewest = fewest(fewest, inventory.getSugar(), recipe.getAmtSugar());
+		fewest = fewest(fewest, inventory.getChocolate(), recipe.getAmtChocolate());
+		return fewest;
+	}
+
+	private static int fewest(int fewest, int units, int needed) {
+		if (needed == 0) {
+			return fewest;
+		}
+		return units < needed ? 0 : Math.min(fewest, units / needed);
+	}
+}
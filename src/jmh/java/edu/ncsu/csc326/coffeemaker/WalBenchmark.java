@@ -0,0 +1,79 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Orders per second of a durable {@link CoffeeMaker} under each
+ * {@link WriteAheadLog.FsyncPolicy}.  With more threads, more orders
+ * share each fsync when every commit is forced to disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(Threads.MAX)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WalBenchmark {
+
+	@Param({"EVERY_COMMIT", "PERIODIC", "NEVER"})
+	public WriteAheadLog.FsyncPolicy policy;
+
+	private Path directory;
+	private WriteAheadLog log;
+	private CoffeeMaker coffeeMaker;
+
+	@Setup
+	public void setUp() throws IOException, RecipeException {
+		Recipe recipe = new Recipe();
+		recipe.setName("Coffee");
+		recipe.setPrice("50");
+		recipe.setAmtCoffee("1");
+		recipe.setAmtMilk("1");
+
+		directory = Files.createTempDirectory("coffeemaker");
+		log = WriteAheadLog.open(directory, policy);
+		coffeeMaker = new CoffeeMaker(new RecipeBook(), new Inventory(), log);
+		coffeeMaker.addRecipe(recipe);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		log.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public int makeCoffee() throws InventoryException {
+		int change = coffeeMaker.makeCoffee(0, 50);
+		if (change == 50) {
+			// Out of stock; the restock is logged like any other change.
+			coffeeMaker.addInventory("1000", "1000", "0", "0");
+		}
+		return change;
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+/**
+ * Which recipes could be made from the stock on hand at one moment,
+ * as a bitset indexed like {@link CoffeeMaker#getRecipes()}.  Never
+ * changes once published; see {@link CoffeeMaker#getAvailability()}.
+ */
+public final class Availability {
+	private final long[] words;
+
+	Availability(long[] words) {
+		this.words = words;
+	}
+
+	/**
+	 * @param recipe index of the recipe
+	 * @return true if there is such a recipe and the stock covers it
+	 */
+	public boolean canMake(int recipe) {
+		int word = recipe >>> 6;
+		return recipe >= 0 && word < words.length && (words[word] & (1L << recipe)) != 0;
+	}
+
+	/**
+	 * Returns the first recipe at or after the given index that can
+	 * be made, or -1 if there is none, for walking the menu:
+	 * <pre>
+	 * for (int r = a.next(0); r >= 0; r = a.next(r + 1))
+	 * </pre>
+	 * @param from
+	 * @return int
+	 */
+	public int next(int from) {
+		int word = from >>> 6;
+		if (from < 0 || word >= words.length) {
+			return -1;
+		}
+		long bits = words[word] & (-1L << from);
+		for (;;) {
+			if (bits != 0) {
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			}
+			if (++word == words.length) {
+				return -1;
+			}
+			bits = words[word];
+		}
+	}
+
+	/**
+	 * @return the number of recipes that can be made
+	 */
+	public int count() {
+		int count = 0;
+		for (long word : words) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+}
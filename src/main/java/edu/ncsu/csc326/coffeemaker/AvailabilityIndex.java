@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the {@link Availability} of every recipe up to date with one
+ * inventory.  The inventory reports every change to its counts; the
+ * coffee maker reports every change to its recipes.
+ *
+ * For each ingredient the recipes that use it are kept sorted by how
+ * much they need, so a count falling from 12 to 9 only visits the
+ * recipes needing 10 to 12 of it, which are the only ones it can
+ * take off the menu.  A rising count likewise visits only the recipes
+ * it may put back.  A new bitset is published only when a bit flips.
+ * Counts never go below zero, so only the recipes using an ingredient
+ * are listed under it.
+ *
+ * The servings each recipe could make are kept too, but lazily: an
+ * order only notes which ingredients changed, and the next query
+ * redoes the quotients of the recipes using them, walking the same
+ * sorted lists so that recipes needing the same amount share one
+ * division.
+ *
+ * The index is guarded by the inventory's monitor, which a
+ * synchronized {@link Inventory} already holds when it reports a
+ * change, so keeping the index takes no second lock per order.  An
+ * inventory that holds no lock reports through {@link #update()},
+ * where one thread at a time takes the monitor on behalf of all.
+ */
+final class AvailabilityIndex {
+	private static final int[] NO_SLOTS = new int[0];
+
+	private final Inventory inventory;
+	/** Number of ingredient ids the arrays below cover; grows as ingredients are registered */
+	private int ingredients;
+	/** Counts as of the last update, and the counts before that */
+	private int[] units;
+	private int[] previous;
+	/** Requirement vector of the recipe in each slot, or null */
+	private int[][] requirements = new int[0][];
+	/** For each ingredient, the slots of the recipes using it and how much, by amount */
+	private int[][] amounts;
+	private int[][] slots;
+	private int[] sizes;
+	/** Working copy of the bitset */
+	private long[] words = new long[1];
+	/** Latest published bitset; final, so the index may be shared through a plain field */
+	private final AtomicReference<Availability> current = new AtomicReference<>(new Availability(new long[1]));
+	/** Servings each slot's recipe could make, except in stale slots */
+	private int[] servings = new int[0];
+	private long[] stale = new long[0];
+	/** Units in stock over units needed, by slot then ingredient; see {@link #quotient(int, int)} */
+	private int[] quotients = new int[0];
+	/** Ingredients changed since servings were last brought up to date, by bit */
+	private long[] changedIngredients;
+	/** Calls to {@link #update()} not yet taken in by the thread doing them */
+	private final AtomicInteger updates = new AtomicInteger();
+	/** The book's {@link RecipeBook#getRecipeEdits()} as of the last sync */
+	private volatile long synced = -1;
+
+	AvailabilityIndex(Inventory inventory) {
+		this.inventory = inventory;
+		this.units = new int[0];
+		this.previous = new int[0];
+		this.amounts = new int[0][];
+		this.slots = new int[0][];
+		this.sizes = new int[0];
+		this.changedIngredients = new long[0];
+		widen(Ingredients.count());
+	}
+
+	/**
+	 * @return the latest availability
+	 */
+	Availability current() {
+		return current.get();
+	}
+
+	/**
+	 * Rereads the counts and updates the recipes whose requirement
+	 * lies between an old count and its new one.  Called by an
+	 * inventory that does not hold its lock after every change.
+	 * Only one caller does the work: a call made meanwhile returns at
+	 * once, and the working thread rereads until no call has come in
+	 * since its last read, so it always ends at the latest counts.
+	 */
+	void update() {
+		if (updates.getAndIncrement() != 0) {
+			return;
+		}
+		int seen;
+		do {
+			// Every call counted here changed the counts before this reread.
+			seen = updates.get();
+			synchronized (inventory) {
+				if (ingredients < Ingredients.count()) {
+					widen(Ingredients.count());
+				}
+				int[] before = units;
+				units = previous;
+				previous = before;
+				inventory.snapshot(units);
+				refresh(before);
+			}
+		} while (updates.addAndGet(-seen) != 0);
+	}
+
+	/**
+	 * Takes the given counts as the latest.  Called by an inventory
+	 * holding its lock after every change.
+	 * @param counts indexed by ingredient id
+	 */
+	void update(int[] counts) {
+		if (counts.length > ingredients) {
+			widen(counts.length);
+		}
+		int[] before = units;
+		units = previous;
+		previous = before;
+		// Ingredients past the inventory's counts have never been stocked.
+		System.arraycopy(counts, 0, units, 0, counts.length);
+		refresh(before);
+	}
+
+	private void refresh(int[] before) {
+		boolean changed = false;
+		for (int i = 0; i < ingredients; i++) {
+			int from = before[i];
+			int to = units[i];
+			if (from == to) {
+				continue;
+			}
+			changedIngredients[i >>> 6] |= 1L << i;
+			int[] needed = amounts[i];
+			int[] using = slots[i];
+			int size = sizes[i];
+			if (size == 0 || Math.min(from, to) >= needed[size - 1]) {
+				// Plenty either way for every recipe using it
+				continue;
+			}
+			boolean rising = to > from;
+			int highest = Math.max(from, to);
+			for (int k = firstAbove(needed, size, Math.min(from, to)); k < size && needed[k] <= highest; k++) {
+				changed |= setBit(using[k], rising && covers(requirements[using[k]]));
+			}
+		}
+		if (changed) {
+			publish();
+		}
+	}
+
+	/**
+	 * Catches up with the recipes, reindexing every slot whose recipe
+	 * or requirements have changed since the last call.  Reads the
+	 * book under the lock, so the last sync sees the latest recipes.
+	 * @param recipeBook
+	 */
+	void sync(RecipeBook recipeBook) {
+		synchronized (inventory) {
+			long edits = recipeBook.getRecipeEdits();
+			reindex(recipeBook.getRecipes());
+			synced = edits;
+		}
+	}
+	
+	/**
+	 * Returns true if a recipe in the book has been changed in place
+	 * since the last sync, as through {@link CoffeeMaker#getRecipes()},
+	 * so the index may be behind.  One volatile read of each side.
+	 * @param recipeBook
+	 * @return boolean
+	 */
+	boolean behind(RecipeBook recipeBook) {
+		return synced != recipeBook.getRecipeEdits();
+	}
+
+	private void reindex(Recipe[] recipes) {
+		if (ingredients < Ingredients.count()) {
+			widen(Ingredients.count());
+		}
+		int length = Math.max(recipes.length, requirements.length);
+		if (requirements.length < length) {
+			requirements = Arrays.copyOf(requirements, length);
+			quotients = Arrays.copyOf(quotients, length * ingredients);
+			stale = Arrays.copyOf(stale, (length + 63) >>> 6);
+		}
+		boolean changed = false;
+		for (int slot = 0; slot < length; slot++) {
+			int[] required = slot < recipes.length && recipes[slot] != null ? recipes[slot].getRequirements() : null;
+			if (required == requirements[slot]) {
+				continue;
+			}
+			if (requirements[slot] != null) {
+				unindex(slot, requirements[slot]);
+			}
+			if (required != null) {
+				index(slot, required);
+			}
+			requirements[slot] = required;
+			if (required != null) {
+				fillQuotients(slot, required);
+			}
+			stale[slot >>> 6] |= 1L << slot;
+			changed |= setBit(slot, required != null && covers(required));
+		}
+		if (changed) {
+			publish();
+		}
+	}
+
+	/**
+	 * Returns how many times over the stock covers a recipe, or
+	 * Integer.MAX_VALUE if it uses nothing; 0 if there is no such
+	 * recipe.
+	 * @param slot
+	 * @return int
+	 */
+	int servings(int slot) {
+		synchronized (inventory) {
+			catchUp();
+			return slot >= 0 && slot < servings.length ? servings[slot] : 0;
+		}
+	}
+
+	/**
+	 * Copies the servings of every slot into the array, reallocating
+	 * it if it is null or the wrong length, and returns it.
+	 * @param into
+	 * @return int[]
+	 */
+	int[] servings(int[] into) {
+		synchronized (inventory) {
+			catchUp();
+			if (into == null || into.length != servings.length) {
+				into = new int[servings.length];
+			}
+			System.arraycopy(servings, 0, into, 0, servings.length);
+			return into;
+		}
+	}
+
+	/**
+	 * Redoes the quotients of the recipes using a changed ingredient.
+	 * A recipe's servings are the least of its quotients, so most
+	 * follow from the one that changed; only a recipe whose least
+	 * quotient rose, or whose slot was reindexed, takes the least
+	 * again.
+	 */
+	private void catchUp() {
+		if (servings.length < requirements.length) {
+			servings = Arrays.copyOf(servings, requirements.length);
+		}
+		for (int w = 0; w < changedIngredients.length; w++) {
+			for (long bits = changedIngredients[w]; bits != 0; bits &= bits - 1) {
+				int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+				redoQuotients(i);
+			}
+			changedIngredients[w] = 0;
+		}
+		for (int w = 0; w < stale.length; w++) {
+			for (long bits = stale[w]; bits != 0; bits &= bits - 1) {
+				int slot = (w << 6) + Long.numberOfTrailingZeros(bits);
+				servings[slot] = requirements[slot] == null ? 0 : leastQuotient(slot);
+			}
+			stale[w] = 0;
+		}
+	}
+
+	private void redoQuotients(int i) {
+		int[] needed = amounts[i];
+		int[] using = slots[i];
+		int[] quotients = this.quotients;
+		int[] servings = this.servings;
+		long[] stale = this.stale;
+		int need = -1;
+		int quotient = 0;
+		for (int k = 0, size = sizes[i]; k < size; k++) {
+			if (needed[k] != need) {
+				need = needed[k];
+				quotient = quotient(units[i], need);
+			}
+			int slot = using[k];
+			int at = slot * ingredients + i;
+			int before = quotients[at];
+			quotients[at] = quotient;
+			if (quotient <= servings[slot]) {
+				servings[slot] = quotient;
+			} else if (before == servings[slot]) {
+				// It was the least and has risen; another may be least now.
+				stale[slot >>> 6] |= 1L << slot;
+			}
+		}
+	}
+
+	private void fillQuotients(int slot, int[] required) {
+		for (int i = 0; i < ingredients; i++) {
+			quotients[slot * ingredients + i] = quotient(units[i], i < required.length ? required[i] : 0);
+		}
+	}
+
+	private int leastQuotient(int slot) {
+		int least = Integer.MAX_VALUE;
+		for (int at = slot * ingredients, end = at + ingredients; at < end; at++) {
+			least = Math.min(least, quotients[at]);
+		}
+		return least;
+	}
+
+	/**
+	 * Returns how many times the units cover the need: 0 if they fall
+	 * short, and Integer.MAX_VALUE if nothing is needed.
+	 */
+	private static int quotient(int units, int need) {
+		if (units < need) {
+			return 0;
+		}
+		return need == 0 ? Integer.MAX_VALUE : units / need;
+	}
+
+	private boolean covers(int[] required) {
+		for (int i = 0; i < required.length; i++) {
+			if (required[i] > units[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Sets or clears a slot's bit and returns whether it changed. */
+	private boolean setBit(int slot, boolean on) {
+		int word = slot >>> 6;
+		if (word >= words.length) {
+			if (!on) {
+				return false;
+			}
+			words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+		}
+		long before = words[word];
+		words[word] = on ? before | (1L << slot) : before & ~(1L << slot);
+		return words[word] != before;
+	}
+
+	private void publish() {
+		current.set(new Availability(words.clone()));
+	}
+
+	private void index(int slot, int[] required) {
+		for (int i = 0; i < required.length; i++) {
+			if (!indexed(required, i)) {
+				continue;
+			}
+			int size = sizes[i];
+			if (size == amounts[i].length) {
+				amounts[i] = Arrays.copyOf(amounts[i], Math.max(4, size * 2));
+				slots[i] = Arrays.copyOf(slots[i], amounts[i].length);
+			}
+			int at = firstAbove(amounts[i], size, required[i]);
+			System.arraycopy(amounts[i], at, amounts[i], at + 1, size - at);
+			System.arraycopy(slots[i], at, slots[i], at + 1, size - at);
+			amounts[i][at] = required[i];
+			slots[i][at] = slot;
+			sizes[i] = size + 1;
+		}
+	}
+
+	private void unindex(int slot, int[] required) {
+		for (int i = 0; i < required.length; i++) {
+			if (!indexed(required, i)) {
+				continue;
+			}
+			int size = sizes[i];
+			int at = firstAbove(amounts[i], size, required[i] - 1);
+			while (slots[i][at] != slot) {
+				at++;
+			}
+			System.arraycopy(amounts[i], at + 1, amounts[i], at, size - at - 1);
+			System.arraycopy(slots[i], at + 1, slots[i], at, size - at - 1);
+			sizes[i] = size - 1;
+		}
+	}
+
+	/** Whether the recipe is listed under the ingredient. */
+	private static boolean indexed(int[] required, int i) {
+		return required[i] > 0;
+	}
+
+	/**
+	 * Extends every per-ingredient array to cover the given number of
+	 * ingredient ids, none of them yet stocked or used by a recipe.
+	 */
+	private void widen(int ingredients) {
+		int narrower = this.ingredients;
+		units = Arrays.copyOf(units, ingredients);
+		previous = Arrays.copyOf(previous, ingredients);
+		amounts = Arrays.copyOf(amounts, ingredients);
+		slots = Arrays.copyOf(slots, ingredients);
+		sizes = Arrays.copyOf(sizes, ingredients);
+		for (int i = narrower; i < ingredients; i++) {
+			amounts[i] = NO_SLOTS;
+			slots[i] = NO_SLOTS;
+		}
+		changedIngredients = Arrays.copyOf(changedIngredients, (ingredients + 63) >>> 6);
+		int[] wider = new int[requirements.length * ingredients];
+		for (int slot = 0; slot < requirements.length; slot++) {
+			System.arraycopy(quotients, slot * narrower, wider, slot * ingredients, narrower);
+			Arrays.fill(wider, slot * ingredients + narrower, (slot + 1) * ingredients, Integer.MAX_VALUE);
+		}
+		quotients = wider;
+		this.ingredients = ingredients;
+	}
+
+	/** Returns the first position whose amount is greater than the given one. */
+	private static int firstAbove(int[] sorted, int size, int amount) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] <= amount) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Runs a script of coffee maker commands without the menu, for
+ * end-of-day jobs.  Started with "--batch [file]"; see {@link Main}.
+ *
+ * One command per line, fields separated by commas; recipes are
+ * numbered from 1 as in the menu.  Blank lines and lines starting
+ * with '#' are skipped.
+ * <pre>
+ * add-recipe,name,price,coffee,milk,sugar,chocolate
+ * delete-recipe,recipe
+ * edit-recipe,recipe,price,coffee,milk,sugar,chocolate
+ * add-inventory,coffee,milk,sugar,chocolate
+ * check-inventory
+ * make-coffee,recipe,paid
+ * </pre>
+ * Every command writes one line, "line,status[,details]", where status
+ * is ok, rejected (the coffee maker refused, for instance for lack of
+ * funds) or error (the command itself is malformed):
+ * <pre>
+ * 4,ok                     add-recipe, add-inventory
+ * 5,ok,Mocha               delete-recipe, edit-recipe
+ * 6,ok,15,15,15,15         check-inventory: coffee,milk,sugar,chocolate
+ * 7,ok,25                  make-coffee: change
+ * 8,rejected,OUT_OF_STOCK,50
+ * 9,error,Units of milk must be a positive integer
+ * </pre>
+ * Output goes through the one writer given, which is only flushed at
+ * the end.  Consecutive make-coffee commands are served together with
+ * {@link CoffeeMaker#makeCoffeeBatch(int[], int[], int[])}, which
+ * gives each order the same result as running it alone.
+ */
+public class BatchRunner {
+	/** Most make-coffee commands served by one batch */
+	private static final int MAX_ORDERS = 256;
+	/** Most fields in a command, the command name included */
+	private static final int MAX_FIELDS = 7;
+
+	private final CoffeeMaker coffeeMaker;
+	private final Writer out;
+	private final String[] fields = new String[MAX_FIELDS + 1];
+	private final InventorySnapshot inventory = new InventorySnapshot();
+
+	/** Pending make-coffee commands */
+	private final int[] orders = new int[MAX_ORDERS];
+	private final int[] paid = new int[MAX_ORDERS];
+	private final int[] change = new int[MAX_ORDERS];
+	private final boolean[] served = new boolean[MAX_ORDERS];
+	private final SalesLedger.Outcome[] outcomes = new SalesLedger.Outcome[MAX_ORDERS];
+	private final long[] orderLines = new long[MAX_ORDERS];
+	private int pending;
+
+	/**
+	 * @param coffeeMaker
+	 * @param out where results are written; wrap it in a buffer
+	 */
+	public BatchRunner(CoffeeMaker coffeeMaker, Writer out) {
+		this.coffeeMaker = coffeeMaker;
+		this.out = out;
+	}
+
+	/**
+	 * Runs every command in the script and flushes the results.
+	 * @param in
+	 * @return long the number of commands run
+	 * @throws IOException if the script cannot be read or the results
+	 * written
+	 */
+	public long run(BufferedReader in) throws IOException {
+		long lineNumber = 0;
+		long commands = 0;
+		String line;
+		while ((line = in.readLine()) != null) {
+			lineNumber++;
+			int count = split(line);
+			if (count == 0 || fields[0].isEmpty() || fields[0].charAt(0) == '#') {
+				continue;
+			}
+			commands++;
+			if (count > MAX_FIELDS) {
+				serveOrders();
+				error(lineNumber, "Too many fields");
+			} else if (fields[0].equals("make-coffee")) {
+				queueOrder(lineNumber, count);
+			} else {
+				serveOrders();
+				run(lineNumber, count);
+			}
+		}
+		serveOrders();
+		out.flush();
+		return commands;
+	}
+
+	private void run(long line, int count) throws IOException {
+		switch (fields[0]) {
+		case "add-recipe":
+			if (expect(line, count, 7)) {
+				Recipe r = new Recipe();
+				r.setName(fields[1]);
+				if (setAmounts(line, r, 2)) {
+					status(line, coffeeMaker.addRecipe(r) ? "ok" : "rejected");
+					out.write('\n');
+				}
+			}
+			break;
+		case "delete-recipe":
+			if (expect(line, count, 2)) {
+				int recipe = recipe(line, fields[1]);
+				if (recipe >= 0) {
+					named(line, coffeeMaker.deleteRecipe(recipe));
+				}
+			}
+			break;
+		case "edit-recipe":
+			if (expect(line, count, 7)) {
+				int recipe = recipe(line, fields[1]);
+				Recipe r = new Recipe();
+				if (recipe >= 0 && setAmounts(line, r, 2)) {
+					named(line, coffeeMaker.editRecipe(recipe, r));
+				}
+			}
+			break;
+		case "add-inventory":
+			if (expect(line, count, 5)) {
+				addInventory(line);
+			}
+			break;
+		case "check-inventory":
+			if (expect(line, count, 1)) {
+				coffeeMaker.checkInventory(inventory);
+				status(line, "ok");
+				for (int units : inventory.units) {
+					out.write(',');
+					out.write(Integer.toString(units));
+				}
+				out.write('\n');
+			}
+			break;
+		default:
+			error(line, "Unknown command " + fields[0]);
+		}
+	}
+
+	private void addInventory(long line) throws IOException {
+		int[] amounts = new int[Inventory.INGREDIENTS];
+		for (int i = 0; i < amounts.length; i++) {
+			long amount = Validation.parse(fields[i + 1]);
+			if (amount < 0) {
+				error(line, Validation.invalid(i).getMessage());
+				return;
+			}
+			amounts[i] = (int) amount;
+		}
+		Validation result = coffeeMaker.tryAddInventory(amounts[Inventory.COFFEE], amounts[Inventory.MILK],
+				amounts[Inventory.SUGAR], amounts[Inventory.CHOCOLATE]);
+		if (result.isValid()) {
+			status(line, "ok");
+			out.write('\n');
+		} else {
+			error(line, result.getMessage());
+		}
+	}
+
+	private void queueOrder(long line, int count) throws IOException {
+		long recipe = count == 3 ? Validation.parse(fields[1]) : -1;
+		long amtPaid = count == 3 ? Validation.parse(fields[2]) : -1;
+		if (recipe < 1 || amtPaid < 0) {
+			// Results go out in script order, so serve the earlier
+			// orders before reporting this one.
+			serveOrders();
+			if (expect(line, count, 3)) {
+				error(line, recipe < 1 ? "Recipe must be a positive integer"
+						: "Amount paid must be a positive integer");
+			}
+			return;
+		}
+		orders[pending] = (int) recipe - 1;
+		paid[pending] = (int) amtPaid;
+		orderLines[pending] = line;
+		if (++pending == MAX_ORDERS) {
+			serveOrders();
+		}
+	}
+
+	/**
+	 * Serves the queued make-coffee commands and writes their results
+	 * in order.
+	 */
+	private void serveOrders() throws IOException {
+		if (pending == 0) {
+			return;
+		}
+		coffeeMaker.makeCoffeeBatch(orders, paid, pending, change, served, outcomes);
+		for (int i = 0; i < pending; i++) {
+			if (outcomes[i] == SalesLedger.Outcome.SOLD) {
+				status(orderLines[i], "ok");
+			} else {
+				status(orderLines[i], "rejected");
+				out.write(',');
+				out.write(outcomes[i].name());
+			}
+			out.write(',');
+			out.write(Integer.toString(change[i]));
+			out.write('\n');
+		}
+		pending = 0;
+	}
+
+	private boolean setAmounts(long line, Recipe r, int from) throws IOException {
+		Validation result = r.trySetPrice(fields[from]);
+		if (result.isValid()) {
+			result = r.trySetAmtCoffee(fields[from + 1]);
+		}
+		if (result.isValid()) {
+			result = r.trySetAmtMilk(fields[from + 2]);
+		}
+		if (result.isValid()) {
+			result = r.trySetAmtSugar(fields[from + 3]);
+		}
+		if (result.isValid()) {
+			result = r.trySetAmtChocolate(fields[from + 4]);
+		}
+		if (!result.isValid()) {
+			error(line, result.getMessage());
+		}
+		return result.isValid();
+	}
+
+	/**
+	 * Returns the 0-based index of a recipe numbered from 1, or
+	 * writes an error and returns -1.
+	 */
+	private int recipe(long line, String field) throws IOException {
+		long recipe = Validation.parse(field);
+		if (recipe < 1 || recipe > coffeeMaker.getRecipes().length) {
+			error(line, "No such recipe " + field);
+			return -1;
+		}
+		return (int) recipe - 1;
+	}
+
+	private void named(long line, String name) throws IOException {
+		if (name == null) {
+			status(line, "rejected");
+		} else {
+			status(line, "ok");
+			out.write(',');
+			out.write(name);
+		}
+		out.write('\n');
+	}
+
+	private boolean expect(long line, int count, int fieldCount) throws IOException {
+		if (count != fieldCount) {
+			error(line, fields[0] + " takes " + (fieldCount - 1) + " fields");
+			return false;
+		}
+		return true;
+	}
+
+	private void status(long line, String status) throws IOException {
+		out.write(Long.toString(line));
+		out.write(',');
+		out.write(status);
+	}
+
+	private void error(long line, String message) throws IOException {
+		status(line, "error");
+		out.write(',');
+		out.write(message);
+		out.write('\n');
+	}
+
+	/**
+	 * Splits the line on commas into fields, trimming each, and
+	 * returns how many there are; stops counting past the most a
+	 * command can have.
+	 */
+	private int split(String line) {
+		int count = 0;
+		int from = 0;
+		while (count <= MAX_FIELDS) {
+			int comma = line.indexOf(',', from);
+			int to = comma < 0 ? line.length() : comma;
+			fields[count++] = line.substring(from, to).trim();
+			if (comma < 0) {
+				break;
+			}
+			from = comma + 1;
+		}
+		return count == 1 && fields[0].isEmpty() ? 0 : count;
+	}
+}
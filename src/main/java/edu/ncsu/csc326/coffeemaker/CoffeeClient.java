@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Blocking client for a {@link CoffeeServer}.  Not thread safe: give
+ * each thread its own client.
+ *
+ * {@link #makeCoffee(int[], int[], int[], SalesLedger.Outcome[])}
+ * pipelines its orders, sending a window of requests before reading
+ * their responses, so a batch costs a few round trips rather than one
+ * per order.
+ */
+public class CoffeeClient implements Closeable {
+	/** Most requests sent before their responses are read */
+	private static final int WINDOW = 512;
+	private static final SalesLedger.Outcome[] OUTCOMES = SalesLedger.Outcome.values();
+	private static final Validation[] VALIDATIONS = Validation.values();
+
+	private final SocketChannel channel;
+	/** Requests being built, in write mode */
+	private final ByteBuffer out = ByteBuffer.allocate(WINDOW * (CoffeeProtocol.LENGTH_BYTES
+			+ CoffeeProtocol.MAKE_COFFEE_LENGTH));
+	/** Responses received but not yet read, in read mode */
+	private ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+
+	/**
+	 * Connects to a coffee server.
+	 * @param address
+	 * @throws IOException if the server cannot be reached
+	 */
+	public CoffeeClient(InetSocketAddress address) throws IOException {
+		channel = SocketChannel.open(address);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		in.flip();
+	}
+
+	/**
+	 * Orders one beverage.
+	 * @param recipeToPurchase
+	 * @param amtPaid
+	 * @return int the change
+	 * @throws IOException if the server cannot be reached
+	 */
+	public int makeCoffee(int recipeToPurchase, int amtPaid) throws IOException {
+		out.putInt(CoffeeProtocol.MAKE_COFFEE_LENGTH).put(CoffeeProtocol.MAKE_COFFEE)
+				.putInt(recipeToPurchase).putInt(amtPaid);
+		send();
+		expect(CoffeeProtocol.MAKE_COFFEE, CoffeeProtocol.MAKE_COFFEE_RESPONSE);
+		in.get();
+		return in.getInt();
+	}
+
+	/**
+	 * Places a run of orders, pipelined.  change[i] and, if given,
+	 * outcomes[i] receive the result of order i.
+	 * @param recipesToPurchase
+	 * @param amtsPaid
+	 * @param change
+	 * @param outcomes may be null
+	 * @return int the number of beverages made
+	 * @throws IOException if the server cannot be reached
+	 */
+	public int makeCoffee(int[] recipesToPurchase, int[] amtsPaid, int[] change, SalesLedger.Outcome[] outcomes)
+			throws IOException {
+		int made = 0;
+		for (int from = 0; from < recipesToPurchase.length; from += WINDOW) {
+			int to = Math.min(recipesToPurchase.length, from + WINDOW);
+			for (int i = from; i < to; i++) {
+				out.putInt(CoffeeProtocol.MAKE_COFFEE_LENGTH).put(CoffeeProtocol.MAKE_COFFEE)
+						.putInt(recipesToPurchase[i]).putInt(amtsPaid[i]);
+			}
+			send();
+			for (int i = from; i < to; i++) {
+				expect(CoffeeProtocol.MAKE_COFFEE, CoffeeProtocol.MAKE_COFFEE_RESPONSE);
+				SalesLedger.Outcome outcome = OUTCOMES[in.get()];
+				change[i] = in.getInt();
+				if (outcomes != null) {
+					outcomes[i] = outcome;
+				}
+				if (outcome == SalesLedger.Outcome.SOLD) {
+					made++;
+				}
+			}
+		}
+		return made;
+	}
+
+	/**
+	 * Copies the server's inventory into the array, indexed by
+	 * ingredient id.
+	 * @param into
+	 * @throws IOException if the server cannot be reached
+	 */
+	public void checkInventory(int[] into) throws IOException {
+		out.putInt(CoffeeProtocol.CHECK_INVENTORY_LENGTH).put(CoffeeProtocol.CHECK_INVENTORY);
+		send();
+		expect(CoffeeProtocol.CHECK_INVENTORY, CoffeeProtocol.CHECK_INVENTORY_RESPONSE);
+		in.get();
+		for (int i = 0; i < Inventory.INGREDIENTS; i++) {
+			into[i] = in.getInt();
+		}
+	}
+
+	/**
+	 * Returns the server's recipes, indexed as on the server: slots
+	 * with no recipe are null.
+	 * @return Recipe[]
+	 * @throws IOException if the server cannot be reached
+	 */
+	public Recipe[] getRecipes() throws IOException {
+		out.putInt(CoffeeProtocol.GET_RECIPES_LENGTH).put(CoffeeProtocol.GET_RECIPES);
+		send();
+		int length = expect(CoffeeProtocol.GET_RECIPES, -1);
+		int end = in.position() + length - 1;
+		in.get();
+		Recipe[] recipes = new Recipe[in.getInt()];
+		int[] amounts = new int[Inventory.INGREDIENTS];
+		int highest = -1;
+		for (int r = 0; r < recipes.length; r++) {
+			int slot = in.getInt();
+			int price = in.getInt();
+			for (int i = 0; i < amounts.length; i++) {
+				amounts[i] = in.getInt();
+			}
+			byte[] name = new byte[in.getShort()];
+			in.get(name);
+			if (slot >= recipes.length) {
+				recipes = Arrays.copyOf(recipes, slot + 1);
+			}
+			recipes[slot] = Recipe.restore(new String(name, StandardCharsets.UTF_8), price, amounts);
+			highest = Math.max(highest, slot);
+		}
+		in.position(end);
+		return Arrays.copyOf(recipes, highest + 1);
+	}
+
+	/**
+	 * Adds units of every ingredient as one update on the server.
+	 * @param amtCoffee
+	 * @param amtMilk
+	 * @param amtSugar
+	 * @param amtChocolate
+	 * @return Validation
+	 * @throws IOException if the server cannot be reached
+	 */
+	public Validation addInventory(int amtCoffee, int amtMilk, int amtSugar, int amtChocolate) throws IOException {
+		out.putInt(CoffeeProtocol.ADD_INVENTORY_LENGTH).put(CoffeeProtocol.ADD_INVENTORY)
+				.putInt(amtCoffee).putInt(amtMilk).putInt(amtSugar).putInt(amtChocolate);
+		send();
+		expect(CoffeeProtocol.ADD_INVENTORY, CoffeeProtocol.STATUS_RESPONSE);
+		return VALIDATIONS[in.get()];
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private void send() throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+
+	/**
+	 * Reads the next response header, leaving its status and results
+	 * in the buffer, and returns its length.
+	 * @param length the expected length, or -1 for any
+	 */
+	private int expect(byte op, int length) throws IOException {
+		fill(CoffeeProtocol.LENGTH_BYTES);
+		int actual = in.getInt();
+		fill(actual);
+		byte echoed = in.get();
+		if (echoed != op || (length >= 0 && actual != length) || in.get(in.position()) == CoffeeProtocol.BAD_REQUEST) {
+			throw new ProtocolException("Unexpected response to request " + op);
+		}
+		return actual;
+	}
+
+	/** Reads until the buffer holds at least the given number of bytes. */
+	private void fill(int bytes) throws IOException {
+		if (in.remaining() >= bytes) {
+			return;
+		}
+		if (in.capacity() < bytes) {
+			ByteBuffer bigger = ByteBuffer.allocate(bytes);
+			bigger.put(in);
+			in = bigger;
+		} else {
+			in.compact();
+		}
+		while (in.position() < bytes) {
+			if (channel.read(in) < 0) {
+				throw new EOFException("Server closed the connection");
+			}
+		}
+		in.flip();
+	}
+}
@@ -13,16 +13,41 @@
  */
 package edu.ncsu.csc326.coffeemaker;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
 import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
 
 /**
  * @author Sarah Heckman
+ *
+ * A single coffee machine.  Machines share no state, so a fleet can
+ * run in one process.  An idle machine with an empty recipe book takes
+ * about 256 bytes of heap, or 248 with a {@link LockFreeInventory}, on
+ * a 64-bit JVM with compressed references (see FleetBenchmark).
  */
 public class CoffeeMaker {
 	/** Array of recipes in coffee maker */
 	private RecipeBook recipeBook;
 	/** Inventory of the coffee maker */
     private Inventory inventory;
+    /** Log of every change, or null if the coffee maker is not durable */
+    private WriteAheadLog log;
+    /** Record of every purchase attempt, or null if none is kept */
+    private volatile SalesLedger ledger;
+    /** Latency histograms and counters, or null if none are kept */
+    private volatile Metrics metrics;
+    /** Coin tubes change is given from, or null if change is unlimited */
+    private volatile CoinChanger changer;
+    /** The inventory's availability index once asked for; a plain cache of its volatile field */
+    private AvailabilityIndex availability;
 	
     /**
      * Constructor for the coffee maker (no param added)
@@ -43,6 +68,22 @@ public class CoffeeMaker {
 		this.recipeBook = recipeBook;
 		this.inventory = inventory;
 	}
+
+	/**
+	 * Constructor for a durable coffee maker (with 3 params).  The
+	 * log is replayed into the recipe book and inventory, and every
+	 * later change is logged before the call that made it returns.
+	 *
+	 * @param recipeBook outside RecipeBook
+	 * @param inventory outside Inventory
+	 * @param log log to recover from and append to
+	 * @throws IOException if the log cannot be read or written
+	 */
+	public CoffeeMaker(RecipeBook recipeBook, Inventory inventory, WriteAheadLog log) throws IOException {
+		this(recipeBook, inventory);
+		log.recover(recipeBook, inventory);
+		this.log = log;
+	}
 	
 	/**
 	 * Returns true if the recipe is added to the
@@ -52,7 +93,22 @@ public class CoffeeMaker {
 	 * @return boolean
 	 */
 	public boolean addRecipe(Recipe r) {
-		return recipeBook.addRecipe(r);
+		if (log == null) {
+			boolean added = recipeBook.addRecipe(r);
+			recipesChanged();
+			return added;
+		}
+		long lsn;
+		//Recipe changes are applied and logged in the same order
+		synchronized (this) {
+			if (!recipeBook.addRecipe(r)) {
+				return false;
+			}
+			lsn = log.logRecipe(recipeBook.indexOf(r.getName()), r);
+		}
+		recipesChanged();
+		commit(lsn);
+		return true;
 	}
 	
 	/**
@@ -63,7 +119,23 @@ public class CoffeeMaker {
 	 * @return String
 	 */
 	public String deleteRecipe(int recipeToDelete) {
-		return recipeBook.deleteRecipe(recipeToDelete);
+		if (log == null) {
+			String deleted = recipeBook.deleteRecipe(recipeToDelete);
+			recipesChanged();
+			return deleted;
+		}
+		String deleted;
+		long lsn;
+		synchronized (this) {
+			deleted = recipeBook.deleteRecipe(recipeToDelete);
+			if (deleted == null) {
+				return null;
+			}
+			lsn = log.logDelete(recipeToDelete);
+		}
+		recipesChanged();
+		commit(lsn);
+		return deleted;
 	}
 	
 	/**
@@ -74,7 +146,93 @@ public class CoffeeMaker {
 	 * @return String
 	 */
 	public String editRecipe(int recipeToEdit, Recipe r) {
-		return recipeBook.editRecipe(recipeToEdit, r);
+		if (log == null) {
+			String edited = recipeBook.editRecipe(recipeToEdit, r);
+			recipesChanged();
+			return edited;
+		}
+		String edited;
+		long lsn;
+		synchronized (this) {
+			edited = recipeBook.editRecipe(recipeToEdit, r);
+			if (edited == null) {
+				return null;
+			}
+			lsn = log.logRecipe(recipeToEdit, r);
+		}
+		recipesChanged();
+		commit(lsn);
+		return edited;
+	}
+	
+	/**
+	 * Returns which recipes can be made from the stock on hand, for
+	 * menu boards.  The first call starts an index that every order,
+	 * restock and recipe change made through this coffee maker keeps
+	 * up to date, updating only the recipes the change could affect;
+	 * after that a call is three volatile reads, unless a recipe in
+	 * this coffee maker's book has been changed in place and the index
+	 * must first reindex the recipes that changed.
+	 * @return Availability
+	 */
+	public Availability getAvailability() {
+		return availabilityIndex().current();
+	}
+	
+	/**
+	 * Returns how many more of a recipe the stock on hand could make:
+	 * the least, over the ingredients it uses, of the units in stock
+	 * divided by the units it needs.  Returns 0 if there is no such
+	 * recipe and Integer.MAX_VALUE if it uses no ingredients.  Answers
+	 * are cached, and only the recipes a restock, order or recipe
+	 * change could have affected are worked out again; a recipe of
+	 * this book changed in place counts as changed, while recipes
+	 * outside the book are never looked at.
+	 * @param recipe
+	 * @return int
+	 */
+	public int getMaxServings(int recipe) {
+		return availabilityIndex().servings(recipe);
+	}
+	
+	/**
+	 * Fills an array with the servings of every recipe, indexed like
+	 * {@link #getRecipes()}, for polling without allocating.  A new
+	 * array is returned if the one given is null or not the length
+	 * of the recipe array.
+	 * @param into
+	 * @return int[]
+	 */
+	public int[] getMaxServings(int[] into) {
+		return availabilityIndex().servings(into);
+	}
+	
+	/**
+	 * Returns the inventory's availability index, starting it and
+	 * catching it up with the recipes on first use, and again after
+	 * any recipe is changed without going through the book.
+	 */
+	private AvailabilityIndex availabilityIndex() {
+		AvailabilityIndex index = availability;
+		if (index == null) {
+			index = inventory.availability();
+			index.sync(recipeBook);
+			availability = index;
+		} else if (index.behind(recipeBook)) {
+			index.sync(recipeBook);
+		}
+		return index;
+	}
+	
+	/**
+	 * Brings the availability index, if there is one, up to date
+	 * with the recipe book.
+	 */
+	private void recipesChanged() {
+		AvailabilityIndex index = inventory.availability;
+		if (index != null) {
+			index.sync(recipeBook);
+		}
 	}
     
     /**
@@ -85,11 +243,221 @@ public class CoffeeMaker {
      * @param amtChocolate
      * @return boolean
      */
-    public synchronized void addInventory(String amtCoffee, String amtMilk, String amtSugar, String amtChocolate) throws InventoryException {
+    public void addInventory(String amtCoffee, String amtMilk, String amtSugar, String amtChocolate) throws InventoryException {
+    	Metrics metrics = this.metrics;
+    	long start = Metrics.start(metrics);
+    	int[] added = new int[Inventory.INGREDIENTS];
+    	long lsn = -1;
+    	try {
+    		synchronized (this) {
+    			if (metrics != null) {
+    				metrics.entered(Metrics.Lock.COFFEE_MAKER, start);
+    			}
+    			try {
+    				restock(amtCoffee, amtMilk, amtSugar, amtChocolate, added);
+    			} finally {
+    				//Log whatever was added, even if a later amount was rejected
+    				if (log != null) {
+    					lsn = log.logRestock(added);
+    				}
+    			}
+    		}
+    	} finally {
+    		//Wait for the disk only once other changes can be logged
+    		if (lsn >= 0) {
+    			commit(lsn);
+    		}
+    		if (metrics != null) {
+    			metrics.finished(Metrics.Operation.ADD_INVENTORY, start);
+    		}
+    	}
+    }
+    
+    /** Adds each amount in turn, noting it in added; callers hold the lock. */
+    private void restock(String amtCoffee, String amtMilk, String amtSugar, String amtChocolate, int[] added) throws InventoryException {
 	    inventory.addCoffee(amtCoffee);
+	    added[Inventory.COFFEE] = (int) Validation.parse(amtCoffee);
 	    inventory.addMilk(amtMilk);
+	    added[Inventory.MILK] = (int) Validation.parse(amtMilk);
 	    inventory.addSugar(amtSugar);
+	    added[Inventory.SUGAR] = (int) Validation.parse(amtSugar);
 	    inventory.addChocolate(amtChocolate);
+	    added[Inventory.CHOCOLATE] = (int) Validation.parse(amtChocolate);
+    }
+    
+    /**
+     * Adds units of every ingredient as one atomic update: either all
+     * four amounts are added or, if any is rejected, none is.  Nothing
+     * is parsed, and no exception is built, while a lock is held.
+     * @param amtCoffee
+     * @param amtMilk
+     * @param amtSugar
+     * @param amtChocolate
+     * @throws InventoryException if any amount is rejected
+     */
+    public void addInventory(int amtCoffee, int amtMilk, int amtSugar, int amtChocolate) throws InventoryException {
+    	Validation result = tryAddInventory(amtCoffee, amtMilk, amtSugar, amtChocolate);
+    	if (!result.isValid()) {
+    		throw new InventoryException(result.getMessage());
+    	}
+    }
+    
+    /**
+     * Adds units of every ingredient as one atomic update, or returns
+     * why they cannot be added and adds none.
+     * @param amtCoffee
+     * @param amtMilk
+     * @param amtSugar
+     * @param amtChocolate
+     * @return Validation
+     */
+    public Validation tryAddInventory(int amtCoffee, int amtMilk, int amtSugar, int amtChocolate) {
+    	Metrics metrics = this.metrics;
+    	long start = Metrics.start(metrics);
+    	try {
+    		if (log == null) {
+    			return inventory.tryAddInventory(amtCoffee, amtMilk, amtSugar, amtChocolate);
+    		}
+    		long lsn;
+    		synchronized (this) {
+    			if (metrics != null) {
+    				metrics.entered(Metrics.Lock.COFFEE_MAKER, start);
+    			}
+    			Validation result = inventory.tryAddInventory(amtCoffee, amtMilk, amtSugar, amtChocolate);
+    			if (!result.isValid()) {
+    				return result;
+    			}
+    			lsn = log.logRestock(new int[] {amtCoffee, amtMilk, amtSugar, amtChocolate});
+    		}
+    		commit(lsn);
+    		return Validation.OK;
+    	} finally {
+    		if (metrics != null) {
+    			metrics.finished(Metrics.Operation.ADD_INVENTORY, start);
+    		}
+    	}
+    }
+    
+    /**
+     * Adds units of any registered ingredient, or returns why they
+     * cannot be added.  Unlike adding them to the inventory directly,
+     * this logs the restock if the coffee maker has a log.
+     * @param ingredient ingredient id
+     * @param units
+     * @return Validation
+     */
+    public Validation tryAddUnits(int ingredient, String units) {
+    	Metrics metrics = this.metrics;
+    	long start = Metrics.start(metrics);
+    	try {
+    		if (log == null) {
+    			return inventory.tryAddUnits(ingredient, units);
+    		}
+    		long lsn;
+    		synchronized (this) {
+    			if (metrics != null) {
+    				metrics.entered(Metrics.Lock.COFFEE_MAKER, start);
+    			}
+    			Validation result = inventory.tryAddUnits(ingredient, units);
+    			if (!result.isValid()) {
+    				return result;
+    			}
+    			int[] added = new int[ingredient + 1];
+    			added[ingredient] = Integer.parseInt(units);
+    			lsn = log.logRestock(added);
+    		}
+    		commit(lsn);
+    		return Validation.OK;
+    	} finally {
+    		if (metrics != null) {
+    			metrics.finished(Metrics.Operation.ADD_INVENTORY, start);
+    		}
+    	}
+    }
+    
+    /**
+     * Adds units of registered ingredients, indexed by id, as one
+     * atomic update that is logged if the coffee maker has a log.
+     */
+    private Validation tryAddUnits(int[] amounts) {
+    	Metrics metrics = this.metrics;
+    	long start = Metrics.start(metrics);
+    	try {
+    		if (log == null) {
+    			return inventory.tryAddUnits(amounts);
+    		}
+    		long lsn;
+    		synchronized (this) {
+    			if (metrics != null) {
+    				metrics.entered(Metrics.Lock.COFFEE_MAKER, start);
+    			}
+    			Validation result = inventory.tryAddUnits(amounts);
+    			if (!result.isValid()) {
+    				return result;
+    			}
+    			lsn = log.logRestock(amounts);
+    		}
+    		commit(lsn);
+    		return Validation.OK;
+    	} finally {
+    		if (metrics != null) {
+    			metrics.finished(Metrics.Operation.ADD_INVENTORY, start);
+    		}
+    	}
+    }
+    
+    /**
+     * Restocks from a delivery manifest (see {@link DeliveryManifest})
+     * read as UTF-8.  Lines are parsed with no lock held and added
+     * {@link DeliveryManifest#DEFAULT_BATCH_LINES} at a time, each
+     * batch as one atomic update.  Lines may name any registered
+     * ingredient, though a lock-free inventory refuses a batch holding
+     * one that is not built in.  If a line is malformed, the
+     * batches before it stay added and the rest are not.
+     * @param manifest
+     * @return long the number of lines of units added
+     * @throws IOException if the manifest cannot be read
+     * @throws InventoryException naming the line if a line, or the
+     * batch holding it, is rejected
+     */
+    public long restock(InputStream manifest) throws IOException, InventoryException {
+    	DeliveryManifest lines = new DeliveryManifest(
+    			new InputStreamReader(manifest, StandardCharsets.UTF_8), DeliveryManifest.DEFAULT_BATCH_LINES);
+    	int[] batch = new int[Ingredients.count()];
+    	long added = 0;
+    	long before = 0;
+    	for (;;) {
+    		if (batch.length < Ingredients.count()) {
+    			batch = new int[Ingredients.count()];
+    		}
+    		int read = lines.nextBatch(batch);
+    		if (read == 0) {
+    			break;
+    		}
+    		Validation result = tryAddUnits(batch);
+    		if (!result.isValid()) {
+    			throw new InventoryException("Lines " + (before + 1) + "-" + lines.getLineNumber() + ": "
+    					+ result.getMessage());
+    		}
+    		added += read;
+    		before = lines.getLineNumber();
+    	}
+    	return added;
+    }
+    
+    /**
+     * Restocks from a delivery manifest file.
+     * @param manifest
+     * @return long the number of lines of units added
+     * @throws IOException if the manifest cannot be read
+     * @throws InventoryException naming the line if a line, or the
+     * batch holding it, is rejected
+     * @see #restock(InputStream)
+     */
+    public long restock(Path manifest) throws IOException, InventoryException {
+    	try (InputStream in = Files.newInputStream(manifest)) {
+    		return restock(in);
+    	}
     }
     
     /**
@@ -100,36 +468,425 @@ public class CoffeeMaker {
         return inventory.toString();
     }
     
+    /**
+     * Refills a reusable snapshot with the inventory of the coffee
+     * maker and returns it.  Meant for dashboards that poll often:
+     * nothing is allocated, and the snapshot can be rendered with
+     * {@link InventorySnapshot#appendTo(Appendable)}.  Not
+     * synchronized: the inventory copies its counts consistently on
+     * its own, so polling never waits behind recipe changes.
+     * @param into
+     * @return InventorySnapshot
+     */
+    public InventorySnapshot checkInventory(InventorySnapshot into) {
+        return inventory.snapshot(into);
+    }
+    
     /**
      * Returns the change of a user's beverage purchase, or
-     * the user's money if the beverage cannot be made
+     * the user's money if the beverage cannot be made.
+     * Not synchronized: the recipe book and inventory guard
+     * their own state, so orders only contend inside the
+     * inventory.  With a coin changer, a sale's payment goes
+     * into the tubes as the fewest coins that make it.
      * @param r
      * @param amtPaid
      * @return int
      */
-    public synchronized int makeCoffee(int recipeToPurchase, int amtPaid) {
+    public int makeCoffee(int recipeToPurchase, int amtPaid) {
+        //Read the recipe once so an edit cannot change it mid-order
+        Recipe recipe = getRecipes()[recipeToPurchase];
+        if (makeCoffee(recipeToPurchase, recipe, amtPaid) == SalesLedger.Outcome.SOLD) {
+        	return amtPaid - recipe.getPrice();
+        }
+        return amtPaid;
+    }
+    
+    /**
+     * Returns the change of a beverage paid for in coins, counted
+     * smallest first as the coin changer counts them, or the
+     * value of the coins if the beverage cannot be made.  The
+     * coins of a sale go into the tubes to make later change; a
+     * refused order's coins stay out of them.
+     * @param recipeToPurchase
+     * @param coinsPaid
+     * @return int
+     */
+    public int makeCoffee(int recipeToPurchase, int[] coinsPaid) {
+        CoinChanger changer = this.changer;
+        if (changer == null) {
+        	throw new IllegalStateException("Coffee maker has no coin changer");
+        }
+        int amtPaid = changer.value(coinsPaid);
+        Recipe recipe = getRecipes()[recipeToPurchase];
+        if (makeCoffee(recipeToPurchase, recipe, amtPaid, changer) == SalesLedger.Outcome.SOLD) {
+        	changer.deposit(coinsPaid);
+        	return amtPaid - recipe.getPrice();
+        }
+        return amtPaid;
+    }
+    
+    /**
+     * Makes the given recipe, already read from the recipe book by
+     * the caller, and returns the outcome rather than the change.
+     * A sale's payment is credited to the coin tubes, if any.
+     * @param recipeToPurchase the recipe's index, for the ledger
+     * @param recipe null if there is no such recipe
+     * @param amtPaid
+     * @return SalesLedger.Outcome
+     */
+    SalesLedger.Outcome makeCoffee(int recipeToPurchase, Recipe recipe, int amtPaid) {
+        CoinChanger changer = this.changer;
+        SalesLedger.Outcome outcome = makeCoffee(recipeToPurchase, recipe, amtPaid, changer);
+        if (outcome == SalesLedger.Outcome.SOLD) {
+        	credit(changer, amtPaid);
+        }
+        return outcome;
+    }
+    
+    /**
+     * Puts a sale's payment, given only as an amount, into the coin
+     * tubes as the fewest coins that make it.  An amount no coins make
+     * cannot have been paid into them and is not credited.
+     */
+    private static void credit(CoinChanger changer, int amtPaid) {
+        if (changer != null) {
+        	int[] coins = changer.tendered(amtPaid);
+        	if (coins != null) {
+        		changer.deposit(coins);
+        	}
+        }
+    }
+    
+    private SalesLedger.Outcome makeCoffee(int recipeToPurchase, Recipe recipe, int amtPaid, CoinChanger changer) {
+        Metrics metrics = this.metrics;
+        long start = Metrics.start(metrics);
         int change = 0;
+        SalesLedger.Outcome outcome;
         
-        if (getRecipes()[recipeToPurchase] == null) {
+        if (recipe == null) {
         	change = amtPaid;
-        } else if (getRecipes()[recipeToPurchase].getPrice() <= amtPaid) {
-        	if (inventory.useIngredients(getRecipes()[recipeToPurchase])) {
-        		change = amtPaid - getRecipes()[recipeToPurchase].getPrice();
+        	outcome = SalesLedger.Outcome.NO_SUCH_RECIPE;
+        } else if (recipe.getPrice() <= amtPaid) {
+        	//Take the change out of the tubes before any ingredients
+        	int[] coins = changer == null ? null : changer.dispense(amtPaid - recipe.getPrice());
+        	//Log exactly what was taken, even if the recipe is edited meanwhile
+        	Recipe.Requirements required = recipe.compiled();
+        	if (changer != null && coins == null) {
+        		change = amtPaid;
+        		outcome = SalesLedger.Outcome.NO_CHANGE;
+        	} else if (inventory.useIngredients(required)) {
+        		change = amtPaid - recipe.getPrice();
+        		outcome = SalesLedger.Outcome.SOLD;
+        		if (log != null) {
+        			commit(log.logUse(required.units));
+        		}
         	} else {
+        		if (coins != null) {
+        			changer.giveBack(coins);
+        		}
         		change = amtPaid;
+        		outcome = SalesLedger.Outcome.OUT_OF_STOCK;
         	}
         } else {
         	change = amtPaid;
+        	outcome = SalesLedger.Outcome.INSUFFICIENT_FUNDS;
         }
         
-        return change;
+        SalesLedger ledger = this.ledger;
+        if (ledger != null) {
+        	ledger.record(recipeToPurchase, recipe == null ? 0 : recipe.getPrice(), amtPaid, change, outcome);
+        }
+        if (metrics != null) {
+        	metrics.recordOrder(recipeToPurchase, outcome, start);
+        }
+        return outcome;
     }
+    
+    /**
+     * Makes a burst of orders at once.  The recipes are looked up
+     * once and the inventory is visited once for the whole batch,
+     * but every order still succeeds or fails on its own, in
+     * arrival order.  change[i] receives the change for order i,
+     * or amtsPaid[i] if that beverage cannot be made; an unknown
+     * recipe index simply fails its own order.  A coffee maker
+     * giving coin change serves the orders one at a time, as the
+     * change each can get depends on the coins the ones before it
+     * took.
+     * @param recipesToPurchase
+     * @param amtsPaid
+     * @param change
+     * @return int the number of beverages made
+     */
+    public int makeCoffeeBatch(int[] recipesToPurchase, int[] amtsPaid, int[] change) {
+    	int orders = recipesToPurchase.length;
+    	if (amtsPaid.length != orders || change.length < orders) {
+    		throw new IllegalArgumentException("Each order needs an amount paid and a change slot");
+    	}
+    	return makeCoffeeBatch(recipesToPurchase, amtsPaid, orders, change, new boolean[orders],
+    			new SalesLedger.Outcome[orders]);
+    }
+    
+    /**
+     * Makes the first orders of a batch, setting outcomes[i] to what
+     * came of order i; served is scratch space for as many orders.
+     */
+    int makeCoffeeBatch(int[] recipesToPurchase, int[] amtsPaid, int orders, int[] change, boolean[] served,
+    		SalesLedger.Outcome[] outcomes) {
+    	Recipe[] recipes = getRecipes();
+    	if (changer != null) {
+    		int made = 0;
+    		for (int i = 0; i < orders; i++) {
+    			int index = recipesToPurchase[i];
+    			Recipe recipe = index >= 0 && index < recipes.length ? recipes[index] : null;
+    			outcomes[i] = makeCoffee(index, recipe, amtsPaid[i]);
+    			if (outcomes[i] == SalesLedger.Outcome.SOLD) {
+    				change[i] = amtsPaid[i] - recipe.getPrice();
+    				made++;
+    			} else {
+    				change[i] = amtsPaid[i];
+    			}
+    		}
+    		return made;
+    	}
+    	// Each order's price and requirements are read once, so an
+    	// edit mid-batch cannot split what is charged, taken and logged.
+    	Recipe.Requirements[] payable = new Recipe.Requirements[orders];
+    	int[] prices = new int[orders];
+    	for (int i = 0; i < orders; i++) {
+    		int index = recipesToPurchase[i];
+    		Recipe recipe = index >= 0 && index < recipes.length ? recipes[index] : null;
+    		if (recipe == null) {
+    			outcomes[i] = SalesLedger.Outcome.NO_SUCH_RECIPE;
+    			continue;
+    		}
+    		prices[i] = recipe.getPrice();
+    		if (prices[i] > amtsPaid[i]) {
+    			outcomes[i] = SalesLedger.Outcome.INSUFFICIENT_FUNDS;
+    		} else {
+    			payable[i] = recipe.compiled();
+    		}
+    	}
+    	
+    	inventory.useIngredients(payable, served);
+    	
+    	int made = 0;
+    	int[] used = new int[Inventory.INGREDIENTS];
+    	SalesLedger ledger = this.ledger;
+    	Metrics metrics = this.metrics;
+    	for (int i = 0; i < orders; i++) {
+    		if (served[i]) {
+    			outcomes[i] = SalesLedger.Outcome.SOLD;
+    			change[i] = amtsPaid[i] - prices[i];
+    			int[] required = payable[i].units;
+    			if (used.length < required.length) {
+    				used = Arrays.copyOf(used, required.length);
+    			}
+    			for (int j = 0; j < required.length; j++) {
+    				used[j] += required[j];
+    			}
+    			made++;
+    		} else {
+    			if (payable[i] != null) {
+    				outcomes[i] = SalesLedger.Outcome.OUT_OF_STOCK;
+    			}
+    			change[i] = amtsPaid[i];
+    		}
+    		if (ledger != null) {
+    			ledger.record(recipesToPurchase[i], prices[i], amtsPaid[i], change[i], outcomes[i]);
+    		}
+    		if (metrics != null) {
+    			metrics.recordOutcome(outcomes[i]);
+    		}
+    	}
+    	if (log != null && made > 0) {
+    		commit(log.logUse(used));
+    	}
+    	return made;
+    }
+
+	/**
+	 * First stage of a pipelined order: holds the ingredients for the
+	 * recipe while payment is taken, so a slow payment holds up no
+	 * other order.  Returns null if there is no such recipe or not
+	 * enough ingredients; otherwise pass the reservation to
+	 * {@link #purchase(Reservation, int)} before it times out.
+	 * @param recipeToPurchase
+	 * @param timeout
+	 * @param unit
+	 * @return Reservation
+	 */
+	public Reservation reserve(int recipeToPurchase, long timeout, TimeUnit unit) {
+		Recipe recipe = getRecipes()[recipeToPurchase];
+		Reservation reservation = recipe == null ? null : inventory.reserve(recipe, timeout, unit);
+		if (reservation == null) {
+			recordAttempt(recipeToPurchase, recipe == null ? 0 : recipe.getPrice(), 0, 0,
+					recipe == null ? SalesLedger.Outcome.NO_SUCH_RECIPE : SalesLedger.Outcome.OUT_OF_STOCK);
+			return null;
+		}
+		reservation.slot = recipeToPurchase;
+		return reservation;
+	}
+
+	/**
+	 * Second stage of a pipelined order: takes payment for a reserved
+	 * beverage and returns the change.  Returns the user's money, and
+	 * puts the ingredients back, if it does not cover the price or
+	 * the coin tubes cannot make the change; also
+	 * returns the user's money if the reservation has already timed
+	 * out or been settled.
+	 * @param reservation
+	 * @param amtPaid
+	 * @return int
+	 * @throws IllegalArgumentException if the reservation was made on
+	 * another coffee maker
+	 */
+	public int purchase(Reservation reservation, int amtPaid) {
+		if (reservation.getInventory() != inventory) {
+			throw new IllegalArgumentException("Reservation was made on another coffee maker");
+		}
+		Recipe recipe = reservation.getRecipe();
+		int change = amtPaid;
+		SalesLedger.Outcome outcome;
+		CoinChanger changer = this.changer;
+		int[] coins = null;
+		if (recipe.getPrice() > amtPaid) {
+			reservation.release();
+			outcome = SalesLedger.Outcome.INSUFFICIENT_FUNDS;
+		} else if (changer != null && (coins = changer.dispense(amtPaid - recipe.getPrice())) == null) {
+			reservation.release();
+			outcome = SalesLedger.Outcome.NO_CHANGE;
+		} else if (reservation.commit()) {
+			change = amtPaid - recipe.getPrice();
+			outcome = SalesLedger.Outcome.SOLD;
+			credit(changer, amtPaid);
+			if (log != null) {
+				commit(log.logUse(reservation.getUnits()));
+			}
+		} else {
+			if (coins != null) {
+				changer.giveBack(coins);
+			}
+			outcome = SalesLedger.Outcome.OUT_OF_STOCK;
+		}
+		recordAttempt(reservation.slot, recipe.getPrice(), amtPaid, change, outcome);
+		return change;
+	}
+
+	/**
+	 * Records a pipelined order in whichever of the ledger and
+	 * metrics are kept.
+	 */
+	private void recordAttempt(int slot, int price, int amtPaid, int change, SalesLedger.Outcome outcome) {
+		SalesLedger ledger = this.ledger;
+		if (ledger != null) {
+			ledger.record(slot, price, amtPaid, change, outcome);
+		}
+		Metrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.recordOutcome(outcome);
+		}
+	}
+
+	/**
+	 * Starts recording every purchase attempt in the given ledger,
+	 * or stops recording if it is null.
+	 * @param ledger
+	 */
+	public void setSalesLedger(SalesLedger ledger) {
+		this.ledger = ledger;
+	}
+
+	/**
+	 * Starts giving change from the given coin tubes, refusing orders
+	 * whose change they cannot make, or gives unlimited change again
+	 * if it is null.
+	 * @param changer
+	 */
+	public void setCoinChanger(CoinChanger changer) {
+		this.changer = changer;
+	}
+
+	/**
+	 * Starts timing orders, restocks and recipe changes into the
+	 * given metrics, or stops if it is null.
+	 * @param metrics
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+		inventory.setMetrics(metrics);
+		recipeBook.setMetrics(metrics);
+	}
+
+	/**
+	 * Snapshots the recipe book and inventory so that recovery only
+	 * replays what is logged after this point.  Orders keep being
+	 * taken while the snapshot is written.
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public void checkpoint() throws IOException {
+		if (log == null) {
+			throw new IllegalStateException("Coffee maker has no log");
+		}
+		WriteAheadLog.Checkpoint checkpoint;
+		//Recipe changes are logged under this lock, so the book
+		//matches the log exactly at the point it is rotated
+		synchronized (this) {
+			checkpoint = log.rotate(recipeBook.snapshot());
+		}
+		log.checkpoint(checkpoint);
+	}
+
+	/**
+	 * Waits until a logged change is durable.  The change has
+	 * already been applied, so a failure here cannot undo it.
+	 */
+	private void commit(long lsn) {
+		try {
+			log.sync(lsn);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not log change", e);
+		}
+		if (log.checkpointDue(lsn)) {
+			Thread checkpointer = new Thread(() -> {
+				try {
+					checkpoint();
+				} catch (IOException | UncheckedIOException e) {
+					// The log still holds everything; the next checkpoint retries.
+				}
+			}, "checkpoint");
+			checkpointer.setDaemon(true);
+			checkpointer.start();
+		}
+	}
 
 	/**
 	 * Returns the list of Recipes in the RecipeBook.
 	 * @return Recipe []
 	 */
-	public synchronized Recipe[] getRecipes() {
+	public Recipe[] getRecipes() {
 		return recipeBook.getRecipes();
 	}
+
+	/**
+	 * Returns how many times a recipe in the book has been changed
+	 * in place; replacing a recipe changes the array instead.
+	 * @return long
+	 */
+	long getRecipeEdits() {
+		return recipeBook.getRecipeEdits();
+	}
+
+	/**
+	 * Returns the positions in {@link #getRecipes()} of up to limit
+	 * recipes whose names start with the prefix, ignoring case, in
+	 * order of name, for search boxes that query on every keystroke.
+	 * The name index is kept up to date by every add, edit and delete.
+	 * @param prefix
+	 * @param limit
+	 * @return int[]
+	 */
+	public int[] findRecipes(String prefix, int limit) {
+		return recipeBook.findRecipes(prefix, limit);
+	}
 }
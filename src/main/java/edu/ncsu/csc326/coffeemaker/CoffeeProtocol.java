@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+/**
+ * Wire format shared by {@link CoffeeServer} and {@link CoffeeClient}.
+ *
+ * Every frame is a big-endian int giving the number of bytes that
+ * follow, then an opcode byte.  Requests carry their int arguments
+ * after the opcode; responses echo the opcode, then a status byte and
+ * any results.  A connection may send any number of requests before
+ * reading; responses come back in request order.
+ * <pre>
+ * MAKE_COFFEE      request: recipe, paid       response: outcome ordinal; change
+ * CHECK_INVENTORY  request: -                  response: 0; coffee, milk, sugar, chocolate
+ * GET_RECIPES      request: -                  response: 0; count, then per recipe:
+ *                                                slot, price, coffee, milk, sugar,
+ *                                                chocolate, short length, UTF-8 name
+ * ADD_INVENTORY    request: coffee, milk,      response: {@link Validation} ordinal
+ *                           sugar, chocolate
+ * </pre>
+ * Recipes carry only the four built-in amounts: other ingredients
+ * are registered with ids that mean nothing outside the server.
+ * A request with an unknown opcode or the wrong length gets status
+ * {@link #BAD_REQUEST}; a frame longer than {@link #MAX_REQUEST} closes
+ * the connection.
+ */
+final class CoffeeProtocol {
+	static final byte MAKE_COFFEE = 1;
+	static final byte CHECK_INVENTORY = 2;
+	static final byte GET_RECIPES = 3;
+	static final byte ADD_INVENTORY = 4;
+
+	/** Status of a request the server could not understand */
+	static final byte BAD_REQUEST = (byte) 0xFF;
+
+	/** Bytes in the length prefix */
+	static final int LENGTH_BYTES = 4;
+	/** Longest request body, opcode included */
+	static final int MAX_REQUEST = 64;
+	/** Request bodies, opcode included */
+	static final int MAKE_COFFEE_LENGTH = 9;
+	static final int CHECK_INVENTORY_LENGTH = 1;
+	static final int GET_RECIPES_LENGTH = 1;
+	static final int ADD_INVENTORY_LENGTH = 17;
+	/** Response bodies, opcode and status included */
+	static final int MAKE_COFFEE_RESPONSE = 6;
+	static final int CHECK_INVENTORY_RESPONSE = 18;
+	static final int STATUS_RESPONSE = 2;
+
+	private CoffeeProtocol() {
+	}
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Takes orders for one coffee maker over the network, for kiosks and
+ * mobile ordering.  See {@link CoffeeProtocol} for the wire format and
+ * {@link CoffeeClient} for a client.
+ *
+ * One thread runs a selector over every connection and calls the
+ * coffee maker itself, so nothing blocks it but a durable coffee
+ * maker waiting for its log.  Every complete request in a read is
+ * answered before the socket is read again, unless the unsent
+ * responses reach a high water mark: the rest then wait until the
+ * client takes some.  Consecutive orders are served together with
+ * one makeCoffeeBatch call.  Connection
+ * buffers are pooled, so a steady load allocates nothing per request.
+ */
+public class CoffeeServer implements Closeable {
+	/** Bytes read from a connection at once */
+	private static final int READ_BUFFER = 16 * 1024;
+	/** Initial bytes of responses held for a connection */
+	private static final int WRITE_BUFFER = 64 * 1024;
+	/** Unsent response bytes at which a connection stops being read */
+	private static final int HIGH_WATER = 1024 * 1024;
+	/** Most orders served by one batch */
+	private static final int MAX_ORDERS = 256;
+
+	private final CoffeeMaker coffeeMaker;
+	private final Selector selector;
+	private final ServerSocketChannel server;
+	private final Thread loop;
+	private volatile boolean closed;
+
+	/** Buffers of closed connections, for the next ones */
+	private final ArrayDeque<ByteBuffer> readBuffers = new ArrayDeque<ByteBuffer>();
+	private final ArrayDeque<ByteBuffer> writeBuffers = new ArrayDeque<ByteBuffer>();
+
+	/** Orders read but not yet served, all from one connection */
+	private final int[] orders = new int[MAX_ORDERS];
+	private final int[] paid = new int[MAX_ORDERS];
+	private final int[] change = new int[MAX_ORDERS];
+	private final boolean[] served = new boolean[MAX_ORDERS];
+	private final SalesLedger.Outcome[] outcomes = new SalesLedger.Outcome[MAX_ORDERS];
+	private int pending;
+
+	private final InventorySnapshot inventory = new InventorySnapshot();
+	/** The recipe array last encoded, and its encoding */
+	private Recipe[] encodedRecipes;
+	private long encodedEdits;
+	private byte[] recipeBytes;
+
+	private CoffeeServer(CoffeeMaker coffeeMaker, InetSocketAddress address) throws IOException {
+		this.coffeeMaker = coffeeMaker;
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		try {
+			server.bind(address);
+			server.configureBlocking(false);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			server.close();
+			selector.close();
+			throw e;
+		}
+		loop = new Thread(this::serve, "coffee-server");
+		loop.setDaemon(true);
+	}
+
+	/**
+	 * Starts taking orders for the coffee maker on the given address;
+	 * port 0 picks a free port.  Orders are made on the selector
+	 * thread, so a durable coffee maker holds up every connection,
+	 * not just the ordering one, while it waits for each log sync.
+	 * @param coffeeMaker
+	 * @param address
+	 * @return CoffeeServer
+	 * @throws IOException if the address cannot be bound
+	 */
+	public static CoffeeServer start(CoffeeMaker coffeeMaker, InetSocketAddress address) throws IOException {
+		CoffeeServer server = new CoffeeServer(coffeeMaker, address);
+		server.loop.start();
+		return server;
+	}
+
+	/**
+	 * @return the port the server listens on
+	 */
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * Stops taking orders and closes every connection.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		selector.wakeup();
+		try {
+			loop.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void serve() {
+		try {
+			while (!closed) {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							accept();
+						} else {
+							Connection connection = (Connection) key.attachment();
+							if (key.isWritable()) {
+								connection.write();
+							}
+							if (key.isValid() && key.isReadable()) {
+								connection.read();
+							}
+						}
+					} catch (IOException | RuntimeException e) {
+						// A failed connection, or a change the log could
+						// not take, ends that connection only.
+						if (key.attachment() != null) {
+							((Connection) key.attachment()).close();
+						}
+					}
+				}
+			}
+		} catch (IOException | ClosedSelectorException e) {
+			// Nothing more can be served.
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				try {
+					key.channel().close();
+				} catch (IOException e) {
+					// Closing anyway.
+				}
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				// Closing anyway.
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = server.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			Connection connection = new Connection(channel);
+			connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+		}
+	}
+
+	private static ByteBuffer take(ArrayDeque<ByteBuffer> pool, int size) {
+		ByteBuffer buffer = pool.poll();
+		return buffer == null ? ByteBuffer.allocate(size) : buffer;
+	}
+
+	/** State of one client; only touched by the selector thread */
+	private final class Connection {
+		final SocketChannel channel;
+		SelectionKey key;
+		/** Bytes read but not yet handled, in write mode */
+		ByteBuffer in = take(readBuffers, READ_BUFFER);
+		/** Responses not yet sent, in write mode */
+		ByteBuffer out = take(writeBuffers, WRITE_BUFFER);
+		/** Whether requests were left in the read buffer at the high water mark */
+		boolean stalled;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		void read() throws IOException {
+			if (channel.read(in) < 0) {
+				close();
+				return;
+			}
+			process();
+		}
+
+		/**
+		 * Handles the whole requests read so far, stopping at the high
+		 * water mark; the rest wait in the read buffer until sending
+		 * brings the responses back under it.
+		 */
+		private void process() throws IOException {
+			do {
+				stalled = false;
+				in.flip();
+				while (in.remaining() >= CoffeeProtocol.LENGTH_BYTES) {
+					if (out.position() >= HIGH_WATER) {
+						stalled = true;
+						break;
+					}
+					int length = in.getInt(in.position());
+					if (length < 1 || length > CoffeeProtocol.MAX_REQUEST) {
+						close();
+						return;
+					}
+					if (in.remaining() < CoffeeProtocol.LENGTH_BYTES + length) {
+						break;
+					}
+					int end = in.position() + CoffeeProtocol.LENGTH_BYTES + length;
+					in.position(in.position() + CoffeeProtocol.LENGTH_BYTES);
+					handle(in.get(), length);
+					in.position(end);
+				}
+				serveOrders(this);
+				in.compact();
+				flush();
+			} while (stalled && key.isValid() && out.position() < HIGH_WATER);
+		}
+
+		/** Sends what the socket takes, then resumes any stalled requests. */
+		void write() throws IOException {
+			flush();
+			if (stalled && key.isValid() && out.position() < HIGH_WATER) {
+				process();
+			}
+		}
+
+		private void handle(byte op, int length) {
+			if (op == CoffeeProtocol.MAKE_COFFEE && length == CoffeeProtocol.MAKE_COFFEE_LENGTH) {
+				orders[pending] = in.getInt();
+				paid[pending] = in.getInt();
+				if (++pending == MAX_ORDERS) {
+					serveOrders(this);
+				}
+				return;
+			}
+			serveOrders(this);
+			if (op == CoffeeProtocol.CHECK_INVENTORY && length == CoffeeProtocol.CHECK_INVENTORY_LENGTH) {
+				coffeeMaker.checkInventory(inventory);
+				reserve(CoffeeProtocol.LENGTH_BYTES + CoffeeProtocol.CHECK_INVENTORY_RESPONSE);
+				out.putInt(CoffeeProtocol.CHECK_INVENTORY_RESPONSE).put(op).put((byte) 0);
+				for (int units : inventory.units) {
+					out.putInt(units);
+				}
+			} else if (op == CoffeeProtocol.GET_RECIPES && length == CoffeeProtocol.GET_RECIPES_LENGTH) {
+				byte[] recipes = encodeRecipes();
+				reserve(CoffeeProtocol.LENGTH_BYTES + CoffeeProtocol.STATUS_RESPONSE + recipes.length);
+				out.putInt(CoffeeProtocol.STATUS_RESPONSE + recipes.length).put(op).put((byte) 0).put(recipes);
+			} else if (op == CoffeeProtocol.ADD_INVENTORY && length == CoffeeProtocol.ADD_INVENTORY_LENGTH) {
+				Validation result = coffeeMaker.tryAddInventory(in.getInt(), in.getInt(), in.getInt(), in.getInt());
+				status(op, (byte) result.ordinal());
+			} else {
+				status(op, CoffeeProtocol.BAD_REQUEST);
+			}
+		}
+
+		private void status(byte op, byte status) {
+			reserve(CoffeeProtocol.LENGTH_BYTES + CoffeeProtocol.STATUS_RESPONSE);
+			out.putInt(CoffeeProtocol.STATUS_RESPONSE).put(op).put(status);
+		}
+
+		/** Makes room for the given number of response bytes. */
+		void reserve(int bytes) {
+			if (out.remaining() < bytes) {
+				ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+				out.flip();
+				bigger.put(out);
+				out = bigger;
+			}
+		}
+
+		void flush() throws IOException {
+			out.flip();
+			channel.write(out);
+			out.compact();
+			if (!key.isValid()) {
+				return;
+			}
+			int interest = out.position() < HIGH_WATER ? SelectionKey.OP_READ : 0;
+			if (out.position() > 0) {
+				interest |= SelectionKey.OP_WRITE;
+			}
+			key.interestOps(interest);
+		}
+
+		void close() {
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// Closing anyway.
+			}
+			pending = 0;
+			if (in != null) {
+				in.clear();
+				readBuffers.push(in);
+				in = null;
+			}
+			if (out != null && out.capacity() == WRITE_BUFFER) {
+				out.clear();
+				writeBuffers.push(out);
+			}
+			out = null;
+		}
+	}
+
+	/**
+	 * Serves the orders read from the connection so far and queues
+	 * their responses.
+	 */
+	private void serveOrders(Connection connection) {
+		if (pending == 0) {
+			return;
+		}
+		coffeeMaker.makeCoffeeBatch(orders, paid, pending, change, served, outcomes);
+		connection.reserve(pending * (CoffeeProtocol.LENGTH_BYTES + CoffeeProtocol.MAKE_COFFEE_RESPONSE));
+		for (int i = 0; i < pending; i++) {
+			connection.out.putInt(CoffeeProtocol.MAKE_COFFEE_RESPONSE).put(CoffeeProtocol.MAKE_COFFEE)
+					.put((byte) outcomes[i].ordinal()).putInt(change[i]);
+		}
+		pending = 0;
+	}
+
+	/**
+	 * Encodes the recipes, reusing the last encoding until the recipe
+	 * book changes or a recipe in it is edited in place.
+	 */
+	private byte[] encodeRecipes() {
+		// Read before the recipes, so an edit made while encoding
+		// leaves the cache behind and the next request encodes again.
+		long edits = coffeeMaker.getRecipeEdits();
+		Recipe[] recipes = coffeeMaker.getRecipes();
+		if (recipes == encodedRecipes && edits == encodedEdits) {
+			return recipeBytes;
+		}
+		int count = 0;
+		int size = 4;
+		byte[][] names = new byte[recipes.length][];
+		for (int i = 0; i < recipes.length; i++) {
+			if (recipes[i] != null) {
+				names[i] = recipes[i].getName().getBytes(StandardCharsets.UTF_8);
+				if (names[i].length > Short.MAX_VALUE) {
+					names[i] = new byte[0];
+				}
+				size += (2 + Inventory.INGREDIENTS) * 4 + 2 + names[i].length;
+				count++;
+			}
+		}
+		ByteBuffer encoded = ByteBuffer.allocate(size);
+		encoded.putInt(count);
+		for (int i = 0; i < recipes.length; i++) {
+			if (recipes[i] != null) {
+				encoded.putInt(i).putInt(recipes[i].getPrice());
+				// Registered ingredients have ids only this JVM knows, so only the built-ins are sent.
+				int[] required = recipes[i].getRequirements();
+				for (int k = 0; k < Inventory.INGREDIENTS; k++) {
+					encoded.putInt(required[k]);
+				}
+				encoded.putShort((short) names[i].length).put(names[i]);
+			}
+		}
+		encodedRecipes = recipes;
+		encodedEdits = edits;
+		recipeBytes = encoded.array();
+		return recipeBytes;
+	}
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.Arrays;
+
+/**
+ * The coin tubes of a machine that gives change.  Each denomination
+ * has a finite count, so change is worked out with the coins actually
+ * in the tubes; greedy largest-first would miss 30 from a 25 and three
+ * 10s.
+ *
+ * The fewest coins that make every amount up to the largest change
+ * are kept in a table, one layer per denomination, so checking and
+ * dispensing change cost a lookup and a walk down the layers.  A
+ * deposit or dispense only rebuilds the layers from the lowest
+ * denomination it touched upward, each in one pass over the amounts.
+ *
+ * Coins paid for an order are held in escrow, not in the tubes: a
+ * refused order gets its own coins back, and the coins of a sold one
+ * are deposited to make later change, as
+ * {@link CoffeeMaker#makeCoffee(int, int[])} does.  An amount paid
+ * with no coins given is taken to have come in the fewest coins that
+ * make it; see {@link #tendered(int)}.
+ */
+public class CoinChanger {
+	/** Table entry for an amount no coins can make */
+	private static final int NONE = Integer.MAX_VALUE / 2;
+
+	/** Coin values, smallest first */
+	private final int[] denominations;
+	private final int[] counts;
+	/** Greatest common divisor of the denominations; amounts are indexed in these steps */
+	private final int unit;
+	/** Largest amount the table covers, in units */
+	private final int maxUnits;
+	/**
+	 * fewest[i][a]: fewest coins of the i + 1 smallest denominations
+	 * that make a units, or NONE
+	 */
+	private final int[][] fewest;
+	/**
+	 * Fewest coins below the largest, with no limit on any, that make
+	 * each amount in units, and the last coin taken for it.  An amount
+	 * paid never needs more than this: among as many smaller coins as
+	 * the largest is worth in units, some make a multiple of it.
+	 */
+	private final int[] fewestFree;
+	private final int[] lastFree;
+	/** Sliding-window scratch: positions and values of the window minima */
+	private final int[] windowAt;
+	private final int[] windowValue;
+
+	/**
+	 * Creates empty tubes.
+	 * @param denominations coin values, all positive and different
+	 * @param maxChange the largest change ever given
+	 */
+	public CoinChanger(int[] denominations, int maxChange) {
+		this.denominations = denominations.clone();
+		Arrays.sort(this.denominations);
+		int gcd = 0;
+		for (int i = 0; i < this.denominations.length; i++) {
+			if (this.denominations[i] <= 0 || (i > 0 && this.denominations[i] == this.denominations[i - 1])) {
+				throw new IllegalArgumentException("Coin values must be positive and different");
+			}
+			gcd = gcd(gcd, this.denominations[i]);
+		}
+		if (gcd == 0 || maxChange < 0) {
+			throw new IllegalArgumentException("Need at least one coin and a change limit");
+		}
+		this.unit = gcd;
+		this.maxUnits = maxChange / gcd;
+		this.counts = new int[this.denominations.length];
+		this.fewest = new int[this.denominations.length][maxUnits + 1];
+		this.windowAt = new int[maxUnits + 1];
+		this.windowValue = new int[maxUnits + 1];
+		rebuild(0);
+
+		int top = this.denominations[this.denominations.length - 1] / gcd;
+		this.fewestFree = new int[top * top + 1];
+		this.lastFree = new int[fewestFree.length];
+		Arrays.fill(fewestFree, 1, fewestFree.length, NONE);
+		for (int a = 1; a < fewestFree.length; a++) {
+			for (int i = 0; i < this.denominations.length - 1; i++) {
+				int step = this.denominations[i] / gcd;
+				if (step <= a && fewestFree[a - step] + 1 < fewestFree[a]) {
+					fewestFree[a] = fewestFree[a - step] + 1;
+					lastFree[a] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the fewest coins that make the amount with no limit on
+	 * any coin, smallest coin first, or null if no coins make it.
+	 * This is what an amount paid as a number is taken to have been
+	 * tendered in.
+	 * @param amount
+	 * @return int[]
+	 */
+	public int[] tendered(int amount) {
+		if (amount < 0 || amount % unit != 0) {
+			return null;
+		}
+		int a = amount / unit;
+		int largest = denominations.length - 1;
+		int top = denominations[largest] / unit;
+		long best = NONE;
+		int rest = -1;
+		// The smaller coins make some r below the table's end, the largest coin the rest.
+		for (int r = a % top; r <= a && r < fewestFree.length; r += top) {
+			if (fewestFree[r] < NONE && fewestFree[r] + (long) (a - r) / top < best) {
+				best = fewestFree[r] + (long) (a - r) / top;
+				rest = r;
+			}
+		}
+		if (rest < 0) {
+			return null;
+		}
+		int[] coins = new int[denominations.length];
+		coins[largest] = (a - rest) / top;
+		for (int r = rest; r > 0; r -= denominations[lastFree[r]] / unit) {
+			coins[lastFree[r]]++;
+		}
+		return coins;
+	}
+
+	/**
+	 * Adds coins to a tube.
+	 * @param coin the coin's value
+	 * @param count
+	 */
+	public synchronized void deposit(int coin, int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Cannot deposit a negative number of coins");
+		}
+		int i = denomination(coin);
+		if (count > 0) {
+			counts[i] += count;
+			rebuild(i);
+		}
+	}
+
+	/**
+	 * Adds coins paid for a sale to the tubes, rebuilding the table
+	 * once for all of them.
+	 * @param coins how many of each coin, smallest coin first
+	 */
+	public synchronized void deposit(int[] coins) {
+		value(coins);
+		giveBack(coins);
+	}
+
+	/**
+	 * @param coins how many of each coin, smallest coin first
+	 * @return what the coins are worth
+	 */
+	public int value(int[] coins) {
+		if (coins.length != denominations.length) {
+			throw new IllegalArgumentException("Need a count for each of " + denominations.length + " coins");
+		}
+		long value = 0;
+		for (int i = 0; i < coins.length; i++) {
+			if (coins[i] < 0) {
+				throw new IllegalArgumentException("Cannot pay a negative number of coins");
+			}
+			value += (long) coins[i] * denominations[i];
+		}
+		if (value > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Coins are worth too much to count");
+		}
+		return (int) value;
+	}
+
+	/**
+	 * @param coin the coin's value
+	 * @return the number of such coins in the tubes
+	 */
+	public synchronized int getCount(int coin) {
+		return counts[denomination(coin)];
+	}
+
+	/**
+	 * @param amount
+	 * @return true if the coins in the tubes can make the amount exactly
+	 */
+	public synchronized boolean canMakeChange(int amount) {
+		return amount == 0 || (amount > 0 && amount % unit == 0 && amount / unit <= maxUnits
+				&& fewest[fewest.length - 1][amount / unit] < NONE);
+	}
+
+	/**
+	 * Takes the fewest coins that make the amount out of the tubes.
+	 * Returns how many of each coin were taken, smallest coin first,
+	 * or null, taking nothing, if the amount cannot be made.
+	 * @param amount
+	 * @return int[]
+	 */
+	public synchronized int[] dispense(int amount) {
+		if (!canMakeChange(amount)) {
+			return null;
+		}
+		int[] coins = new int[denominations.length];
+		int a = amount / unit;
+		int lowest = denominations.length;
+		for (int i = denominations.length - 1; i >= 0 && a > 0; i--) {
+			int step = denominations[i] / unit;
+			int target = fewest[i][a];
+			int k = 0;
+			while (below(i, a - k * step) + k != target) {
+				k++;
+			}
+			if (k > 0) {
+				coins[i] = k;
+				counts[i] -= k;
+				a -= k * step;
+				lowest = i;
+			}
+		}
+		if (lowest < denominations.length) {
+			rebuild(lowest);
+		}
+		return coins;
+	}
+
+	/**
+	 * Puts back coins taken by {@link #dispense(int)} for an order
+	 * that was then refused.
+	 */
+	synchronized void giveBack(int[] coins) {
+		int lowest = denominations.length;
+		for (int i = coins.length - 1; i >= 0; i--) {
+			if (coins[i] > 0) {
+				counts[i] += coins[i];
+				lowest = i;
+			}
+		}
+		if (lowest < denominations.length) {
+			rebuild(lowest);
+		}
+	}
+
+	/**
+	 * Returns the fewest coins making a units from the denominations
+	 * below i.
+	 */
+	private int below(int i, int a) {
+		if (i == 0) {
+			return a == 0 ? 0 : NONE;
+		}
+		return fewest[i - 1][a];
+	}
+
+	/**
+	 * Recomputes the layers from denomination i up.  A layer takes
+	 * k of its coins on top of the layer below, 0 <= k <= count, so
+	 * along each residue class of its step it is a sliding-window
+	 * minimum of below(a - k * step) + k, kept with a monotonic deque.
+	 */
+	private void rebuild(int from) {
+		for (int i = from; i < denominations.length; i++) {
+			int step = denominations[i] / unit;
+			int count = counts[i];
+			int[] layer = fewest[i];
+			for (int r = 0; r < step && r <= maxUnits; r++) {
+				int head = 0;
+				int tail = 0;
+				for (int j = 0, a = r; a <= maxUnits; j++, a += step) {
+					// below(a) + (j' - j) for the amount j' steps up; store it less j'.
+					int value = below(i, a);
+					if (value < NONE) {
+						value -= j;
+						while (tail > head && windowValue[tail - 1] >= value) {
+							tail--;
+						}
+						windowAt[tail] = j;
+						windowValue[tail++] = value;
+					}
+					while (tail > head && windowAt[head] < j - count) {
+						head++;
+					}
+					layer[a] = tail > head ? windowValue[head] + j : NONE;
+				}
+			}
+		}
+	}
+
+	private int denomination(int coin) {
+		int i = Arrays.binarySearch(denominations, coin);
+		if (i < 0) {
+			throw new IllegalArgumentException("No tube for coins of " + coin);
+		}
+		return i;
+	}
+
+	private static int gcd(int a, int b) {
+		while (b != 0) {
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+}
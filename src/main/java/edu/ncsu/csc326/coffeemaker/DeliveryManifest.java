@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+
+/**
+ * A delivery manifest read as a stream of batches.
+ *
+ * Each line reads "ingredient,units", for instance "coffee,12".
+ * The names of coffee, milk, sugar and chocolate are not case
+ * sensitive; any other ingredient is named exactly as it was
+ * registered with {@link Ingredients}.  Blank lines, lines starting
+ * with '#' and an "ingredient,units" header are skipped.  Lines are
+ * parsed one batch at a time, with no lock held, and a batch is summed
+ * into one amount per ingredient so it can be added as one update.
+ * See {@link CoffeeMaker#restock(java.io.InputStream)}.
+ */
+public class DeliveryManifest implements Closeable {
+	/** Default number of lines summed into one batch */
+	public static final int DEFAULT_BATCH_LINES = 4096;
+
+	/** Built-in ingredient names, indexed by ingredient id */
+	private static final String[] NAMES = {"coffee", "milk", "sugar", "chocolate"};
+
+	private final BufferedReader in;
+	private final int batchLines;
+	private long lineNumber;
+	/** Whether a line of units has been read, after which no header is allowed */
+	private boolean started;
+
+	/**
+	 * @param in
+	 * @param batchLines number of lines summed into each batch
+	 */
+	public DeliveryManifest(Reader in, int batchLines) {
+		if (batchLines < 1) {
+			throw new IllegalArgumentException("A batch needs at least one line");
+		}
+		this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+		this.batchLines = batchLines;
+	}
+
+	/**
+	 * Reads up to a batch of lines and sums their units into the
+	 * array, indexed by ingredient id.  An ingredient registered with
+	 * an id past the end of the array is taken as unknown, so size it
+	 * to {@link Ingredients#count()} before each batch.
+	 * @param into
+	 * @return int the number of lines of units summed, or 0, leaving
+	 * the array zeroed, if the manifest is exhausted
+	 * @throws IOException if the manifest cannot be read
+	 * @throws InventoryException naming the line if a line is malformed
+	 */
+	public int nextBatch(int[] into) throws IOException, InventoryException {
+		long[] sums = new long[into.length];
+		int read = 0;
+		String line;
+		while (read < batchLines && (line = in.readLine()) != null) {
+			lineNumber++;
+			int comma = line.indexOf(',');
+			if (comma < 0) {
+				if (isBlank(line) || line.trim().startsWith("#")) {
+					continue;
+				}
+				throw malformed("expected ingredient,units");
+			}
+			int ingredient = ingredient(line, comma);
+			if (ingredient < 0 || ingredient >= sums.length) {
+				if (!started && line.trim().equalsIgnoreCase("ingredient,units")) {
+					continue;
+				}
+				throw malformed("unknown ingredient");
+			}
+			sums[ingredient] += units(line, comma + 1, name(ingredient));
+			started = true;
+			read++;
+		}
+		for (int i = 0; i < sums.length; i++) {
+			if (sums[i] > Integer.MAX_VALUE) {
+				throw malformed("too many units of " + name(i) + " in one batch");
+			}
+			into[i] = (int) sums[i];
+		}
+		return read;
+	}
+
+	/**
+	 * @return the number of lines read so far
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Returns the id of the ingredient named before the comma, or -1.
+	 * Only a name that is not built in costs a substring.
+	 */
+	private static int ingredient(String line, int comma) {
+		int from = 0;
+		while (from < comma && Character.isWhitespace(line.charAt(from))) {
+			from++;
+		}
+		int to = comma;
+		while (to > from && Character.isWhitespace(line.charAt(to - 1))) {
+			to--;
+		}
+		for (int i = 0; i < NAMES.length; i++) {
+			if (to - from == NAMES[i].length() && line.regionMatches(true, from, NAMES[i], 0, to - from)) {
+				return i;
+			}
+		}
+		return Ingredients.id(line.substring(from, to));
+	}
+
+	private static String name(int ingredient) {
+		return ingredient < NAMES.length ? NAMES[ingredient] : Ingredients.name(ingredient);
+	}
+
+	/**
+	 * Parses the digits after the comma without making a substring.
+	 */
+	private int units(String line, int from, String ingredient) throws InventoryException {
+		int end = line.length();
+		while (from < end && Character.isWhitespace(line.charAt(from))) {
+			from++;
+		}
+		while (end > from && Character.isWhitespace(line.charAt(end - 1))) {
+			end--;
+		}
+		if (from == end) {
+			throw malformed("units of " + ingredient + " must be a positive integer");
+		}
+		long units = 0;
+		for (int i = from; i < end; i++) {
+			int digit = line.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw malformed("units of " + ingredient + " must be a positive integer");
+			}
+			units = units * 10 + digit;
+			if (units > Integer.MAX_VALUE) {
+				throw malformed("units of " + ingredient + " are too large");
+			}
+		}
+		return (int) units;
+	}
+
+	private static boolean isBlank(String line) {
+		return line.trim().isEmpty();
+	}
+
+	private InventoryException malformed(String problem) {
+		return new InventoryException("Line " + lineNumber + ": " + problem);
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sends each order to one of a fleet of coffee makers that has the
+ * stock to make it.  The machines are expected to share a menu.
+ *
+ * The router keeps an estimate of every machine's stock, packed into
+ * one long per machine as in {@link LockFreeInventory}, so picking a
+ * machine is a scan of single-word comparisons rather than a
+ * makeCoffee attempt per machine.  An order takes its ingredients off
+ * the estimate before it is placed, so concurrent orders spread over
+ * the machines instead of piling onto the same one.  The scan starts
+ * at a random machine for the same reason.
+ *
+ * The estimate is exact while all orders and restocks go through the
+ * router.  When a machine is used directly, the router finds out on
+ * the first refusal: it rereads that machine's stock and fails over to
+ * the next machine.  A machine restocked directly is found when no
+ * estimate covers an order: before giving the money back the router
+ * rereads every machine and tries once more.  A machine holding more than
+ * {@link LockFreeInventory#MAX_UNITS} of an ingredient counts as
+ * holding that many until it is next reread.  A recipe the estimate
+ * cannot hold, because it uses a registered ingredient or needs more
+ * than a lane holds, is offered to each machine in turn instead.
+ */
+public class FleetRouter {
+	private final CoffeeMaker[] machines;
+	/** Estimated stock of each machine, four 16-bit lanes per long */
+	private final AtomicLongArray stock;
+	private final AtomicLong failovers = new AtomicLong();
+
+	/**
+	 * @param machines the fleet; read once here to build the index
+	 */
+	public FleetRouter(CoffeeMaker... machines) {
+		this.machines = machines.clone();
+		this.stock = new AtomicLongArray(machines.length);
+		for (int m = 0; m < machines.length; m++) {
+			refresh(m);
+		}
+	}
+
+	/**
+	 * @return the number of machines in the fleet
+	 */
+	public int getMachines() {
+		return machines.length;
+	}
+
+	/**
+	 * @return orders a machine refused although the estimate said it
+	 * could make them
+	 */
+	public long getFailovers() {
+		return failovers.get();
+	}
+
+	/**
+	 * Returns the change of a beverage purchase from whichever machine
+	 * can make it, or the user's money if none can.
+	 * @param recipeToPurchase
+	 * @param amtPaid
+	 * @return int
+	 */
+	public int makeCoffee(int recipeToPurchase, int amtPaid) {
+		int change = place(recipeToPurchase, amtPaid);
+		if (change < 0) {
+			// Stock may have been added behind the router's back.
+			for (int m = 0; m < machines.length; m++) {
+				refresh(m);
+			}
+			change = place(recipeToPurchase, amtPaid);
+		}
+		return change < 0 ? amtPaid : change;
+	}
+
+	/**
+	 * Places the order with the first machine, from a random one,
+	 * whose estimate covers it.  Returns the change, or -1 if no
+	 * machine could make it.
+	 */
+	private int place(int recipeToPurchase, int amtPaid) {
+		int n = machines.length;
+		int m = ThreadLocalRandom.current().nextInt(n);
+		for (int tried = 0; tried < n; tried++, m = m + 1 == n ? 0 : m + 1) {
+			Recipe[] recipes = machines[m].getRecipes();
+			Recipe recipe = recipeToPurchase < recipes.length ? recipes[recipeToPurchase] : null;
+			if (recipe == null || recipe.getPrice() > amtPaid) {
+				// Refused whichever machine takes it; let one record why.
+				machines[m].makeCoffee(recipeToPurchase, recipe, amtPaid);
+				return amtPaid;
+			}
+			long required = recipe.getPackedRequirements();
+			if (required < 0) {
+				return placeDirectly(recipeToPurchase, amtPaid, m);
+			}
+			if (!reserve(m, required)) {
+				continue;
+			}
+			if (machines[m].makeCoffee(recipeToPurchase, recipe, amtPaid) == SalesLedger.Outcome.SOLD) {
+				return amtPaid - recipe.getPrice();
+			}
+			failovers.incrementAndGet();
+			refresh(m);
+		}
+		return -1;
+	}
+
+	/**
+	 * Offers an order the estimate cannot check to every machine,
+	 * starting from the given one, until one makes it.  Returns the
+	 * change, or the money paid if none could.
+	 */
+	private int placeDirectly(int recipeToPurchase, int amtPaid, int from) {
+		int n = machines.length;
+		for (int tried = 0, m = from; tried < n; tried++, m = m + 1 == n ? 0 : m + 1) {
+			Recipe[] recipes = machines[m].getRecipes();
+			Recipe recipe = recipeToPurchase < recipes.length ? recipes[recipeToPurchase] : null;
+			if (machines[m].makeCoffee(recipeToPurchase, recipe, amtPaid) == SalesLedger.Outcome.SOLD) {
+				refresh(m);
+				return amtPaid - recipe.getPrice();
+			}
+		}
+		return amtPaid;
+	}
+
+	/**
+	 * Adds inventory to one machine and brings its estimate up to date.
+	 * @param machine
+	 * @param amtCoffee
+	 * @param amtMilk
+	 * @param amtSugar
+	 * @param amtChocolate
+	 * @return Validation
+	 */
+	public Validation addInventory(int machine, int amtCoffee, int amtMilk, int amtSugar, int amtChocolate) {
+		Validation result = machines[machine].tryAddInventory(amtCoffee, amtMilk, amtSugar, amtChocolate);
+		refresh(machine);
+		return result;
+	}
+
+	/**
+	 * Rereads a machine's stock into the estimate, for instance after
+	 * it was restocked without the router.
+	 * @param machine
+	 */
+	public void refresh(int machine) {
+		InventorySnapshot snapshot = machines[machine].checkInventory(new InventorySnapshot());
+		stock.set(machine, LockFreeInventory.packAtMost(snapshot.units));
+	}
+
+	/**
+	 * Takes a recipe's requirements off a machine's estimate if it
+	 * covers them.  No lane can go below zero, so the lanes subtract
+	 * as one long.
+	 */
+	private boolean reserve(int machine, long required) {
+		for (;;) {
+			long current = stock.get(machine);
+			if (!LockFreeInventory.covers(current, required)) {
+				return false;
+			}
+			if (stock.compareAndSet(machine, current, current - required)) {
+				return true;
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the ingredients recipes and inventories can hold.  Each
+ * ingredient gets the next dense id, so recipes and inventories keep
+ * their amounts in plain arrays indexed by id.  Coffee, milk, sugar
+ * and chocolate are always registered, as {@link Inventory#COFFEE}
+ * through {@link Inventory#CHOCOLATE}; ids are never reused.
+ */
+public final class Ingredients {
+	/** Names indexed by id; replaced, never changed, when one is added */
+	private static volatile String[] names = {"Coffee", "Milk", "Sugar", "Chocolate"};
+	private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+	static {
+		for (int id = 0; id < names.length; id++) {
+			ids.put(names[id], id);
+		}
+	}
+
+	private Ingredients() {
+	}
+
+	/**
+	 * Returns the id of the named ingredient, registering it with the
+	 * next id if it is new.
+	 * @param name
+	 * @return int
+	 */
+	public static int register(String name) {
+		if (name == null || name.isEmpty()) {
+			throw new IllegalArgumentException("An ingredient needs a name");
+		}
+		Integer id = ids.get(name);
+		if (id != null) {
+			return id;
+		}
+		synchronized (Ingredients.class) {
+			id = ids.get(name);
+			if (id == null) {
+				String[] wider = Arrays.copyOf(names, names.length + 1);
+				id = names.length;
+				wider[id] = name;
+				names = wider;
+				ids.put(name, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * @param name
+	 * @return the id of the named ingredient, or -1 if it is not registered
+	 */
+	public static int id(String name) {
+		Integer id = name == null ? null : ids.get(name);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * @param id ingredient id
+	 * @return the name the ingredient was registered under
+	 */
+	public static String name(int id) {
+		check(id);
+		return names[id];
+	}
+
+	/**
+	 * @return the number of registered ingredients; ids run from 0 to one less
+	 */
+	public static int count() {
+		return names.length;
+	}
+
+	/**
+	 * Throws IllegalArgumentException unless the id is registered.
+	 * @param id
+	 */
+	static void check(int id) {
+		if (id < 0 || id >= names.length) {
+			throw new IllegalArgumentException("No such ingredient: " + id);
+		}
+	}
+}
@@ -13,29 +13,133 @@
  */
 package edu.ncsu.csc326.coffeemaker;
 
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
 import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
 
 /**
  * @author Sarah Heckman
  *
- * Inventory for the coffee maker
+ * Inventory for the coffee maker.  Each instance keeps its
+ * own stock, so one JVM can host many coffee makers.
  */
 public class Inventory {
     
-    private static int coffee;
-    private static int milk;
-    private static int sugar;
-    private static int chocolate;
+    /** Ingredient ids, used to index requirement and stock vectors */
+    public static final int COFFEE = 0;
+    public static final int MILK = 1;
+    public static final int SUGAR = 2;
+    public static final int CHOCOLATE = 3;
+    /**
+     * Number of built-in ingredient ids; more may be added through
+     * {@link Ingredients#register(String)}
+     */
+    public static final int INGREDIENTS = 4;
+    
+    /**
+     * Units in stock, indexed by ingredient id.  Replaced by a longer
+     * copy, under the lock, when a later-registered ingredient is
+     * first stocked; ingredients past the end have none.
+     */
+    private volatile int[] units;
+    /** Where useIngredients is timed, or null */
+    volatile Metrics metrics;
+    /** Low-water marks and their listeners, or null until one is set */
+    volatile StockAlerts alerts;
+    /** Which recipes the counts cover, or null until it is asked for */
+    volatile AvailabilityIndex availability;
     
     /**
      * Creates a coffee maker inventory object and
-     * fills each item in the inventory with 15 units.
+     * fills each built-in item in the inventory with 15 units.
+     * Registered ingredients start with none.
      */
     public Inventory() {
-    	setCoffee(15);
-    	setMilk(15);
-    	setSugar(15);
-    	setChocolate(15);
+    	this(new int[INGREDIENTS]);
+    	// Assigned directly so overridden setters never run before a
+    	// subclass has initialised its own state.
+    	Arrays.fill(units, 15);
+    }
+    
+    /**
+     * Creates an inventory holding the given counts.  A subclass that
+     * keeps its own counts passes an empty array, never read.
+     * @param units indexed by ingredient id
+     */
+    Inventory(int[] units) {
+    	this.units = units;
+    }
+    
+    /**
+     * Returns the current number of units of an ingredient.
+     * @param ingredient ingredient id
+     * @return int
+     */
+    public int getUnits(int ingredient) {
+    	Ingredients.check(ingredient);
+    	int[] units = this.units;
+    	return ingredient < units.length ? units[ingredient] : 0;
+    }
+    
+    /**
+     * Sets the number of units of an ingredient to the specified
+     * amount, unless it is negative.
+     * @param ingredient ingredient id
+     * @param units
+     */
+    public synchronized void setUnits(int ingredient, int units) {
+    	Ingredients.check(ingredient);
+    	if (units >= 0) {
+    		stock(ingredient + 1)[ingredient] = units;
+    		checkStock();
+    	}
+    }
+    
+    /**
+     * Adds units of an ingredient to the current amount.
+     * @param ingredient ingredient id
+     * @param units
+     * @throws InventoryException
+     */
+    public void addUnits(int ingredient, String units) throws InventoryException {
+    	Validation result = tryAddUnits(ingredient, units);
+    	if (!result.isValid()) {
+    		throw new InventoryException(result.getMessage());
+    	}
+    }
+    
+    /**
+     * Adds units of an ingredient, or returns why they cannot be
+     * added.  The amount is parsed before the lock is taken.
+     * @param ingredient ingredient id
+     * @param units
+     * @return Validation
+     */
+    public Validation tryAddUnits(int ingredient, String units) {
+    	Ingredients.check(ingredient);
+    	long amount = Validation.parse(units);
+    	if (amount >= 0) {
+    		synchronized (this) {
+    			stock(ingredient + 1)[ingredient] += amount;
+    			checkStock();
+    		}
+    		return Validation.OK;
+    	}
+    	return Validation.invalid(ingredient);
+    }
+    
+    /**
+     * Returns the counts, first lengthening them to cover the given
+     * number of ingredient ids if need be.  Callers hold the lock.
+     */
+    private int[] stock(int ingredients) {
+    	int[] units = this.units;
+    	if (units.length < ingredients) {
+    		units = Arrays.copyOf(units, Math.max(ingredients, Ingredients.count()));
+    		this.units = units;
+    	}
+    	return units;
     }
     
     /**
@@ -44,7 +148,7 @@ public class Inventory {
      * @return int
      */
     public int getChocolate() {
-        return chocolate;
+        return getUnits(CHOCOLATE);
     }
     
     /**
@@ -52,11 +156,8 @@ public class Inventory {
      * to the specified amount.
      * @param chocolate
      */
-    public synchronized void setChocolate(int chocolate) {
-    	if(chocolate >= 0) {
-    		Inventory.chocolate = chocolate;
-    	}
-        
+    public void setChocolate(int chocolate) {
+    	setUnits(CHOCOLATE, chocolate);
     }
     
     /**
@@ -65,18 +166,21 @@ public class Inventory {
      * @param chocolate
      * @throws InventoryException
      */
-    public synchronized void addChocolate(String chocolate) throws InventoryException {
-    	int amtChocolate = 0;
-    	try {
-    		amtChocolate = Integer.parseInt(chocolate);
-    	} catch (NumberFormatException e) {
-    		throw new InventoryException("Units of chocolate must be a positive integer");
+    public void addChocolate(String chocolate) throws InventoryException {
+    	Validation result = tryAddChocolate(chocolate);
+    	if (!result.isValid()) {
+    		throw new InventoryException(result.getMessage());
     	}
-		if (amtChocolate >= 0) {
-			Inventory.chocolate += amtChocolate;
-		} else {
-			throw new InventoryException("Units of chocolate must be a positive integer");
-		}
+    }
+    
+    /**
+     * Adds units of chocolate, or returns why they cannot be added.
+     * The amount is parsed before the lock is taken.
+     * @param chocolate
+     * @return Validation
+     */
+    public Validation tryAddChocolate(String chocolate) {
+    	return tryAddUnits(CHOCOLATE, chocolate);
     }
     
     /**
@@ -85,7 +189,7 @@ public class Inventory {
      * @return int
      */
     public int getCoffee() {
-        return coffee;
+        return getUnits(COFFEE);
     }
     
     /**
@@ -93,10 +197,8 @@ public class Inventory {
      * to the specified amount.
      * @param coffee
      */
-    public synchronized void setCoffee(int coffee) {
-    	if(coffee >= 0) {
-    		Inventory.coffee = coffee;
-    	}
+    public void setCoffee(int coffee) {
+    	setUnits(COFFEE, coffee);
     }
     
     /**
@@ -105,18 +207,21 @@ public class Inventory {
      * @param coffee
      * @throws InventoryException
      */
-    public synchronized void addCoffee(String coffee) throws InventoryException {
-    	int amtCoffee = 0;
-    	try {
-    		amtCoffee = Integer.parseInt(coffee);
-    	} catch (NumberFormatException e) {
-    		throw new InventoryException("Units of coffee must be a positive integer");
+    public void addCoffee(String coffee) throws InventoryException {
+    	Validation result = tryAddCoffee(coffee);
+    	if (!result.isValid()) {
+    		throw new InventoryException(result.getMessage());
     	}
-		if (amtCoffee >= 0) {
-			Inventory.coffee += amtCoffee;
-		} else {
-			throw new InventoryException("Units of coffee must be a positive integer");
-		}
+    }
+    
+    /**
+     * Adds units of coffee, or returns why they cannot be added.
+     * The amount is parsed before the lock is taken.
+     * @param coffee
+     * @return Validation
+     */
+    public Validation tryAddCoffee(String coffee) {
+    	return tryAddUnits(COFFEE, coffee);
     }
     
     /**
@@ -125,7 +230,7 @@ public class Inventory {
      * @return int
      */
     public int getMilk() {
-        return milk;
+        return getUnits(MILK);
     }
     
     /**
@@ -133,10 +238,8 @@ public class Inventory {
      * to the specified amount.
      * @param milk
      */
-    public synchronized void setMilk(int milk) {
-    	if(milk >= 0) {
-    		Inventory.milk = milk;
-    	}
+    public void setMilk(int milk) {
+    	setUnits(MILK, milk);
     }
     
     /**
@@ -145,18 +248,21 @@ public class Inventory {
      * @param milk
      * @throws InventoryException
      */
-    public synchronized void addMilk(String milk) throws InventoryException {
-    	int amtMilk = 0;
-    	try {
-    		amtMilk = Integer.parseInt(milk);
-    	} catch (NumberFormatException e) {
-    		throw new InventoryException("Units of milk must be a positive integer");
+    public void addMilk(String milk) throws InventoryException {
+    	Validation result = tryAddMilk(milk);
+    	if (!result.isValid()) {
+    		throw new InventoryException(result.getMessage());
     	}
-		if (amtMilk >= 0) {
-			Inventory.milk += amtMilk;
-		} else {
-			throw new InventoryException("Units of milk must be a positive integer");
-		}
+    }
+    
+    /**
+     * Adds units of milk, or returns why they cannot be added.
+     * The amount is parsed before the lock is taken.
+     * @param milk
+     * @return Validation
+     */
+    public Validation tryAddMilk(String milk) {
+    	return tryAddUnits(MILK, milk);
     }
     
     /**
@@ -165,7 +271,7 @@ public class Inventory {
      * @return int
      */
     public int getSugar() {
-        return sugar;
+        return getUnits(SUGAR);
     }
     
     /**
@@ -173,10 +279,8 @@ public class Inventory {
      * to the specified amount.
      * @param sugar
      */
-    public synchronized void setSugar(int sugar) {
-    	if(sugar >= 0) {
-    		Inventory.sugar = sugar;
-    	}
+    public void setSugar(int sugar) {
+    	setUnits(SUGAR, sugar);
     }
     
     /**
@@ -185,18 +289,97 @@ public class Inventory {
      * @param sugar
      * @throws InventoryException
      */
-    public synchronized void addSugar(String sugar) throws InventoryException {
-    	int amtSugar = 0;
-    	try {
-    		amtSugar = Integer.parseInt(sugar);
-    	} catch (NumberFormatException e) {
-    		throw new InventoryException("Units of sugar must be a positive integer");
+    public void addSugar(String sugar) throws InventoryException {
+    	Validation result = tryAddSugar(sugar);
+    	if (!result.isValid()) {
+    		throw new InventoryException(result.getMessage());
+    	}
+    }
+    
+    /**
+     * Adds units of sugar, or returns why they cannot be added.
+     * The amount is parsed before the lock is taken.
+     * @param sugar
+     * @return Validation
+     */
+    public Validation tryAddSugar(String sugar) {
+    	return tryAddUnits(SUGAR, sugar);
+    }
+    
+    /**
+     * Adds units of every ingredient as one atomic update: either all
+     * four amounts are added or, if any is rejected, none is.  The
+     * amounts are checked before the lock is taken.
+     * @param coffee
+     * @param milk
+     * @param sugar
+     * @param chocolate
+     * @throws InventoryException if any amount is negative
+     */
+    public void addInventory(int coffee, int milk, int sugar, int chocolate) throws InventoryException {
+    	Validation result = tryAddInventory(coffee, milk, sugar, chocolate);
+    	if (!result.isValid()) {
+    		throw new InventoryException(result.getMessage());
     	}
-		if (amtSugar <= 0) {
-			Inventory.sugar += amtSugar;
-		} else {
-			throw new InventoryException("Units of sugar must be a positive integer");
-		}
+    }
+    
+    /**
+     * Adds units of every ingredient as one atomic update, or returns
+     * why they cannot be added and adds none.
+     * @param coffee
+     * @param milk
+     * @param sugar
+     * @param chocolate
+     * @return Validation
+     */
+    public Validation tryAddInventory(int coffee, int milk, int sugar, int chocolate) {
+    	Validation result = checkUnits(coffee, milk, sugar, chocolate);
+    	if (result.isValid()) {
+	    	synchronized (this) {
+	    		int[] units = this.units;
+	    		units[COFFEE] += coffee;
+	    		units[MILK] += milk;
+	    		units[SUGAR] += sugar;
+	    		units[CHOCOLATE] += chocolate;
+	    		checkStock();
+	    	}
+    	}
+    	return result;
+    }
+    
+    /**
+     * Adds units of any registered ingredients, indexed by id, as one
+     * atomic update, or returns why they cannot be added and adds none.
+     * @param amounts
+     * @return Validation
+     */
+    Validation tryAddUnits(int[] amounts) {
+    	for (int i = 0; i < amounts.length; i++) {
+    		if (amounts[i] < 0) {
+    			return Validation.invalid(i);
+    		}
+    	}
+    	synchronized (this) {
+    		int[] units = stock(amounts.length);
+    		for (int i = 0; i < amounts.length; i++) {
+    			units[i] += amounts[i];
+    		}
+    		checkStock();
+    	}
+    	return Validation.OK;
+    }
+    
+    static Validation checkUnits(int coffee, int milk, int sugar, int chocolate) {
+    	if (coffee < 0) {
+    		return Validation.INVALID_COFFEE;
+    	} else if (milk < 0) {
+    		return Validation.INVALID_MILK;
+    	} else if (sugar < 0) {
+    		return Validation.INVALID_SUGAR;
+    	} else if (chocolate < 0) {
+    		return Validation.INVALID_CHOCOLATE;
+    	}
+    	return Validation.OK;
     }
     
     /**
@@ -206,59 +389,319 @@ public class Inventory {
      * @return boolean
      */
     protected synchronized boolean enoughIngredients(Recipe r) {
-        boolean isEnough = true;
-        if(Inventory.coffee < r.getAmtCoffee()) {
-            isEnough = false;
-        }
-        if(Inventory.milk < r.getAmtMilk()) {
-            isEnough = false;
-        }
-        if(Inventory.sugar < r.getAmtSugar()) {
-            isEnough = false;
+        Recipe.Requirements required = r.compiled();
+        return covers(units, required.units, required.extras);
+    }
+    
+    /**
+     * Returns true if every ingredient in stock covers the
+     * matching entry of the requirement vector.  Every built-in
+     * ingredient is compared, but of the rest only the ones the
+     * recipe uses, so the check costs the same however many
+     * ingredients there are.  Callers hold the lock.
+     */
+    private static boolean covers(int[] units, int[] required, int[] extras) {
+        for (int i = 0; i < INGREDIENTS; i++) {
+            if (units[i] < required[i]) {
+                return false;
+            }
         }
-        if(Inventory.chocolate < r.getAmtChocolate()) {
-            isEnough = false;
+        for (int i : extras) {
+            if (i >= units.length || units[i] < required[i]) {
+                return false;
+            }
         }
-        return isEnough;
+        return true;
     }
     
     /**
      * Removes the ingredients used to make the specified 
-     * recipe.  Assumes that the user has checked that there
-     * are enough ingredients to make 
+     * recipe, or returns false and removes nothing if there
+     * are not enough ingredients to make it.
      * @param r
+     * @return boolean
+     */
+    public boolean useIngredients(Recipe r) {
+    	return useIngredients(r.compiled());
+    }
+    
+    /**
+     * Removes the given requirements, read once from a recipe, or
+     * returns false and removes nothing if there are not enough
+     * ingredients.
+     * @param required
+     * @return boolean
      */
-    public synchronized boolean useIngredients(Recipe r) {
-    	if (enoughIngredients(r)) {
-	    	Inventory.coffee += r.getAmtCoffee();
-	    	Inventory.milk -= r.getAmtMilk();
-	    	Inventory.sugar -= r.getAmtSugar();
-	    	Inventory.chocolate -= r.getAmtChocolate();
+    boolean useIngredients(Recipe.Requirements required) {
+    	Metrics metrics = this.metrics;
+    	long start = Metrics.start(metrics);
+    	boolean taken;
+    	synchronized (this) {
+    		if (metrics != null) {
+    			metrics.entered(Metrics.Lock.INVENTORY, start);
+    		}
+    		taken = take(required);
+    		if (taken) {
+    			checkStock();
+    		}
+    	}
+    	if (metrics != null) {
+    		metrics.finished(Metrics.Operation.USE_INGREDIENTS, start);
+    	}
+    	return taken;
+    }
+    
+    /**
+     * Deducts the requirement vector if the stock covers it.
+     * Callers hold the lock.
+     */
+    private boolean take(Recipe.Requirements compiled) {
+    	int[] units = this.units;
+    	int[] required = compiled.units;
+    	int[] extras = compiled.extras;
+    	if (covers(units, required, extras)) {
+    		for (int i = 0; i < INGREDIENTS; i++) {
+    			units[i] -= required[i];
+    		}
+    		for (int i : extras) {
+    			units[i] -= required[i];
+    		}
 	    	return true;
     	} else {
     		return false;
     	}
     }
     
+    /**
+     * Removes the ingredients for a batch of orders while holding
+     * the lock once.  Orders are tried in array order; a null order
+     * is skipped.  served[i] is set to whether order i got its
+     * ingredients, exactly as if useIngredients had been called
+     * for each order in turn.
+     * @param orders
+     * @param served
+     */
+    public void useIngredients(Recipe[] orders, boolean[] served) {
+    	Recipe.Requirements[] required = new Recipe.Requirements[orders.length];
+    	for (int i = 0; i < orders.length; i++) {
+    		required[i] = orders[i] == null ? null : orders[i].compiled();
+    	}
+    	useIngredients(required, served);
+    }
+    
+    /**
+     * Removes a batch of requirements, each read once from its
+     * recipe, exactly as {@link #useIngredients(Recipe[], boolean[])}
+     * would; a null requirement is skipped.
+     * @param orders
+     * @param served
+     */
+    void useIngredients(Recipe.Requirements[] orders, boolean[] served) {
+    	Metrics metrics = this.metrics;
+    	long start = Metrics.start(metrics);
+    	synchronized (this) {
+    		if (metrics != null) {
+    			metrics.entered(Metrics.Lock.INVENTORY, start);
+    		}
+	    	for (int i = 0; i < orders.length; i++) {
+	    		served[i] = orders[i] != null && take(orders[i]);
+	    	}
+	    	checkStock();
+    	}
+    }
+    
+    /**
+     * Takes the ingredients for the recipe out of stock and holds
+     * them until the returned reservation is committed, released or
+     * times out.  Returns null, and takes nothing, if there are not
+     * enough ingredients.  Lets payment run without holding the lock:
+     * held ingredients can never be sold to another order.
+     * @param r
+     * @param timeout
+     * @param unit
+     * @return Reservation
+     */
+    public Reservation reserve(Recipe r, long timeout, TimeUnit unit) {
+    	if (timeout <= 0) {
+    		throw new IllegalArgumentException("Timeout must be positive");
+    	}
+    	Recipe.Requirements required = r.compiled();
+    	if (!hold(required)) {
+    		return null;
+    	}
+    	// Saturated well short of overflow, so the deadline stays ahead
+    	// of System.nanoTime() however long the timeout.
+    	long nanos = Math.min(unit.toNanos(timeout), Long.MAX_VALUE / 2);
+    	Reservation reservation = new Reservation(this, r, required.units, System.nanoTime() + nanos);
+    	Reservation.schedule(reservation);
+    	return reservation;
+    }
+    
+    /**
+     * Takes the given requirements out of stock for a reservation, or
+     * returns false and takes nothing if there are not enough.
+     * @param required
+     * @return boolean
+     */
+    boolean hold(Recipe.Requirements required) {
+    	return useIngredients(required);
+    }
+    
+    /**
+     * Keeps units that were taken for a reservation as used.
+     * @param kept
+     */
+    void keep(int[] kept) {
+    }
+    
+    /**
+     * Puts back units that were taken for a reservation.
+     * @param returned
+     */
+    synchronized void giveBack(int[] returned) {
+    	int[] units = stock(returned.length);
+    	for (int i = 0; i < returned.length; i++) {
+    		units[i] += returned[i];
+    	}
+    	checkStock();
+    }
+    
+    /**
+     * Copies the current units of every ingredient into the
+     * array, indexed by ingredient id, as one atomic read.  Copies
+     * as many ingredients as the array holds; those never stocked
+     * read as none.
+     * @param into
+     */
+    public synchronized void snapshot(int[] into) {
+    	int[] units = this.units;
+    	int copied = Math.min(units.length, into.length);
+    	System.arraycopy(units, 0, into, 0, copied);
+    	Arrays.fill(into, copied, into.length, 0);
+    }
+    
+    /**
+     * Replaces the counts of as many ingredients as are given with
+     * the given units, indexed by ingredient id.  Used when recovering
+     * a saved inventory.
+     * @param units
+     */
+    synchronized void restore(int[] units) {
+    	System.arraycopy(units, 0, stock(units.length), 0, units.length);
+    	checkStock();
+    }
+    
+    /**
+     * Starts timing useIngredients into the given metrics, or
+     * stops if it is null.
+     * @param metrics
+     */
+    void setMetrics(Metrics metrics) {
+    	this.metrics = metrics;
+    }
+    
+    /**
+     * Sets the low-water mark of an ingredient: once its units fall
+     * to the mark or below, every {@link LowStockListener} is told,
+     * and told again when a refill takes it back above the mark.
+     * A negative mark clears it.  Listeners are called on a
+     * background thread, so a slow one never delays an order.
+     * @param ingredient ingredient id
+     * @param units
+     */
+    public synchronized void setLowWaterMark(int ingredient, int units) {
+    	if (ingredient < 0 || ingredient >= INGREDIENTS) {
+    		throw new IllegalArgumentException("No such ingredient: " + ingredient);
+    	}
+    	alerts().setMark(ingredient, Math.max(units, StockAlerts.NO_MARK));
+    	checkStock();
+    }
+    
+    /**
+     * Registers a listener for ingredients crossing their low-water
+     * marks.
+     * @param listener
+     */
+    public synchronized void addLowStockListener(LowStockListener listener) {
+    	alerts().addListener(listener);
+    }
+    
+    /**
+     * Stops notifying the given listener.
+     * @param listener
+     */
+    public void removeLowStockListener(LowStockListener listener) {
+    	StockAlerts alerts = this.alerts;
+    	if (alerts != null) {
+    		alerts.removeListener(listener);
+    	}
+    }
+    
+    /**
+     * Callers hold the lock.
+     */
+    private StockAlerts alerts() {
+    	if (alerts == null) {
+    		alerts = new StockAlerts(this);
+    	}
+    	return alerts;
+    }
+    
+    /**
+     * Starts keeping track of which recipes the counts cover, if
+     * nothing is yet, and returns the index that does.
+     * @return AvailabilityIndex
+     */
+    synchronized AvailabilityIndex availability() {
+    	if (availability == null) {
+    		availability = new AvailabilityIndex(this);
+    		//Read the counts only once changes are reported to it
+    		checkStock();
+    	}
+    	return availability;
+    }
+    
+    /**
+     * Reports which ingredients are at or below their marks, and
+     * which recipes the counts cover, after a change to the counts.
+     * Only queues notifications, so it may be called with the lock
+     * held, as every caller here does.
+     */
+    void checkStock() {
+    	int[] units = this.units;
+    	StockAlerts alerts = this.alerts;
+    	if (alerts != null) {
+    		int low = 0;
+    		for (int i = 0; i < INGREDIENTS; i++) {
+    			if (alerts.isLow(i, units[i])) {
+    				low |= 1 << i;
+    			}
+    		}
+    		alerts.update(low);
+    	}
+    	AvailabilityIndex availability = this.availability;
+    	if (availability != null) {
+    		availability.update(units);
+    	}
+    }
+    
+    /**
+     * Refills a reusable snapshot with the current counts and
+     * returns it.  Allocates nothing.
+     * @param into
+     * @return InventorySnapshot
+     */
+    public InventorySnapshot snapshot(InventorySnapshot into) {
+    	snapshot(into.units);
+    	return into;
+    }
+    
     /**
      * Returns a string describing the current contents 
      * of the inventory.
      * @return String
      */
     public String toString() {
-    	StringBuffer buf = new StringBuffer();
-    	buf.append("Coffee: ");
-    	buf.append(getCoffee());
-    	buf.append("\n");
-    	buf.append("Milk: ");
-    	buf.append(getMilk());
-    	buf.append("\n");
-    	buf.append("Sugar: ");
-    	buf.append(getSugar());
-    	buf.append("\n");
-    	buf.append("Chocolate: ");
-    	buf.append(getChocolate());
-    	buf.append("\n");
-    	return buf.toString();
+    	return snapshot(new InventorySnapshot()).toString();
     }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ * 
+ * Permission has been explicitly granted to the University of Minnesota 
+ * Software Engineering Center to use and distribute this source for 
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.  
+ * 
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including 
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.IOException;
+
+/**
+ * A reusable, point-in-time copy of an inventory's counts.
+ *
+ * Dashboards that poll the inventory keep one of these and refill it
+ * with {@link Inventory#snapshot(InventorySnapshot)}; neither the refill
+ * nor {@link #appendTo(Appendable)} allocates.
+ */
+public class InventorySnapshot {
+	/** Units of each ingredient, indexed by ingredient id */
+	final int[] units = new int[Inventory.INGREDIENTS];
+	
+	/**
+	 * @return the units of coffee when the snapshot was taken
+	 */
+	public int getCoffee() {
+		return units[Inventory.COFFEE];
+	}
+	
+	/**
+	 * @return the units of milk when the snapshot was taken
+	 */
+	public int getMilk() {
+		return units[Inventory.MILK];
+	}
+	
+	/**
+	 * @return the units of sugar when the snapshot was taken
+	 */
+	public int getSugar() {
+		return units[Inventory.SUGAR];
+	}
+	
+	/**
+	 * @return the units of chocolate when the snapshot was taken
+	 */
+	public int getChocolate() {
+		return units[Inventory.CHOCOLATE];
+	}
+	
+	/**
+	 * Writes the snapshot in the same format as
+	 * {@link Inventory#toString()}, without allocating.
+	 * @param out
+	 * @throws IOException if out cannot be written to
+	 */
+	public void appendTo(Appendable out) throws IOException {
+		out.append("Coffee: ");
+		appendInt(out, getCoffee());
+		out.append('\n');
+		out.append("Milk: ");
+		appendInt(out, getMilk());
+		out.append('\n');
+		out.append("Sugar: ");
+		appendInt(out, getSugar());
+		out.append('\n');
+		out.append("Chocolate: ");
+		appendInt(out, getChocolate());
+		out.append('\n');
+	}
+	
+	/**
+	 * Returns a string describing the snapshot.
+	 * @return String
+	 */
+	public String toString() {
+		StringBuilder buf = new StringBuilder(64);
+		try {
+			appendTo(buf);
+		} catch (IOException e) {
+			// StringBuilder never throws
+			throw new IllegalStateException(e);
+		}
+		return buf.toString();
+	}
+	
+	/**
+	 * Appends the decimal digits of value one char at a time, since
+	 * Appendable has no int overload and Integer.toString allocates.
+	 */
+	static void appendInt(Appendable out, int value) throws IOException {
+		if (value < 0) {
+			out.append('-');
+		} else {
+			value = -value;
+		}
+		// Work with the negative value so Integer.MIN_VALUE fits.
+		int divisor = -1;
+		while (value / 10 <= divisor) {
+			divisor *= 10;
+		}
+		while (divisor != 0) {
+			out.append((char) ('0' + value / divisor));
+			value %= divisor;
+			divisor /= 10;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size histogram of latencies in nanoseconds.
+ *
+ * Buckets are log-linear: every power of two is split into eight
+ * buckets, so a percentile is reported within 12.5% of the true value
+ * using {@link #BUCKETS} counters whatever the number of samples.
+ * Latencies of 2^40 ns (about 18 minutes) or more share the last
+ * bucket.  Recording is one atomic increment.
+ */
+public class LatencyHistogram {
+	/** log2 of the number of buckets per power of two */
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	/** Longest latency told apart from longer ones, as a power of two */
+	private static final int MAX_EXPONENT = 40;
+	/** Number of counters in every histogram */
+	static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * Records one latency.
+	 * @param nanos
+	 */
+	public void record(long nanos) {
+		counts.incrementAndGet(bucket(nanos));
+	}
+
+	/**
+	 * Copies the counts.  Recording carries on meanwhile, so the copy
+	 * may include part of what was recorded while it was taken.
+	 * @return Snapshot
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+		}
+		return new Snapshot(copy);
+	}
+
+	/**
+	 * An immutable copy of a histogram.
+	 */
+	public static final class Snapshot {
+		private final long[] counts;
+		private final long count;
+
+		private Snapshot(long[] counts) {
+			this.counts = counts;
+			long total = 0;
+			for (long c : counts) {
+				total += c;
+			}
+			this.count = total;
+		}
+
+		/**
+		 * @return the number of latencies recorded
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the latency that the given fraction of samples did
+		 * not exceed, as the upper end of its bucket, or 0 if nothing
+		 * was recorded.
+		 * @param fraction between 0 and 1
+		 * @return long nanoseconds
+		 */
+		public long getPercentile(double fraction) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(fraction * count));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return highestIn(i);
+				}
+			}
+			return highestIn(BUCKETS - 1);
+		}
+
+		/**
+		 * @return the upper end of the bucket of the longest latency
+		 */
+		public long getMax() {
+			return getPercentile(1);
+		}
+	}
+
+	static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return nanos < 0 ? 0 : (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if (exponent >= MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	static long highestIn(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+		return lowest + (1L << (exponent - SUB_BITS)) - 1;
+	}
+}
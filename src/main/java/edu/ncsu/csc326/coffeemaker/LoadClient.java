@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a {@link CoffeeServer} from many connections and reports the
+ * order rate and the latency of each pipelined window of orders.
+ * Restocks whenever most of a window goes unserved, so the load keeps
+ * reaching the inventory.
+ * <pre>
+ * java edu.ncsu.csc326.coffeemaker.LoadClient host port [connections] [depth] [seconds]
+ * </pre>
+ */
+public class LoadClient {
+
+	/**
+	 * @param args host, port, and optionally connections (default 4),
+	 * orders per pipelined window (default 64) and seconds (default 10)
+	 * @throws Exception if a connection fails
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: LoadClient host port [connections] [depth] [seconds]");
+			System.exit(2);
+		}
+		InetSocketAddress address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+		int connections = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		int depth = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+		long seconds = args.length > 4 ? Long.parseLong(args[4]) : 10;
+
+		int recipes;
+		try (CoffeeClient client = new CoffeeClient(address)) {
+			recipes = client.getRecipes().length;
+		}
+		if (recipes == 0) {
+			System.err.println("The coffee maker has no recipes");
+			System.exit(1);
+		}
+
+		LatencyHistogram windows = new LatencyHistogram();
+		AtomicLong orders = new AtomicLong();
+		AtomicLong sold = new AtomicLong();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		Thread[] threads = new Thread[connections];
+		IOException[] failure = new IOException[1];
+		long start = System.nanoTime();
+		for (int t = 0; t < connections; t++) {
+			threads[t] = new Thread(() -> {
+				try (CoffeeClient client = new CoffeeClient(address)) {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					int[] recipe = new int[depth];
+					int[] paid = new int[depth];
+					int[] change = new int[depth];
+					while (System.nanoTime() < deadline) {
+						for (int i = 0; i < depth; i++) {
+							recipe[i] = random.nextInt(recipes);
+							paid[i] = 100;
+						}
+						long sent = System.nanoTime();
+						int made = client.makeCoffee(recipe, paid, change, null);
+						windows.record(System.nanoTime() - sent);
+						orders.addAndGet(depth);
+						sold.addAndGet(made);
+						if (made * 2 < depth) {
+							client.addInventory(1000, 1000, 1000, 1000);
+						}
+					}
+				} catch (IOException e) {
+					synchronized (failure) {
+						failure[0] = e;
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		LatencyHistogram.Snapshot latency = windows.snapshot();
+		System.out.printf("connections=%d depth=%d orders=%d sold=%d orders/s=%.0f%n", connections, depth,
+				orders.get(), sold.get(), orders.get() / elapsed);
+		System.out.printf("window latency us: p50=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+				latency.getPercentile(0.5) / 1e3, latency.getPercentile(0.99) / 1e3,
+				latency.getPercentile(0.999) / 1e3, latency.getMax() / 1e3);
+	}
+}
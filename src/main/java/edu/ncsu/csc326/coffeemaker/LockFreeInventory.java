@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inventory for the coffee maker whose orders never wait for one
+ * another.
+ *
+ * The four ingredient counts are packed into one {@link AtomicLong}, one
+ * 16-bit lane per ingredient, so an order is checked and deducted with a
+ * single compare-and-swap.  A recipe either takes every ingredient it
+ * needs or nothing at all, just like {@link Inventory#useIngredients(Recipe)}.
+ * Each ingredient holds at most {@link #MAX_UNITS} units, counting those
+ * out on open reservations, which will come back if the reservation is
+ * released.  A restock racing a reservation may briefly count the
+ * reserved units twice, so near the limit it can be refused by up to
+ * that many units early; it is never allowed to overflow.  Only the four
+ * built-in ingredients have lanes: a recipe using any other registered
+ * ingredient can never be made here.
+ *
+ * Once an availability index has been asked for, every change is
+ * reported to it, and that does take this object's monitor: one
+ * reporting thread at a time brings the index up to date for all of
+ * them while the rest carry on, so the index may trail the counts
+ * by a moment but an order never waits behind another to report.
+ */
+public class LockFreeInventory extends Inventory {
+	/** Largest number of units a single ingredient can hold. */
+	public static final int MAX_UNITS = 0x7FFF;
+
+	private static final int LANE_BITS = 16;
+	private static final long LANE_MASK = 0xFFFFL;
+	/** The top bit of every lane, never set in a stored count */
+	private static final long GUARDS = 0x8000800080008000L;
+	/** Counts of the base class, which every method here overrides */
+	private static final int[] NO_UNITS = new int[0];
+
+	/** Packed ingredient counts, one lane per ingredient */
+	private final AtomicLong units = new AtomicLong(0x000F000F000F000FL); // 15 of each
+	/**
+	 * Packed units out on open reservations.  Added before they leave
+	 * the counts and taken off after they return, so the two together
+	 * never undercount.
+	 */
+	private final AtomicLong held = new AtomicLong();
+
+	/**
+	 * Creates a lock-free coffee maker inventory object and
+	 * fills each item in the inventory with 15 units.
+	 */
+	public LockFreeInventory() {
+		super(NO_UNITS);
+	}
+
+	/**
+	 * Returns the units of a built-in ingredient; any other has none,
+	 * as there is no lane for it.
+	 * @param ingredient ingredient id
+	 * @return int
+	 */
+	@Override
+	public int getUnits(int ingredient) {
+		Ingredients.check(ingredient);
+		return ingredient < INGREDIENTS ? lane(units.get(), ingredient) : 0;
+	}
+
+	@Override
+	public void setUnits(int ingredient, int units) {
+		Ingredients.check(ingredient);
+		if (ingredient < INGREDIENTS) {
+			setLane(ingredient, units);
+		}
+	}
+
+	/**
+	 * Adds units of a built-in ingredient, or returns why they cannot
+	 * be added; other ingredients have no lane and are refused.
+	 * @param ingredient ingredient id
+	 * @param units
+	 * @return Validation
+	 */
+	@Override
+	public Validation tryAddUnits(int ingredient, String units) {
+		Ingredients.check(ingredient);
+		if (ingredient >= INGREDIENTS) {
+			return Validation.NOT_STOCKED;
+		}
+		return addLane(ingredient, Validation.parse(units));
+	}
+
+	/**
+	 * Adds units of the built-in ingredients with one compare-and-swap;
+	 * any other ingredient has no lane, so the whole update is refused.
+	 * @param amounts
+	 * @return Validation
+	 */
+	@Override
+	Validation tryAddUnits(int[] amounts) {
+		for (int i = INGREDIENTS; i < amounts.length; i++) {
+			if (amounts[i] != 0) {
+				return Validation.NOT_STOCKED;
+			}
+		}
+		return tryAddInventory(amounts[COFFEE], amounts[MILK], amounts[SUGAR], amounts[CHOCOLATE]);
+	}
+
+	/**
+	 * Adds units of every ingredient with one compare-and-swap, or
+	 * returns why they cannot be added and adds none.  An amount that
+	 * would take its ingredient past {@link #MAX_UNITS} is refused.
+	 * @param coffee
+	 * @param milk
+	 * @param sugar
+	 * @param chocolate
+	 * @return Validation
+	 */
+	@Override
+	public Validation tryAddInventory(int coffee, int milk, int sugar, int chocolate) {
+		Validation result = checkUnits(coffee, milk, sugar, chocolate);
+		if (!result.isValid()) {
+			return result;
+		}
+		long added = pack(new int[] {coffee, milk, sugar, chocolate});
+		if (added < 0) {
+			return Validation.excess(coffee > MAX_UNITS ? COFFEE : milk > MAX_UNITS ? MILK
+					: sugar > MAX_UNITS ? SUGAR : CHOCOLATE);
+		}
+		for (;;) {
+			long current = units.get();
+			long overflow = overflow(current, added);
+			if (overflow != 0) {
+				return Validation.excess(Long.numberOfTrailingZeros(overflow) / LANE_BITS);
+			}
+			if (units.compareAndSet(current, current + added)) {
+				checkStock();
+				return Validation.OK;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if there are enough ingredients to make
+	 * the beverage.
+	 * @param r
+	 * @return boolean
+	 */
+	@Override
+	protected boolean enoughIngredients(Recipe r) {
+		long required = r.getPackedRequirements();
+		return required >= 0 && covers(units.get(), required);
+	}
+
+	/**
+	 * Removes the given requirements, retrying until the deduction
+	 * is applied to an unchanged snapshot of the counts.  Returns
+	 * false, and removes nothing, if any ingredient runs short.
+	 * @param required
+	 * @return boolean
+	 */
+	@Override
+	boolean useIngredients(Recipe.Requirements required) {
+		Metrics metrics = this.metrics;
+		long start = Metrics.start(metrics);
+		boolean taken = take(required.packed, metrics);
+		if (metrics != null) {
+			metrics.finished(Metrics.Operation.USE_INGREDIENTS, start);
+		}
+		return taken;
+	}
+
+	private boolean take(long required, Metrics metrics) {
+		if (required < 0) {
+			return false;
+		}
+		for (;;) {
+			long current = units.get();
+			if (!covers(current, required)) {
+				return false;
+			}
+			// Every lane covers its requirement, so no lane borrows.
+			if (units.compareAndSet(current, current - required)) {
+				checkStock();
+				return true;
+			}
+			if (metrics != null) {
+				metrics.contended(Metrics.Lock.INVENTORY);
+			}
+		}
+	}
+
+	/**
+	 * Removes the ingredients for a batch of orders with one
+	 * compare-and-swap.  The whole batch is worked out against
+	 * one snapshot of the counts and retried if another thread
+	 * got in first, so each order still succeeds or fails as if
+	 * it had been placed alone, in array order.
+	 * @param orders
+	 * @param served
+	 */
+	@Override
+	void useIngredients(Recipe.Requirements[] orders, boolean[] served) {
+		long[] required = new long[orders.length];
+		for (int i = 0; i < orders.length; i++) {
+			required[i] = orders[i] == null ? -1 : orders[i].packed;
+		}
+		for (;;) {
+			long current = units.get();
+			long next = current;
+			for (int i = 0; i < orders.length; i++) {
+				served[i] = required[i] >= 0 && covers(next, required[i]);
+				if (served[i]) {
+					next -= required[i];
+				}
+			}
+			if (next == current) {
+				return;
+			}
+			if (units.compareAndSet(current, next)) {
+				checkStock();
+				return;
+			}
+			Metrics metrics = this.metrics;
+			if (metrics != null) {
+				metrics.contended(Metrics.Lock.INVENTORY);
+			}
+		}
+	}
+
+	/**
+	 * Copies the current units of every ingredient into the
+	 * array from a single read of the packed counts.
+	 * @param into
+	 */
+	@Override
+	public void snapshot(int[] into) {
+		long packed = units.get();
+		for (int i = 0; i < into.length; i++) {
+			into[i] = i < INGREDIENTS ? lane(packed, i) : 0;
+		}
+	}
+
+	/**
+	 * Replaces every count with the given units.
+	 * @param units
+	 */
+	@Override
+	void restore(int[] units) {
+		long packed = pack(units);
+		if (packed < 0 || ((packed + held.get()) & GUARDS) != 0) {
+			throw new IllegalArgumentException("Units cannot exceed " + MAX_UNITS);
+		}
+		this.units.set(packed);
+		checkStock();
+	}
+
+	/**
+	 * Takes the given requirements out of the counts for a
+	 * reservation, noting them as held first.  Also refused if the
+	 * units already held leave no room to put these back.
+	 * @param required
+	 * @return boolean
+	 */
+	@Override
+	boolean hold(Recipe.Requirements required) {
+		long packed = required.packed;
+		if (packed < 0) {
+			return false;
+		}
+		for (;;) {
+			long before = held.get();
+			long after = before + packed;
+			if ((after & GUARDS) != 0) {
+				return false;
+			}
+			if (held.compareAndSet(before, after)) {
+				break;
+			}
+		}
+		if (useIngredients(required)) {
+			return true;
+		}
+		held.addAndGet(-packed);
+		return false;
+	}
+
+	@Override
+	void keep(int[] kept) {
+		held.addAndGet(-pack(kept));
+	}
+
+	/**
+	 * Puts back units that were taken for a reservation.  Restocks
+	 * count held units against {@link #MAX_UNITS}, so there is always
+	 * room for them and no lane carries into the next.
+	 * @param returned
+	 */
+	@Override
+	void giveBack(int[] returned) {
+		long packed = pack(returned);
+		units.addAndGet(packed);
+		held.addAndGet(-packed);
+		checkStock();
+	}
+
+	/**
+	 * Reports which ingredients are at or below their marks.  Another
+	 * thread may change the counts and report before this one does, so
+	 * the report is repeated until the counts it was worked out from
+	 * are still current, leaving the last word to the latest counts.
+	 * The availability index needs no such loop: it keeps rereading
+	 * the counts until no change is left unreported.
+	 */
+	@Override
+	void checkStock() {
+		StockAlerts alerts = this.alerts;
+		if (alerts != null) {
+			long current = units.get();
+			for (;;) {
+				int low = 0;
+				for (int i = 0; i < INGREDIENTS; i++) {
+					if (alerts.isLow(i, lane(current, i))) {
+						low |= 1 << i;
+					}
+				}
+				alerts.update(low);
+				long now = units.get();
+				if (now == current) {
+					break;
+				}
+				current = now;
+			}
+		}
+		AvailabilityIndex availability = this.availability;
+		if (availability != null) {
+			availability.update();
+		}
+	}
+
+	private void setLane(int lane, int amount) {
+		if (amount < 0 || amount + lane(held.get(), lane) > MAX_UNITS) {
+			return;
+		}
+		int shift = lane * LANE_BITS;
+		for (;;) {
+			long current = units.get();
+			long next = (current & ~(LANE_MASK << shift)) | ((long) amount << shift);
+			if (units.compareAndSet(current, next)) {
+				checkStock();
+				return;
+			}
+		}
+	}
+
+	private Validation addLane(int lane, long amount) {
+		if (amount < 0) {
+			return Validation.invalid(lane);
+		}
+		int shift = lane * LANE_BITS;
+		for (;;) {
+			long current = units.get();
+			if (lane(current, lane) + lane(held.get(), lane) + amount > MAX_UNITS) {
+				return Validation.excess(lane);
+			}
+			if (units.compareAndSet(current, current + (amount << shift))) {
+				checkStock();
+				return Validation.OK;
+			}
+		}
+	}
+
+	/**
+	 * Returns the guard bits of the lanes that adding to the counts
+	 * would take past {@link #MAX_UNITS}, held units included.  No
+	 * lane of the counts plus held units reaches past its guard bit,
+	 * so each sum stays in its own lane.
+	 */
+	private long overflow(long current, long added) {
+		long base = current + held.get();
+		long overflow = base & GUARDS;
+		return overflow != 0 ? overflow : (base + added) & GUARDS;
+	}
+
+	/**
+	 * Packs a requirement vector into lanes, or returns -1 if
+	 * some amount is larger than any lane can ever hold.
+	 */
+	static long pack(int[] amounts) {
+		long packed = 0;
+		for (int i = 0; i < INGREDIENTS; i++) {
+			if (amounts[i] > MAX_UNITS) {
+				return -1;
+			}
+			packed |= (long) amounts[i] << (i * LANE_BITS);
+		}
+		return packed;
+	}
+
+	/**
+	 * Packs stock levels into lanes, counting anything above
+	 * {@link #MAX_UNITS} as that many.
+	 */
+	static long packAtMost(int[] units) {
+		long packed = 0;
+		for (int i = 0; i < INGREDIENTS; i++) {
+			packed |= (long) Math.min(MAX_UNITS, units[i]) << (i * LANE_BITS);
+		}
+		return packed;
+	}
+
+	/**
+	 * Compares all four lanes at once.  Setting each lane's guard
+	 * bit and subtracting leaves the guard set exactly where the
+	 * lane covers its requirement, and no lane can borrow from
+	 * the next because counts never exceed {@link #MAX_UNITS}.
+	 */
+	static boolean covers(long available, long required) {
+		return (((available | GUARDS) - required) & GUARDS) == GUARDS;
+	}
+
+	private static int lane(long packed, int lane) {
+		return (int) ((packed >>> (lane * LANE_BITS)) & LANE_MASK);
+	}
+}
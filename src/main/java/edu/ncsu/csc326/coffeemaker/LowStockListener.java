@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+/**
+ * Told when an ingredient falls to its low-water mark and when it is
+ * refilled above it.  See {@link Inventory#setLowWaterMark(int, int)}.
+ *
+ * Listeners run on a shared background thread, never inside an
+ * inventory's critical section, so they may be slow; they should not
+ * assume the units passed are still current.
+ */
+public interface LowStockListener {
+	/**
+	 * The ingredient has fallen to or below its low-water mark.
+	 * @param inventory
+	 * @param ingredient ingredient id
+	 * @param units units in stock when the listener was called
+	 */
+	void lowStock(Inventory inventory, int ingredient, int units);
+
+	/**
+	 * The ingredient is back above its low-water mark.
+	 * @param inventory
+	 * @param ingredient ingredient id
+	 * @param units units in stock when the listener was called
+	 */
+	void restocked(Inventory inventory, int ingredient, int units);
+}
@@ -14,8 +14,15 @@
 package edu.ncsu.csc326.coffeemaker;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
 import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
@@ -279,7 +286,9 @@ public class Main {
     
     /**
      * Passes a prompt to the user that deals with the recipe list
-     * and returns the user selected number.
+     * and returns the user selected number.  Anything but a number
+     * is taken as the start of a recipe's name: a single match is
+     * selected, and several are listed for the user to choose from.
      * @param message
      * @return int
      */
@@ -288,24 +297,71 @@ public class Main {
     	int recipe = 0;
         try {
         	recipe = Integer.parseInt(userSelection) - 1;
-        	if (recipe >= 0 && recipe <=2) {
-        		//do nothing here.
-        	} else {
+        	if (recipe < 0 || recipe >= coffeeMaker.getRecipes().length) {
         		recipe = -1;
         	}
         } catch (NumberFormatException e) {
-        	System.out.println("Please select a number from 1-3.");
+        	int[] found = userSelection == null || userSelection.isEmpty() ? new int[0]
+        			: coffeeMaker.findRecipes(userSelection, 10);
+        	if (found.length == 1) {
+        		return found[0];
+        	} else if (found.length > 1) {
+        		Recipe[] recipes = coffeeMaker.getRecipes();
+        		for (int i : found) {
+        			System.out.println((i+1) + ". " + recipes[i].getName());
+        		}
+        		return recipeListSelection(message);
+        	}
+        	System.out.println("Please select a number from the list.");
         	recipe = -1;
         }
         return recipe;
     }
     
     /**
-     * Starts the coffee maker program.
+     * Runs the commands in the named file, or on standard input if
+     * there is no file or it is "-", and writes the results to
+     * standard output.  See {@link BatchRunner} for the format.
+     * @param file
+     * @throws IOException
+     */
+    private static void runBatch(String file) throws IOException {
+    	BufferedReader in = file == null || file.equals("-")
+    			? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)
+    			: Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8);
+    	Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+    	try {
+    		new BatchRunner(coffeeMaker, out).run(in);
+    	} finally {
+    		in.close();
+    	}
+    }
+    
+    /**
+     * Starts the coffee maker program.  "--batch [file]" runs a script
+     * of commands instead of the menu; "--serve port [file]" runs the
+     * script, if any, and then takes orders over the network until
+     * the process is stopped.  The served coffee maker keeps no log:
+     * the server makes orders on its one selector thread, so with a
+     * durable coffee maker every connection would wait on each sync.
      * @param args
+     * @throws IOException if a script cannot be read or the port bound
+     * @throws InterruptedException if interrupted while serving
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException, InterruptedException {
 	    coffeeMaker = new CoffeeMaker();
+	    if (args.length > 0 && args[0].equals("--batch")) {
+	    	runBatch(args.length > 1 ? args[1] : null);
+	    	return;
+	    }
+	    if (args.length > 1 && args[0].equals("--serve")) {
+	    	if (args.length > 2) {
+	    		runBatch(args[2]);
+	    	}
+	    	CoffeeServer server = CoffeeServer.start(coffeeMaker, new InetSocketAddress(Integer.parseInt(args[1])));
+	    	System.err.println("Taking orders on port " + server.getPort());
+	    	Thread.currentThread().join();
+	    }
 	    System.out.println("Welcome to the CoffeeMaker!\n");
 	    mainMenu();
 	}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms and counters for the hot paths of one coffee
+ * maker, attached with {@link CoffeeMaker#setMetrics(Metrics)}.
+ *
+ * Each operation and each recipe slot gets a {@link LatencyHistogram}
+ * of fixed size.  Time spent waiting for a monitor is recorded apart
+ * from the time spent holding it, so a slow order can be put down to
+ * contention or to the work itself; a wait of a microsecond or more,
+ * or a lost compare-and-swap in a {@link LockFreeInventory}, counts as
+ * contended.  {@link #snapshot()} copies everything without stopping
+ * orders.
+ */
+public class Metrics {
+
+	/** Instrumented operations */
+	public enum Operation {
+		MAKE_COFFEE, USE_INGREDIENTS, ADD_INVENTORY, ADD_RECIPE, EDIT_RECIPE, DELETE_RECIPE
+	}
+
+	/** Monitors, or compare-and-swap targets, that orders can wait on */
+	public enum Lock {
+		COFFEE_MAKER, INVENTORY, RECIPE_BOOK
+	}
+
+	/** Shortest wait for a monitor that counts as contended */
+	static final long CONTENDED_NANOS = 1000;
+
+	private static final Operation[] OPERATIONS = Operation.values();
+	private static final Lock[] LOCKS = Lock.values();
+	private static final SalesLedger.Outcome[] OUTCOMES = SalesLedger.Outcome.values();
+	/** Percentiles written out by {@link Snapshot#appendTo(Appendable)} */
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+	private final LatencyHistogram[] operations = new LatencyHistogram[OPERATIONS.length];
+	private final LatencyHistogram[] lockWaits = new LatencyHistogram[LOCKS.length];
+	private final AtomicLongArray outcomes = new AtomicLongArray(OUTCOMES.length);
+	private final AtomicLongArray contended = new AtomicLongArray(LOCKS.length);
+	/** makeCoffee latency by recipe slot; grown on first use of a slot */
+	private volatile LatencyHistogram[] recipes = new LatencyHistogram[0];
+
+	/**
+	 * Creates empty metrics.
+	 */
+	public Metrics() {
+		for (int i = 0; i < operations.length; i++) {
+			operations[i] = new LatencyHistogram();
+		}
+		for (int i = 0; i < lockWaits.length; i++) {
+			lockWaits[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Returns the time to pass to the other recording methods, or 0
+	 * without reading the clock if there are no metrics.
+	 */
+	static long start(Metrics metrics) {
+		return metrics == null ? 0 : System.nanoTime();
+	}
+
+	/**
+	 * Records a whole order begun at the given time: its latency, for
+	 * the operation and for its recipe, and its outcome.
+	 */
+	void recordOrder(int recipe, SalesLedger.Outcome outcome, long start) {
+		long nanos = System.nanoTime() - start;
+		operations[Operation.MAKE_COFFEE.ordinal()].record(nanos);
+		if (recipe >= 0) {
+			recipe(recipe).record(nanos);
+		}
+		outcomes.incrementAndGet(outcome.ordinal());
+	}
+
+	/**
+	 * Counts an outcome without a latency, for orders made in a batch.
+	 */
+	void recordOutcome(SalesLedger.Outcome outcome) {
+		outcomes.incrementAndGet(outcome.ordinal());
+	}
+
+	/**
+	 * Records how long an operation begun at the given time took,
+	 * waits included.
+	 */
+	void finished(Operation operation, long start) {
+		operations[operation.ordinal()].record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Records how long a thread that began waiting at the given time
+	 * took to enter a monitor.  Called first thing inside it.
+	 */
+	void entered(Lock lock, long start) {
+		long nanos = System.nanoTime() - start;
+		lockWaits[lock.ordinal()].record(nanos);
+		if (nanos >= CONTENDED_NANOS) {
+			contended.incrementAndGet(lock.ordinal());
+		}
+	}
+
+	/**
+	 * Counts one lost compare-and-swap.
+	 */
+	void contended(Lock lock) {
+		contended.incrementAndGet(lock.ordinal());
+	}
+
+	private LatencyHistogram recipe(int slot) {
+		LatencyHistogram[] current = recipes;
+		if (slot < current.length && current[slot] != null) {
+			return current[slot];
+		}
+		synchronized (this) {
+			current = recipes;
+			if (slot >= current.length) {
+				current = Arrays.copyOf(current, Math.max(slot + 1, current.length * 2));
+			}
+			if (current[slot] == null) {
+				current[slot] = new LatencyHistogram();
+			}
+			recipes = current;
+			return current[slot];
+		}
+	}
+
+	/**
+	 * Copies every histogram and counter.  Orders keep being recorded
+	 * meanwhile, so the copies are taken one after another rather
+	 * than at a single instant.
+	 * @return Snapshot
+	 */
+	public Snapshot snapshot() {
+		LatencyHistogram.Snapshot[] operationCopies = new LatencyHistogram.Snapshot[operations.length];
+		for (int i = 0; i < operations.length; i++) {
+			operationCopies[i] = operations[i].snapshot();
+		}
+		LatencyHistogram.Snapshot[] lockCopies = new LatencyHistogram.Snapshot[lockWaits.length];
+		for (int i = 0; i < lockWaits.length; i++) {
+			lockCopies[i] = lockWaits[i].snapshot();
+		}
+		LatencyHistogram[] perRecipe = recipes;
+		LatencyHistogram.Snapshot[] recipeCopies = new LatencyHistogram.Snapshot[perRecipe.length];
+		for (int i = 0; i < perRecipe.length; i++) {
+			if (perRecipe[i] != null) {
+				recipeCopies[i] = perRecipe[i].snapshot();
+			}
+		}
+		long[] outcomeCounts = new long[outcomes.length()];
+		for (int i = 0; i < outcomeCounts.length; i++) {
+			outcomeCounts[i] = outcomes.get(i);
+		}
+		long[] contendedCounts = new long[contended.length()];
+		for (int i = 0; i < contendedCounts.length; i++) {
+			contendedCounts[i] = contended.get(i);
+		}
+		return new Snapshot(operationCopies, lockCopies, recipeCopies, outcomeCounts, contendedCounts);
+	}
+
+	/**
+	 * An immutable copy of the metrics.
+	 */
+	public static final class Snapshot {
+		private final LatencyHistogram.Snapshot[] operations;
+		private final LatencyHistogram.Snapshot[] lockWaits;
+		private final LatencyHistogram.Snapshot[] recipes;
+		private final long[] outcomes;
+		private final long[] contended;
+
+		private Snapshot(LatencyHistogram.Snapshot[] operations, LatencyHistogram.Snapshot[] lockWaits,
+				LatencyHistogram.Snapshot[] recipes, long[] outcomes, long[] contended) {
+			this.operations = operations;
+			this.lockWaits = lockWaits;
+			this.recipes = recipes;
+			this.outcomes = outcomes;
+			this.contended = contended;
+		}
+
+		/**
+		 * @param outcome
+		 * @return the number of orders with the given outcome
+		 */
+		public long getCount(SalesLedger.Outcome outcome) {
+			return outcomes[outcome.ordinal()];
+		}
+
+		/**
+		 * @param lock
+		 * @return the number of contended waits for the given lock
+		 */
+		public long getContended(Lock lock) {
+			return contended[lock.ordinal()];
+		}
+
+		/**
+		 * @param operation
+		 * @return the latencies of the given operation
+		 */
+		public LatencyHistogram.Snapshot getLatency(Operation operation) {
+			return operations[operation.ordinal()];
+		}
+
+		/**
+		 * @param lock
+		 * @return the time spent waiting to enter the given lock
+		 */
+		public LatencyHistogram.Snapshot getLockWait(Lock lock) {
+			return lockWaits[lock.ordinal()];
+		}
+
+		/**
+		 * @param slot
+		 * @return the makeCoffee latencies of the recipe in the given
+		 * slot, or null if it has not been ordered
+		 */
+		public LatencyHistogram.Snapshot getRecipeLatency(int slot) {
+			return slot < recipes.length ? recipes[slot] : null;
+		}
+
+		/**
+		 * Writes the snapshot as one "name{labels} value" line per
+		 * figure, the text format most metrics scrapers read.
+		 * @param out
+		 * @throws IOException if out cannot be written
+		 */
+		public void appendTo(Appendable out) throws IOException {
+			for (SalesLedger.Outcome outcome : OUTCOMES) {
+				out.append("coffeemaker_orders_total{outcome=\"").append(outcome.name()).append("\"} ")
+						.append(Long.toString(getCount(outcome))).append('\n');
+			}
+			for (Lock lock : LOCKS) {
+				out.append("coffeemaker_lock_contended_total{lock=\"").append(lock.name()).append("\"} ")
+						.append(Long.toString(getContended(lock))).append('\n');
+			}
+			for (Operation operation : OPERATIONS) {
+				appendHistogram(out, "coffeemaker_latency_nanos", "operation", operation.name(),
+						getLatency(operation));
+			}
+			for (Lock lock : LOCKS) {
+				appendHistogram(out, "coffeemaker_lock_wait_nanos", "lock", lock.name(), getLockWait(lock));
+			}
+			for (int i = 0; i < recipes.length; i++) {
+				if (recipes[i] != null) {
+					appendHistogram(out, "coffeemaker_recipe_latency_nanos", "recipe", Integer.toString(i),
+							recipes[i]);
+				}
+			}
+		}
+
+		private static void appendHistogram(Appendable out, String name, String label, String value,
+				LatencyHistogram.Snapshot histogram) throws IOException {
+			for (double quantile : QUANTILES) {
+				out.append(name).append('{').append(label).append("=\"").append(value)
+						.append("\",quantile=\"").append(Double.toString(quantile)).append("\"} ")
+						.append(Long.toString(histogram.getPercentile(quantile))).append('\n');
+			}
+			out.append(name).append("_count{").append(label).append("=\"").append(value).append("\"} ")
+					.append(Long.toString(histogram.getCount())).append('\n');
+		}
+
+		/**
+		 * Returns the snapshot in the format of {@link #appendTo(Appendable)}.
+		 * @return String
+		 */
+		public String toString() {
+			StringBuilder out = new StringBuilder();
+			try {
+				appendTo(out);
+			} catch (IOException e) {
+				// A StringBuilder never throws.
+			}
+			return out.toString();
+		}
+	}
+}
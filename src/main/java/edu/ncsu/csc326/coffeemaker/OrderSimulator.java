@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives one coffee maker from many threads with a realistic mix of
+ * orders, restocks and recipe edits, then checks that the inventory
+ * lost exactly what the sold orders used.
+ *
+ * Recipes are picked uniformly or by a Zipf distribution.  Each recipe
+ * is edited back and forth between two variants with different
+ * amounts and prices, so the change of a sold order tells which variant
+ * was made, and so what it used, even while edits race with orders.
+ * With a target rate, each thread keeps to a schedule and latency is
+ * measured from when an operation was due rather than when it started,
+ * so a stall shows up in the percentiles instead of slowing the load.
+ * <pre>
+ * java edu.ncsu.csc326.coffeemaker.OrderSimulator [name=value ...]
+ *   threads=4 seconds=10 recipes=10 zipf=0 (0 for uniform) rate=0 (ops/s, 0 for flat out)
+ *   restocks=10 edits=1 (per 1000 operations) restockUnits=500 inventory=synchronized|lock-free
+ * </pre>
+ */
+public class OrderSimulator {
+	/** What every order pays; more than any recipe costs */
+	private static final int PAID = 1000;
+	/** Price of variant 0 of recipe 0; recipe i variant v costs BASE_PRICE + 2 * i + v */
+	private static final int BASE_PRICE = 50;
+
+	/** Operations the simulator times */
+	public enum Operation {
+		ORDER, RESTOCK, EDIT
+	}
+
+	private int threads = 4;
+	private long durationNanos = TimeUnit.SECONDS.toNanos(10);
+	private int recipes = 10;
+	private double zipfExponent;
+	private double rate;
+	private int restocksPerThousand = 10;
+	private int editsPerThousand = 1;
+	private int restockUnits = 500;
+
+	/**
+	 * @param threads number of threads placing operations
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @param duration how long to run
+	 * @param unit
+	 */
+	public void setDuration(long duration, TimeUnit unit) {
+		this.durationNanos = unit.toNanos(duration);
+	}
+
+	/**
+	 * @param recipes number of recipes on the menu
+	 */
+	public void setRecipes(int recipes) {
+		this.recipes = recipes;
+	}
+
+	/**
+	 * Picks recipe k, counting from 1, with weight 1/k^exponent; 0
+	 * picks every recipe equally often.
+	 * @param exponent
+	 */
+	public void setZipfExponent(double exponent) {
+		this.zipfExponent = exponent;
+	}
+
+	/**
+	 * @param rate operations per second across all threads, or 0 to
+	 * run flat out
+	 */
+	public void setRate(double rate) {
+		this.rate = rate;
+	}
+
+	/**
+	 * @param perThousand restocks per 1000 operations
+	 */
+	public void setRestocksPerThousand(int perThousand) {
+		this.restocksPerThousand = perThousand;
+	}
+
+	/**
+	 * @param perThousand recipe edits per 1000 operations
+	 */
+	public void setEditsPerThousand(int perThousand) {
+		this.editsPerThousand = perThousand;
+	}
+
+	/**
+	 * @param units units of every ingredient added by each restock
+	 */
+	public void setRestockUnits(int units) {
+		this.restockUnits = units;
+	}
+
+	/**
+	 * Adds the menu to a coffee maker with an empty recipe book, runs
+	 * the load and reconciles the inventory.
+	 * @param coffeeMaker
+	 * @return Report
+	 * @throws InterruptedException if interrupted while waiting for
+	 * the threads
+	 */
+	public Report run(CoffeeMaker coffeeMaker) throws InterruptedException {
+		for (int i = 0; i < recipes; i++) {
+			if (!coffeeMaker.addRecipe(variant(i, 0))) {
+				throw new IllegalStateException("Recipe book must start empty");
+			}
+		}
+		double[] popularity = popularity();
+		int[] before = new int[Inventory.INGREDIENTS];
+		System.arraycopy(coffeeMaker.checkInventory(new InventorySnapshot()).units, 0, before, 0, before.length);
+
+		Report report = new Report();
+		Worker[] workers = new Worker[threads];
+		long start = System.nanoTime();
+		long deadline = start + durationNanos;
+		long interval = rate > 0 ? (long) (threads * 1e9 / rate) : 0;
+		for (int t = 0; t < threads; t++) {
+			workers[t] = new Worker(coffeeMaker, popularity, report, start, deadline, interval);
+			workers[t].start();
+		}
+		for (Worker worker : workers) {
+			worker.join();
+		}
+		report.elapsedNanos = System.nanoTime() - start;
+
+		int[] after = coffeeMaker.checkInventory(new InventorySnapshot()).units;
+		for (int i = 0; i < Inventory.INGREDIENTS; i++) {
+			long expected = before[i];
+			for (Worker worker : workers) {
+				expected += worker.added[i] - worker.used[i];
+			}
+			report.expected[i] = expected;
+			report.actual[i] = after[i];
+		}
+		for (Worker worker : workers) {
+			report.orders += worker.orders;
+			report.sold += worker.sold;
+			report.restocks += worker.restocks;
+			report.rejectedRestocks += worker.rejectedRestocks;
+			report.edits += worker.edits;
+		}
+		return report;
+	}
+
+	/**
+	 * Returns variant 0 or 1 of recipe i.  The variants differ in
+	 * every amount and in price, and no two recipes share a price.
+	 */
+	static Recipe variant(int i, int v) {
+		int[] amounts = new int[Inventory.INGREDIENTS];
+		for (int ingredient = 0; ingredient < amounts.length; ingredient++) {
+			amounts[ingredient] = (i + ingredient + v * 2) % 4;
+		}
+		return Recipe.restore("Recipe " + i, BASE_PRICE + 2 * i + v, amounts);
+	}
+
+	/**
+	 * Returns the cumulative probability of picking each recipe.
+	 */
+	private double[] popularity() {
+		double[] cumulative = new double[recipes];
+		double total = 0;
+		for (int i = 0; i < recipes; i++) {
+			total += zipfExponent == 0 ? 1 : 1 / Math.pow(i + 1, zipfExponent);
+			cumulative[i] = total;
+		}
+		for (int i = 0; i < recipes; i++) {
+			cumulative[i] /= total;
+		}
+		return cumulative;
+	}
+
+	/** One thread of load; counts are only read once it has finished */
+	private final class Worker extends Thread {
+		private final CoffeeMaker coffeeMaker;
+		private final double[] popularity;
+		private final Report report;
+		private final long start;
+		private final long deadline;
+		private final long interval;
+		/** Units used by sold orders and added by restocks, by ingredient id */
+		final long[] used = new long[Inventory.INGREDIENTS];
+		final long[] added = new long[Inventory.INGREDIENTS];
+		long orders;
+		long sold;
+		long restocks;
+		long rejectedRestocks;
+		long edits;
+
+		Worker(CoffeeMaker coffeeMaker, double[] popularity, Report report, long start, long deadline,
+				long interval) {
+			super("order-simulator");
+			this.coffeeMaker = coffeeMaker;
+			this.popularity = popularity;
+			this.report = report;
+			this.start = start;
+			this.deadline = deadline;
+			this.interval = interval;
+		}
+
+		@Override
+		public void run() {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			// Spread the threads' schedules across one interval.
+			long due = start + (interval > 0 ? random.nextLong(interval) : 0);
+			for (;;) {
+				long now = System.nanoTime();
+				if (interval > 0) {
+					while (now < due) {
+						LockSupport.parkNanos(due - now);
+						now = System.nanoTime();
+					}
+				} else {
+					due = now;
+				}
+				if (due >= deadline) {
+					return;
+				}
+				int pick = random.nextInt(1000);
+				Operation operation;
+				if (pick < restocksPerThousand) {
+					operation = Operation.RESTOCK;
+					restock();
+				} else if (pick < restocksPerThousand + editsPerThousand) {
+					operation = Operation.EDIT;
+					int recipe = random.nextInt(recipes);
+					coffeeMaker.editRecipe(recipe, variant(recipe, random.nextInt(2)));
+					edits++;
+				} else {
+					operation = Operation.ORDER;
+					order(random);
+				}
+				report.latency[operation.ordinal()].record(System.nanoTime() - due);
+				due += interval;
+			}
+		}
+
+		private void order(ThreadLocalRandom random) {
+			int recipe = Arrays.binarySearch(popularity, random.nextDouble());
+			recipe = Math.min(recipes - 1, recipe < 0 ? -recipe - 1 : recipe);
+			int change = coffeeMaker.makeCoffee(recipe, PAID);
+			orders++;
+			if (change != PAID) {
+				int v = PAID - change - BASE_PRICE - 2 * recipe;
+				int[] amounts = variant(recipe, v).getRequirements();
+				for (int i = 0; i < amounts.length; i++) {
+					used[i] += amounts[i];
+				}
+				sold++;
+			}
+		}
+
+		private void restock() {
+			restocks++;
+			if (coffeeMaker.tryAddInventory(restockUnits, restockUnits, restockUnits, restockUnits).isValid()) {
+				for (int i = 0; i < added.length; i++) {
+					added[i] += restockUnits;
+				}
+			} else {
+				rejectedRestocks++;
+			}
+		}
+	}
+
+	/**
+	 * Results of a run.
+	 */
+	public static final class Report {
+		private final LatencyHistogram[] latency = new LatencyHistogram[Operation.values().length];
+		private final long[] expected = new long[Inventory.INGREDIENTS];
+		private final long[] actual = new long[Inventory.INGREDIENTS];
+		private long elapsedNanos;
+		private long orders;
+		private long sold;
+		private long restocks;
+		private long rejectedRestocks;
+		private long edits;
+
+		private Report() {
+			for (int i = 0; i < latency.length; i++) {
+				latency[i] = new LatencyHistogram();
+			}
+		}
+
+		/**
+		 * @return orders placed
+		 */
+		public long getOrders() {
+			return orders;
+		}
+
+		/**
+		 * @return orders that were made
+		 */
+		public long getSold() {
+			return sold;
+		}
+
+		/**
+		 * @return restocks attempted
+		 */
+		public long getRestocks() {
+			return restocks;
+		}
+
+		/**
+		 * @return recipe edits made
+		 */
+		public long getEdits() {
+			return edits;
+		}
+
+		/**
+		 * @return operations of every kind per second
+		 */
+		public double getThroughput() {
+			return (orders + restocks + edits) / (elapsedNanos / 1e9);
+		}
+
+		/**
+		 * @param operation
+		 * @return the latencies of the given operation
+		 */
+		public LatencyHistogram.Snapshot getLatency(Operation operation) {
+			return latency[operation.ordinal()].snapshot();
+		}
+
+		/**
+		 * @param ingredient ingredient id
+		 * @return units in stock at the end less the units the starting
+		 * stock, restocks and sold orders account for; 0 if nothing was
+		 * lost or double counted
+		 */
+		public long getDiscrepancy(int ingredient) {
+			return actual[ingredient] - expected[ingredient];
+		}
+
+		/**
+		 * Returns the report as a few lines of text.
+		 * @return String
+		 */
+		public String toString() {
+			StringBuilder out = new StringBuilder();
+			out.append(String.format("ops/s=%.0f orders=%d sold=%d restocks=%d (rejected %d) edits=%d%n",
+					getThroughput(), orders, sold, restocks, rejectedRestocks, edits));
+			for (Operation operation : Operation.values()) {
+				LatencyHistogram.Snapshot histogram = getLatency(operation);
+				out.append(String.format("%s latency us: p50=%.1f p99=%.1f p99.9=%.1f max=%.1f%n", operation,
+						histogram.getPercentile(0.5) / 1e3, histogram.getPercentile(0.99) / 1e3,
+						histogram.getPercentile(0.999) / 1e3, histogram.getMax() / 1e3));
+			}
+			String[] names = {"coffee", "milk", "sugar", "chocolate"};
+			out.append("inventory expected/actual:");
+			for (int i = 0; i < names.length; i++) {
+				out.append(' ').append(names[i]).append('=').append(expected[i]).append('/').append(actual[i]);
+			}
+			return out.append('\n').toString();
+		}
+	}
+
+	/**
+	 * Runs a simulation against a fresh coffee maker and prints the
+	 * report; exits with status 1 if the inventory does not reconcile.
+	 * @param args name=value settings, see the class comment
+	 * @throws InterruptedException if interrupted
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		OrderSimulator simulator = new OrderSimulator();
+		Inventory inventory = new Inventory();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			String name = equals < 0 ? arg : arg.substring(0, equals);
+			String value = equals < 0 ? "" : arg.substring(equals + 1);
+			switch (name) {
+			case "threads":
+				simulator.setThreads(Integer.parseInt(value));
+				break;
+			case "seconds":
+				simulator.setDuration(Long.parseLong(value), TimeUnit.SECONDS);
+				break;
+			case "recipes":
+				simulator.setRecipes(Integer.parseInt(value));
+				break;
+			case "zipf":
+				simulator.setZipfExponent(Double.parseDouble(value));
+				break;
+			case "rate":
+				simulator.setRate(Double.parseDouble(value));
+				break;
+			case "restocks":
+				simulator.setRestocksPerThousand(Integer.parseInt(value));
+				break;
+			case "edits":
+				simulator.setEditsPerThousand(Integer.parseInt(value));
+				break;
+			case "restockUnits":
+				simulator.setRestockUnits(Integer.parseInt(value));
+				break;
+			case "inventory":
+				inventory = "lock-free".equals(value) ? new LockFreeInventory() : new Inventory();
+				break;
+			default:
+				System.err.println("Unknown setting " + name);
+				System.exit(2);
+			}
+		}
+		Report report = simulator.run(new CoffeeMaker(new RecipeBook(), inventory));
+		System.out.print(report);
+		for (int i = 0; i < Inventory.INGREDIENTS; i++) {
+			if (report.getDiscrepancy(i) != 0) {
+				System.exit(1);
+			}
+		}
+	}
+}
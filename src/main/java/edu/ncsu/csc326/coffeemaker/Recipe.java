@@ -13,18 +13,44 @@
  */
 package edu.ncsu.csc326.coffeemaker;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
 import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
 
 /**
  * @author   Sarah Heckman
  */
 public class Recipe {
+    private static final AtomicLong[] NO_BOOKS = new AtomicLong[0];
+    
     private String name;
     private int price;
-    private int amtCoffee;
-    private int amtMilk;
-    private int amtSugar;
-    private int amtChocolate;
+    /** Amount of each ingredient, indexed by ingredient id */
+    private int[] amounts;
+    /** The amounts compiled for inventories, rebuilt whenever one changes */
+    private volatile Requirements requirements;
+    /** Edit counters of the books holding this recipe; replaced, never changed */
+    private volatile AtomicLong[] books = NO_BOOKS;
+    
+    /**
+     * A recipe's amounts as inventories check them.  Never changes
+     * once built, so one volatile read gives a consistent whole.
+     */
+    static final class Requirements {
+    	/** Amounts by inventory ingredient id */
+    	final int[] units;
+    	/** Ids past the built-in ingredients that the recipe uses */
+    	final int[] extras;
+    	/** The same amounts in LockFreeInventory lanes, or -1 if they do not fit */
+    	final long packed;
+    	
+    	Requirements(int[] units, int[] extras, long packed) {
+    		this.units = units;
+    		this.extras = extras;
+    		this.packed = packed;
+    	}
+    }
     
     /**
      * Creates a default recipe for the coffee maker.
@@ -32,99 +58,250 @@ public class Recipe {
     public Recipe() {
     	this.name = "";
     	this.price = 0;
-    	this.amtCoffee = 0;
-    	this.amtMilk = 0;
-    	this.amtSugar = 0;
-    	this.amtChocolate = 0;
+    	this.amounts = new int[Inventory.INGREDIENTS];
+    	compile();
+    }
+    
+    /**
+     * Rebuilds a recipe from its saved name, price and amounts,
+     * indexed by inventory ingredient id.
+     * @param name
+     * @param price
+     * @param amounts
+     * @return Recipe
+     */
+    static Recipe restore(String name, int price, int[] amounts) {
+    	Recipe r = new Recipe();
+    	r.name = name;
+    	r.price = price;
+    	r.amounts = Arrays.copyOf(amounts, Math.max(Inventory.INGREDIENTS, amounts.length));
+    	r.compile();
+    	return r;
+    }
+    
+    /**
+     * Returns the compiled amounts.  Read it once per check: a setter
+     * called meanwhile publishes a new one rather than changing it.
+     * @return Requirements
+     */
+    Requirements compiled() {
+    	return requirements;
+    }
+    
+    /**
+     * Returns the amount of each ingredient, indexed by inventory
+     * ingredient id.  The array is shared and must not be modified.
+     * @return int[]
+     */
+    int[] getRequirements() {
+    	return requirements.units;
+    }
+    
+    /**
+     * Returns the amounts packed into LockFreeInventory lanes, or
+     * -1 if some amount is more than a lane can hold or the recipe
+     * uses an ingredient without a lane.
+     * @return long
+     */
+    long getPackedRequirements() {
+    	return requirements.packed;
+    }
+    
+    /**
+     * Rebuilds the requirements from the ingredient amounts and
+     * publishes them through the volatile field, so inventories on
+     * other threads see either the old amounts or the new, whole.
+     * Extras list the ids past {@link Inventory#INGREDIENTS} the recipe
+     * uses, so checking stock costs the ingredients used rather than
+     * every one registered.
+     */
+    private void compile() {
+    	int[] required = amounts.clone();
+    	int used = 0;
+    	for (int i = Inventory.INGREDIENTS; i < required.length; i++) {
+    		if (required[i] > 0) {
+    			used++;
+    		}
+    	}
+    	int[] extras = new int[used];
+    	for (int i = Inventory.INGREDIENTS, k = 0; k < used; i++) {
+    		if (required[i] > 0) {
+    			extras[k++] = i;
+    		}
+    	}
+    	this.requirements = new Requirements(required, extras, used == 0 ? LockFreeInventory.pack(required) : -1);
+    	changed();
+    }
+    
+    /**
+     * Tells every book holding the recipe that it changed in place.
+     * Called after the change is published, so whoever reads the same
+     * count again has seen it.
+     */
+    private void changed() {
+    	for (AtomicLong edits : books) {
+    		edits.incrementAndGet();
+    	}
+    }
+    
+    /**
+     * Starts bumping a book's edit counter whenever the recipe changes.
+     * @param edits
+     */
+    synchronized void heldBy(AtomicLong edits) {
+    	AtomicLong[] books = Arrays.copyOf(this.books, this.books.length + 1);
+    	books[books.length - 1] = edits;
+    	this.books = books;
+    }
+    
+    /**
+     * Stops bumping a book's edit counter.
+     * @param edits
+     */
+    synchronized void releasedBy(AtomicLong edits) {
+    	AtomicLong[] books = this.books;
+    	for (int i = 0; i < books.length; i++) {
+    		if (books[i] == edits) {
+    			AtomicLong[] fewer = Arrays.copyOf(books, books.length - 1);
+    			System.arraycopy(books, i + 1, fewer, i, books.length - i - 1);
+    			this.books = fewer;
+    			return;
+    		}
+    	}
+    }
+    
+    /**
+     * @param ingredient ingredient id
+     * @return the units of the ingredient the recipe needs
+     */
+    public int getAmount(int ingredient) {
+    	Ingredients.check(ingredient);
+    	return ingredient < amounts.length ? amounts[ingredient] : 0;
+    }
+    
+    /**
+     * @param ingredient ingredient id
+     * @param amount the units of the ingredient the recipe needs
+     * @throws RecipeException
+     */
+    public void setAmount(int ingredient, String amount) throws RecipeException {
+    	Validation result = trySetAmount(ingredient, amount);
+    	if (!result.isValid()) {
+    		throw new RecipeException(result.getMessage());
+    	}
+    }
+    
+    /**
+     * Sets the amount of an ingredient, or returns why it cannot be set.
+     * @param ingredient ingredient id
+     * @param amount
+     * @return Validation
+     */
+    public Validation trySetAmount(int ingredient, String amount) {
+    	Ingredients.check(ingredient);
+    	long units = Validation.parse(amount);
+    	if (units >= 0) {
+    		if (ingredient >= amounts.length) {
+    			amounts = Arrays.copyOf(amounts, ingredient + 1);
+    		}
+    		amounts[ingredient] = (int) units;
+    		compile();
+    		return Validation.OK;
+    	}
+    	return Validation.invalid(ingredient);
     }
     
     /**
 	 * @return   Returns the amtChocolate.
 	 */
     public int getAmtChocolate() {
-		return amtChocolate;
+		return amounts[Inventory.CHOCOLATE];
 	}
     /**
 	 * @param amtChocolate   The amtChocolate to set.
 	 */
     public void setAmtChocolate(String chocolate) throws RecipeException {
-    	int amtChocolate = 0;
-    	try {
-    		amtChocolate = Integer.parseInt(chocolate);
-    	} catch (NumberFormatException e) {
-    		throw new RecipeException("Units of chocolate must be a positive integer");
+    	Validation result = trySetAmtChocolate(chocolate);
+    	if (!result.isValid()) {
+    		throw new RecipeException(result.getMessage());
     	}
-		if (amtChocolate >= 0) {
-			this.amtChocolate = amtChocolate;
-		} else {
-			throw new RecipeException("Units of chocolate must be a positive integer");
-		}
+	}
+    /**
+     * Sets the amount of chocolate, or returns why it cannot be set.
+     * @param chocolate
+     * @return Validation
+     */
+    public Validation trySetAmtChocolate(String chocolate) {
+    	return trySetAmount(Inventory.CHOCOLATE, chocolate);
 	}
     /**
 	 * @return   Returns the amtCoffee.
 	 */
     public int getAmtCoffee() {
-		return amtCoffee;
+		return amounts[Inventory.COFFEE];
 	}
     /**
 	 * @param amtCoffee   The amtCoffee to set.
 	 */
     public void setAmtCoffee(String coffee) throws RecipeException {
-    	int amtCoffee = 0;
-    	try {
-    		amtCoffee = Integer.parseInt(coffee);
-    	} catch (NumberFormatException e) {
-    		throw new RecipeException("Units of coffee must be a positive integer");
+    	Validation result = trySetAmtCoffee(coffee);
+    	if (!result.isValid()) {
+    		throw new RecipeException(result.getMessage());
     	}
-		if (amtCoffee >= 0) {
-			this.amtCoffee = amtCoffee;
-		} else {
-			throw new RecipeException("Units of coffee must be a positive integer");
-		}
+	}
+    /**
+     * Sets the amount of coffee, or returns why it cannot be set.
+     * @param coffee
+     * @return Validation
+     */
+    public Validation trySetAmtCoffee(String coffee) {
+    	return trySetAmount(Inventory.COFFEE, coffee);
 	}
     /**
 	 * @return   Returns the amtMilk.
 	 */
     public int getAmtMilk() {
-		return amtMilk;
+		return amounts[Inventory.MILK];
 	}
     /**
 	 * @param amtMilk   The amtMilk to set.
 	 */
-    public void setAmtMilk(String milk) throws RecipeException{
-    	int amtMilk = 0;
-    	try {
-    		amtMilk = Integer.parseInt(milk);
-    	} catch (NumberFormatException e) {
-    		throw new RecipeException("Units of milk must be a positive integer");
+    public void setAmtMilk(String milk) throws RecipeException {
+    	Validation result = trySetAmtMilk(milk);
+    	if (!result.isValid()) {
+    		throw new RecipeException(result.getMessage());
     	}
-		if (amtMilk >= 0) {
-			this.amtMilk = amtMilk;
-		} else {
-			throw new RecipeException("Units of milk must be a positive integer");
-		}
+	}
+    /**
+     * Sets the amount of milk, or returns why it cannot be set.
+     * @param milk
+     * @return Validation
+     */
+    public Validation trySetAmtMilk(String milk) {
+    	return trySetAmount(Inventory.MILK, milk);
 	}
     /**
 	 * @return   Returns the amtSugar.
 	 */
     public int getAmtSugar() {
-		return amtSugar;
+		return amounts[Inventory.SUGAR];
 	}
     /**
 	 * @param amtSugar   The amtSugar to set.
 	 */
     public void setAmtSugar(String sugar) throws RecipeException {
-    	int amtSugar = 0;
-    	try {
-    		amtSugar = Integer.parseInt(sugar);
-    	} catch (NumberFormatException e) {
-    		throw new RecipeException("Units of sugar must be a positive integer");
+    	Validation result = trySetAmtSugar(sugar);
+    	if (!result.isValid()) {
+    		throw new RecipeException(result.getMessage());
     	}
-		if (amtSugar >= 0) {
-			this.amtSugar = amtSugar;
-		} else {
-			throw new RecipeException("Units of sugar must be a positive integer");
-		}
+	}
+    /**
+     * Sets the amount of sugar, or returns why it cannot be set.
+     * @param sugar
+     * @return Validation
+     */
+    public Validation trySetAmtSugar(String sugar) {
+    	return trySetAmount(Inventory.SUGAR, sugar);
 	}
     /**
 	 * @return   Returns the name.
@@ -138,6 +315,7 @@ public class Recipe {
     public void setName(String name) {
     	if(name != null) {
     		this.name = name;
+    		changed();
     	}
 	}
     /**
@@ -150,17 +328,24 @@ public class Recipe {
 	 * @param price   The price to set.
 	 */
     public void setPrice(String price) throws RecipeException{
-    	int amtPrice = 0;
-    	try {
-    		amtPrice = Integer.parseInt(price);
-    	} catch (NumberFormatException e) {
-    		throw new RecipeException("Price must be a positive integer");
+    	Validation result = trySetPrice(price);
+    	if (!result.isValid()) {
+    		throw new RecipeException(result.getMessage());
     	}
+	}
+    /**
+     * Sets the price, or returns why it cannot be set.
+     * @param price
+     * @return Validation
+     */
+    public Validation trySetPrice(String price) {
+    	long amtPrice = Validation.parse(price);
 		if (amtPrice >= 0) {
-			this.price = amtPrice;
-		} else {
-			throw new RecipeException("Price must be a positive integer");
+			this.price = (int) amtPrice;
+			changed();
+			return Validation.OK;
 		}
+		return Validation.INVALID_PRICE;
 	} 
     
     /**
@@ -13,53 +13,188 @@
  */
 package edu.ncsu.csc326.coffeemaker;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The recipes of a coffee maker, by position.
+ *
+ * Readers never lock: the book is published as an immutable, versioned
+ * {@link Snapshot} that is read with a single volatile load.  Writers
+ * serialize on the book and swap in a fresh snapshot, so a reader sees
+ * either the whole of an edit or none of it.
+ */
 public class RecipeBook {
 	
-	/** Array of recipes in coffee maker*/
-	private Recipe [] recipeArray;
-	/** Number of recipes in coffee maker */
-	private final int NUM_RECIPES = 4; 
+	/**
+	 * One published state of the book.  The array is never changed
+	 * once published, and callers must not change it either.
+	 */
+	public static final class Snapshot {
+		/** Incremented by every change to the book */
+		private final long version;
+		/** Recipes by position; slots past the last recipe are null */
+		private final Recipe[] recipes;
+		/** Number of slots handed out so far; slots never move */
+		private final int size;
+		/** The recipes' names, for searching by prefix */
+		private final RecipeNameIndex names;
+		
+		private Snapshot(long version, Recipe[] recipes, int size, RecipeNameIndex names) {
+			this.version = version;
+			this.recipes = recipes;
+			this.size = size;
+			this.names = names;
+		}
+		
+		/**
+		 * @return the version of the book this snapshot shows
+		 */
+		public long getVersion() {
+			return version;
+		}
+		
+		/**
+		 * @return the recipes by position; do not modify
+		 */
+		public Recipe[] getRecipes() {
+			return recipes;
+		}
+		
+		/**
+		 * @return the number of slots handed out so far
+		 */
+		int size() {
+			return size;
+		}
+		
+		/**
+		 * Returns the positions of up to limit recipes whose names
+		 * start with the prefix, ignoring case, in order of name.  The
+		 * positions index this snapshot's recipes.  Takes time in
+		 * proportion to the prefix and the names found, not to the
+		 * size of the book.
+		 * @param prefix
+		 * @param limit
+		 * @return int[]
+		 */
+		public int[] findRecipes(String prefix, int limit) {
+			return names.find(prefix, limit);
+		}
+	}
+	
+	/** Number of recipe slots a new book starts with */
+	private static final int INITIAL_CAPACITY = 4;
+	/** Current state of the book */
+	private volatile Snapshot snapshot;
+	/** Slot of each recipe, keyed by the recipe's name */
+	private final Map<String, Integer> slotsByName;
+	/** Where the mutators are timed, or null */
+	private volatile Metrics metrics;
+	/** Bumped whenever a recipe in the book is changed in place */
+	private final AtomicLong recipeEdits = new AtomicLong();
 	
 	/**
 	 * Default constructor for a RecipeBook.
 	 */
 	public RecipeBook() {
-		recipeArray = new Recipe[NUM_RECIPES];
+		snapshot = new Snapshot(0, new Recipe[INITIAL_CAPACITY], 0, RecipeNameIndex.EMPTY);
+		slotsByName = new ConcurrentHashMap<String, Integer>();
 	}
 	
 	/**
-	 * Returns the recipe array.
-	 * @param r
+	 * Returns the current snapshot of the book.
+	 * @return Snapshot
+	 */
+	public Snapshot snapshot() {
+		return snapshot;
+	}
+	
+	/**
+	 * Returns the recipe array of the current snapshot.  Slots
+	 * past the last recipe are null.  The array is shared and
+	 * must not be modified.
 	 * @return Recipe[]
 	 */
-	public synchronized Recipe[] getRecipes() {
-		return recipeArray;
-	}
-	
-	public synchronized boolean addRecipe(Recipe r) {
-		//Assume recipe doesn't exist in the array until 
-		//find out otherwise
-		boolean exists = false;
-		//Check that recipe doesn't already exist in array
-		for (int i = 0; i < recipeArray.length; i++ ) {
-			if (r.equals(recipeArray[i])) {
-				exists = true;
+	public Recipe[] getRecipes() {
+		return snapshot.recipes;
+	}
+	
+	/**
+	 * Returns how many times recipes in the book have been changed in
+	 * place, through their setters rather than the book's mutators.
+	 * @return long
+	 */
+	long getRecipeEdits() {
+		return recipeEdits.get();
+	}
+	
+	/**
+	 * Returns the position of the recipe with the given name,
+	 * or -1 if the book has no such recipe.
+	 * @param name
+	 * @return int
+	 */
+	public int indexOf(String name) {
+		Integer slot = slotsByName.get(name);
+		return slot == null ? -1 : slot;
+	}
+	
+	/**
+	 * Returns the positions of up to limit recipes whose names start
+	 * with the prefix, ignoring case, in order of name; see
+	 * {@link Snapshot#findRecipes(String, int)}.
+	 * @param prefix
+	 * @param limit
+	 * @return int[]
+	 */
+	public int[] findRecipes(String prefix, int limit) {
+		return snapshot.findRecipes(prefix, limit);
+	}
+	
+	/**
+	 * Adds the recipe in the next free slot, growing the book
+	 * as needed.  Returns false if a recipe with the same name
+	 * already exists.
+	 * @param r
+	 * @return boolean
+	 */
+	public boolean addRecipe(Recipe r) {
+		Metrics metrics = this.metrics;
+		long start = Metrics.start(metrics);
+		boolean added;
+		synchronized (this) {
+			if (metrics != null) {
+				metrics.entered(Metrics.Lock.RECIPE_BOOK, start);
 			}
+			added = add(r);
 		}
-		//Assume recipe cannot be added until find an empty
-		//spot
-		boolean added = false;
-		//Check for first empty spot in array
-		if (!exists) {
-			for (int i = 0; i < recipeArray.length && !added; i++) {
-				if (recipeArray[i] == null) {
-					recipeArray[i] = r;
-					added = true;
-				}
-			}
+		if (metrics != null) {
+			metrics.finished(Metrics.Operation.ADD_RECIPE, start);
 		}
 		return added;
 	}
+	
+	/** Adds the recipe; callers hold the lock. */
+	private boolean add(Recipe r) {
+		//Recipes are equal when their names are, so the name
+		//index answers the duplicate check directly
+		if (slotsByName.containsKey(r.getName())) {
+			return false;
+		}
+		Snapshot current = snapshot;
+		int capacity = current.recipes.length;
+		Recipe[] recipes = Arrays.copyOf(current.recipes,
+				current.size == capacity ? capacity * 2 : capacity);
+		recipes[current.size] = r;
+		r.heldBy(recipeEdits);
+		slotsByName.put(r.getName(), current.size);
+		snapshot = new Snapshot(current.version + 1, recipes, current.size + 1,
+				current.names.with(r.getName(), current.size));
+		return true;
+	}
 
 	/**
 	 * Returns the name of the recipe deleted at the position specified
@@ -67,10 +202,28 @@ public class RecipeBook {
 	 * @param recipeToDelete
 	 * @return String
 	 */
-	public synchronized String deleteRecipe(int recipeToDelete) {
-		if (recipeArray[recipeToDelete] != null) {
-			String recipeName = recipeArray[recipeToDelete].getName();
-			recipeArray[recipeToDelete] = new Recipe();
+	public String deleteRecipe(int recipeToDelete) {
+		Metrics metrics = this.metrics;
+		long start = Metrics.start(metrics);
+		String deleted;
+		synchronized (this) {
+			if (metrics != null) {
+				metrics.entered(Metrics.Lock.RECIPE_BOOK, start);
+			}
+			deleted = delete(recipeToDelete);
+		}
+		if (metrics != null) {
+			metrics.finished(Metrics.Operation.DELETE_RECIPE, start);
+		}
+		return deleted;
+	}
+	
+	/** Deletes the recipe; callers hold the lock. */
+	private String delete(int recipeToDelete) {
+		Recipe[] recipes = snapshot.recipes;
+		if (recipes[recipeToDelete] != null) {
+			String recipeName = recipes[recipeToDelete].getName();
+			replace(recipeToDelete, new Recipe());
 			return recipeName;
 		} else {
 			return null;
@@ -79,20 +232,119 @@ public class RecipeBook {
 	
 	/**
 	 * Returns the name of the recipe edited at the position specified
-	 * and null if the recipe does not exist.
+	 * and null if the recipe does not exist.  The edited recipe keeps
+	 * the name of the recipe it replaces.
 	 * @param recipeToEdit
 	 * @param newRecipe
 	 * @return String
 	 */
-	public synchronized String editRecipe(int recipeToEdit, Recipe newRecipe) {
-		if (recipeArray[recipeToEdit] != null) {
-			String recipeName = recipeArray[recipeToEdit].getName();
-			newRecipe.setName("");
-			recipeArray[recipeToEdit] = newRecipe;
+	public String editRecipe(int recipeToEdit, Recipe newRecipe) {
+		Metrics metrics = this.metrics;
+		long start = Metrics.start(metrics);
+		String edited;
+		synchronized (this) {
+			if (metrics != null) {
+				metrics.entered(Metrics.Lock.RECIPE_BOOK, start);
+			}
+			edited = edit(recipeToEdit, newRecipe);
+		}
+		if (metrics != null) {
+			metrics.finished(Metrics.Operation.EDIT_RECIPE, start);
+		}
+		return edited;
+	}
+	
+	/** Edits the recipe; callers hold the lock. */
+	private String edit(int recipeToEdit, Recipe newRecipe) {
+		Recipe[] recipes = snapshot.recipes;
+		if (recipes[recipeToEdit] != null) {
+			String recipeName = recipes[recipeToEdit].getName();
+			newRecipe.setName(recipeName);
+			replace(recipeToEdit, newRecipe);
 			return recipeName;
 		} else {
 			return null;
 		}
 	}
+	
+	/**
+	 * Puts a recovered recipe back in its original slot, growing
+	 * the book if needed.
+	 * @param slot
+	 * @param r
+	 */
+	synchronized void restoreRecipe(int slot, Recipe r) {
+		Snapshot current = snapshot;
+		if (slot >= current.size) {
+			int capacity = current.recipes.length;
+			while (capacity <= slot) {
+				capacity *= 2;
+			}
+			Recipe[] recipes = Arrays.copyOf(current.recipes, capacity);
+			for (int i = current.size; i <= slot; i++) {
+				recipes[i] = new Recipe();
+				recipes[i].heldBy(recipeEdits);
+			}
+			snapshot = new Snapshot(current.version, recipes, slot + 1, current.names);
+		}
+		replace(slot, r);
+	}
+	
+	/**
+	 * Starts timing the mutators into the given metrics, or stops
+	 * if it is null.
+	 * @param metrics
+	 */
+	void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Replaces the whole book with recovered recipes, one per slot,
+	 * in a single publish.
+	 * @param recipes
+	 */
+	synchronized void restore(Recipe[] recipes) {
+		Recipe[] slots = Arrays.copyOf(recipes, Math.max(INITIAL_CAPACITY, Integer.highestOneBit(recipes.length) * 2));
+		for (Recipe r : snapshot.recipes) {
+			if (r != null) {
+				r.releasedBy(recipeEdits);
+			}
+		}
+		for (Recipe r : recipes) {
+			r.heldBy(recipeEdits);
+		}
+		slotsByName.clear();
+		RecipeNameIndex names = RecipeNameIndex.EMPTY;
+		for (int i = 0; i < recipes.length; i++) {
+			slotsByName.putIfAbsent(recipes[i].getName(), i);
+			names = names.with(recipes[i].getName(), i);
+		}
+		snapshot = new Snapshot(snapshot.version + 1, slots, recipes.length, names);
+	}
+	
+	/**
+	 * Publishes a snapshot with the recipe in the given slot and
+	 * keeps the name indexes in step.
+	 */
+	private void replace(int slot, Recipe r) {
+		Snapshot current = snapshot;
+		String oldName = current.recipes[slot].getName();
+		if (Integer.valueOf(slot).equals(slotsByName.get(oldName))) {
+			slotsByName.remove(oldName);
+		}
+		Recipe[] recipes = current.recipes.clone();
+		current.recipes[slot].releasedBy(recipeEdits);
+		recipes[slot] = r;
+		r.heldBy(recipeEdits);
+		if (!slotsByName.containsKey(r.getName())) {
+			slotsByName.put(r.getName(), slot);
+		}
+		RecipeNameIndex names = current.names;
+		if (!oldName.equals(r.getName())) {
+			names = names.without(oldName, slot).with(r.getName(), slot);
+		}
+		snapshot = new Snapshot(current.version + 1, recipes, current.size, names);
+	}
 
 }
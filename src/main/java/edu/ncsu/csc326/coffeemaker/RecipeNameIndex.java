@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.Arrays;
+
+/**
+ * The names of a book's recipes as a trie, one node per character of
+ * the lower-cased name, for searching by prefix whatever the case.
+ * Finding where a prefix leads takes one step per character of it, and
+ * listing the recipes below takes one step per character of each name
+ * listed, however many recipes the book holds.
+ *
+ * An index never changes: adding or removing a name copies just the
+ * nodes on its path and shares the rest, so every
+ * {@link RecipeBook.Snapshot} carries its own index and is searched
+ * without locking.
+ */
+final class RecipeNameIndex {
+	private static final int[] NO_SLOTS = new int[0];
+	private static final char[] NO_KEYS = new char[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	/** The index of a book without recipes */
+	static final RecipeNameIndex EMPTY = new RecipeNameIndex(Node.LEAF);
+
+	/** One character of a name, and the names going on from it */
+	private static final class Node {
+		static final Node LEAF = new Node(NO_KEYS, NO_CHILDREN, NO_SLOTS);
+
+		/** Next characters, in order, and the node each leads to */
+		final char[] keys;
+		final Node[] children;
+		/** Slots of the recipes whose name ends here, in order */
+		final int[] slots;
+
+		Node(char[] keys, Node[] children, int[] slots) {
+			this.keys = keys;
+			this.children = children;
+			this.slots = slots;
+		}
+
+		boolean isEmpty() {
+			return keys.length == 0 && slots.length == 0;
+		}
+	}
+
+	private final Node root;
+
+	private RecipeNameIndex(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * Returns an index that also has the recipe in the given slot.
+	 * Recipes without a name, such as deleted ones, are not indexed.
+	 * @param name
+	 * @param slot
+	 * @return RecipeNameIndex
+	 */
+	RecipeNameIndex with(String name, int slot) {
+		return name.isEmpty() ? this : new RecipeNameIndex(with(root, name, 0, slot));
+	}
+
+	/**
+	 * Returns an index without the recipe in the given slot.
+	 * @param name the name it was indexed under
+	 * @param slot
+	 * @return RecipeNameIndex
+	 */
+	RecipeNameIndex without(String name, int slot) {
+		return name.isEmpty() ? this : new RecipeNameIndex(without(root, name, 0, slot));
+	}
+
+	/**
+	 * Returns the slots of up to limit recipes whose names start with
+	 * the prefix, ignoring case, in order of name.
+	 * @param prefix
+	 * @param limit
+	 * @return int[]
+	 */
+	int[] find(String prefix, int limit) {
+		Node node = root;
+		for (int at = 0; at < prefix.length() && node != null; at++) {
+			node = child(node, fold(prefix.charAt(at)));
+		}
+		if (node == null || limit <= 0) {
+			return NO_SLOTS;
+		}
+		Found found = new Found(limit);
+		found.collect(node);
+		return Arrays.copyOf(found.slots, found.count);
+	}
+
+	/** Slots found by one search, up to its limit */
+	private static final class Found {
+		final int limit;
+		int[] slots;
+		int count;
+
+		Found(int limit) {
+			this.limit = limit;
+			this.slots = new int[Math.min(limit, 16)];
+		}
+
+		/** Adds the slots below the node, in order, until the limit; returns whether it was reached. */
+		boolean collect(Node node) {
+			for (int slot : node.slots) {
+				if (count == limit) {
+					return true;
+				}
+				if (count == slots.length) {
+					slots = Arrays.copyOf(slots, (int) Math.min(limit, 2L * count));
+				}
+				slots[count++] = slot;
+			}
+			for (Node child : node.children) {
+				if (collect(child)) {
+					return true;
+				}
+			}
+			return count == limit;
+		}
+	}
+
+	private static Node with(Node node, String name, int at, int slot) {
+		if (at == name.length()) {
+			int i = Arrays.binarySearch(node.slots, slot);
+			if (i >= 0) {
+				return node;
+			}
+			return new Node(node.keys, node.children, insert(node.slots, -i - 1, slot));
+		}
+		char key = fold(name.charAt(at));
+		int i = Arrays.binarySearch(node.keys, key);
+		if (i >= 0) {
+			Node[] children = node.children.clone();
+			children[i] = with(children[i], name, at + 1, slot);
+			return new Node(node.keys, children, node.slots);
+		}
+		i = -i - 1;
+		char[] keys = new char[node.keys.length + 1];
+		Node[] children = new Node[keys.length];
+		System.arraycopy(node.keys, 0, keys, 0, i);
+		System.arraycopy(node.children, 0, children, 0, i);
+		keys[i] = key;
+		children[i] = with(Node.LEAF, name, at + 1, slot);
+		System.arraycopy(node.keys, i, keys, i + 1, node.keys.length - i);
+		System.arraycopy(node.children, i, children, i + 1, node.children.length - i);
+		return new Node(keys, children, node.slots);
+	}
+
+	private static Node without(Node node, String name, int at, int slot) {
+		if (at == name.length()) {
+			int i = Arrays.binarySearch(node.slots, slot);
+			if (i < 0) {
+				return node;
+			}
+			int[] slots = new int[node.slots.length - 1];
+			System.arraycopy(node.slots, 0, slots, 0, i);
+			System.arraycopy(node.slots, i + 1, slots, i, slots.length - i);
+			return new Node(node.keys, node.children, slots);
+		}
+		int i = Arrays.binarySearch(node.keys, fold(name.charAt(at)));
+		if (i < 0) {
+			return node;
+		}
+		Node child = without(node.children[i], name, at + 1, slot);
+		if (child == node.children[i]) {
+			return node;
+		}
+		if (!child.isEmpty()) {
+			Node[] children = node.children.clone();
+			children[i] = child;
+			return new Node(node.keys, children, node.slots);
+		}
+		// Prune the emptied branch so every node leads to some recipe.
+		char[] keys = new char[node.keys.length - 1];
+		Node[] children = new Node[keys.length];
+		System.arraycopy(node.keys, 0, keys, 0, i);
+		System.arraycopy(node.children, 0, children, 0, i);
+		System.arraycopy(node.keys, i + 1, keys, i, keys.length - i);
+		System.arraycopy(node.children, i + 1, children, i, children.length - i);
+		return new Node(keys, children, node.slots);
+	}
+
+	private static Node child(Node node, char key) {
+		int i = Arrays.binarySearch(node.keys, key);
+		return i < 0 ? null : node.children[i];
+	}
+
+	private static int[] insert(int[] slots, int at, int slot) {
+		int[] wider = new int[slots.length + 1];
+		System.arraycopy(slots, 0, wider, 0, at);
+		wider[at] = slot;
+		System.arraycopy(slots, at, wider, at + 1, slots.length - at);
+		return wider;
+	}
+
+	/** The form a character is indexed and searched under. */
+	private static char fold(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ingredients held for one beverage by
+ * {@link Inventory#reserve(Recipe, long, TimeUnit)}.
+ *
+ * The ingredients leave the inventory when they are reserved, so no
+ * other order can be sold them.  Exactly one of {@link #commit()},
+ * {@link #release()} or the timeout settles the reservation: committing
+ * keeps the ingredients used, while releasing or timing out puts them
+ * back.  Timeouts are handled by a few shared background threads, each
+ * serving a share of the inventories; a reservation settled early is
+ * taken off its thread's queue, so a queue holds only the reservations
+ * still open.
+ */
+public class Reservation {
+	private static final int PENDING = 0;
+	private static final int COMMITTED = 1;
+	private static final int RELEASED = 2;
+	private static final int EXPIRED = 3;
+
+	private final Inventory inventory;
+	private final Recipe recipe;
+	/** Units held, indexed by ingredient id */
+	private final int[] units;
+	/** System.nanoTime() at which the reservation times out */
+	private final long deadline;
+	private final AtomicInteger state = new AtomicInteger(PENDING);
+	/** The pending timeout; set before the reservation is handed out */
+	private ScheduledFuture<?> expiry;
+	/** Recipe book slot the recipe was ordered from, or -1 */
+	int slot = -1;
+
+	Reservation(Inventory inventory, Recipe recipe, int[] units, long deadline) {
+		this.inventory = inventory;
+		this.recipe = recipe;
+		this.units = units;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * @return the recipe the ingredients are held for
+	 */
+	public Recipe getRecipe() {
+		return recipe;
+	}
+
+	/**
+	 * @return the inventory the units are held in
+	 */
+	Inventory getInventory() {
+		return inventory;
+	}
+
+	/**
+	 * @return the units held, indexed by ingredient id
+	 */
+	int[] getUnits() {
+		return units;
+	}
+
+	/**
+	 * Keeps the held ingredients as used.  Returns false, and changes
+	 * nothing, if the reservation was already released or timed out.
+	 * @return boolean
+	 */
+	public boolean commit() {
+		if (state.compareAndSet(PENDING, COMMITTED)) {
+			expiry.cancel(false);
+			inventory.keep(units);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Puts the held ingredients back.  Returns false, and changes
+	 * nothing, if the reservation was already settled.
+	 * @return boolean
+	 */
+	public boolean release() {
+		if (settle(RELEASED)) {
+			expiry.cancel(false);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return true until the reservation is committed, released or
+	 * timed out
+	 */
+	public boolean isPending() {
+		return state.get() == PENDING;
+	}
+
+	private boolean settle(int outcome) {
+		if (state.compareAndSet(PENDING, outcome)) {
+			inventory.giveBack(units);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Arranges for the reservation to time out at its deadline.
+	 */
+	static void schedule(Reservation reservation) {
+		ScheduledThreadPoolExecutor reaper = Expiry.REAPERS[
+				(System.identityHashCode(reservation.inventory) & Integer.MAX_VALUE) % Expiry.REAPERS.length];
+		reservation.expiry = reaper.schedule(() -> reservation.settle(EXPIRED),
+				reservation.deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	/** Started on first use, so inventories that never reserve pay nothing. */
+	private static final class Expiry {
+		/** Each has its own queue and lock, so inventories on different ones never contend */
+		static final ScheduledThreadPoolExecutor[] REAPERS =
+				new ScheduledThreadPoolExecutor[Math.min(4, Runtime.getRuntime().availableProcessors())];
+
+		static {
+			for (int i = 0; i < REAPERS.length; i++) {
+				String name = "reservation-expiry-" + i;
+				ScheduledThreadPoolExecutor reaper = new ScheduledThreadPoolExecutor(1, task -> {
+					Thread thread = new Thread(task, name);
+					thread.setDaemon(true);
+					return thread;
+				});
+				reaper.setRemoveOnCancelPolicy(true);
+				REAPERS[i] = reaper;
+			}
+		}
+	}
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Record of every purchase attempt made on a coffee maker.
+ *
+ * Order threads write into preallocated rings of primitive records,
+ * one ring per stripe and the stripe picked by thread, so threads on
+ * different cores neither claim from one counter nor write records
+ * sharing a cache line.  A slot is claimed with one uncontended
+ * atomic increment, filled in and published with an ordered write,
+ * so recording a sale takes no lock and allocates nothing.  A
+ * background drainer consumes each ring in order, keeps running
+ * totals and hands each sale to an optional {@link Drain}.  If a
+ * ring fills up, its order threads wake the drainer and wait for it
+ * rather than drop a sale.
+ *
+ * Timestamps come from a clock the drainer refreshes between rounds,
+ * so they are accurate to about a millisecond without order threads
+ * reading the system clock.
+ */
+public class SalesLedger implements Closeable {
+
+	/** What came of a purchase attempt */
+	public enum Outcome {
+		/** The beverage was made and paid for */
+		SOLD,
+		/** The amount paid did not cover the price */
+		INSUFFICIENT_FUNDS,
+		/** Some ingredient ran short */
+		OUT_OF_STOCK,
+		/** There is no recipe at the index ordered */
+		NO_SUCH_RECIPE,
+		/** The coins in the tubes cannot make the change */
+		NO_CHANGE
+	}
+
+	/**
+	 * Receives every sale on the drainer thread, in the order each
+	 * order thread recorded them.
+	 */
+	public interface Drain {
+		/**
+		 * @param recipe index of the recipe ordered
+		 * @param price price of the recipe, or 0 if there is none
+		 * @param paid amount paid
+		 * @param change change returned
+		 * @param outcome what came of the attempt
+		 * @param timeMillis when the attempt was made
+		 */
+		void sale(int recipe, int price, int paid, int change, Outcome outcome, long timeMillis);
+	}
+
+	/** Default number of slots, split among the stripes */
+	private static final int DEFAULT_CAPACITY = 1 << 16;
+	/** Longest the drainer sleeps when every ring is empty; also the clock's resolution */
+	private static final long IDLE_NANOS = 1000000;
+	private static final Outcome[] OUTCOMES = Outcome.values();
+
+	/** Longs per record: recipe and price, paid and change, outcome, time */
+	private static final int STRIDE = 4;
+	/** Longs between the sequence counters, so each has its own cache line */
+	private static final int LINE = 8;
+
+	private final int mask;
+	/** Each stripe's records, STRIDE longs each */
+	private final long[][] records;
+	/** Sequence number last published in each slot of each stripe */
+	private final AtomicLongArray[] published;
+	/**
+	 * Per stripe, LINE apart: the next sequence number to hand out,
+	 * then the one below which every sequence number has been drained
+	 */
+	private final AtomicLongArray sequences;
+
+	private final Drain drain;
+	/** Only written by the drainer */
+	private final AtomicLongArray counts = new AtomicLongArray(OUTCOMES.length);
+	private final AtomicLong revenue = new AtomicLong();
+
+	private final Thread drainer;
+	private volatile boolean closed;
+	/** Wall clock, refreshed by the drainer every round */
+	private volatile long now = System.currentTimeMillis();
+
+	/**
+	 * Creates a ledger that only keeps running totals.
+	 */
+	public SalesLedger() {
+		this(DEFAULT_CAPACITY, null);
+	}
+
+	/**
+	 * Creates a ledger with at least the given number of slots, split
+	 * among a stripe per processor, that passes every sale to the
+	 * given drain, if any.
+	 * @param capacity
+	 * @param drain
+	 */
+	public SalesLedger(int capacity, Drain drain) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Capacity must be between 1 and " + (1 << 30));
+		}
+		int slots = Integer.highestOneBit(capacity);
+		if (slots < capacity) {
+			slots <<= 1;
+		}
+		int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors());
+		if (stripes < Runtime.getRuntime().availableProcessors()) {
+			stripes <<= 1;
+		}
+		stripes = Math.min(stripes, slots);
+		mask = slots / stripes - 1;
+		records = new long[stripes][];
+		published = new AtomicLongArray[stripes];
+		for (int s = 0; s < stripes; s++) {
+			records[s] = new long[(mask + 1) * STRIDE];
+			published[s] = new AtomicLongArray(mask + 1);
+			for (int i = 0; i <= mask; i++) {
+				published[s].set(i, -1);
+			}
+		}
+		sequences = new AtomicLongArray(stripes * 2 * LINE);
+		this.drain = drain;
+		drainer = new Thread(this::drainLoop, "sales-ledger");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	/**
+	 * Records one purchase attempt.  Safe to call from any number of
+	 * threads at once.  Once the ledger is closed nothing more is
+	 * recorded, so a coffee maker still holding it keeps selling.
+	 * @param recipe
+	 * @param price
+	 * @param amtPaid
+	 * @param change
+	 * @param outcome
+	 */
+	public void record(int recipe, int price, int amtPaid, int change, Outcome outcome) {
+		if (closed) {
+			return;
+		}
+		int stripe = (int) Thread.currentThread().getId() & (records.length - 1);
+		long sequence = sequences.getAndIncrement(claimedAt(stripe));
+		if (sequence - sequences.get(drainedAt(stripe)) > mask) {
+			// Full; the drainer frees a whole run of slots at once.
+			LockSupport.unpark(drainer);
+			while (sequence - sequences.get(drainedAt(stripe)) > mask) {
+				if (!drainer.isAlive()) {
+					// Closed since the check above; no slot will be freed.
+					return;
+				}
+				LockSupport.parkNanos(1);
+			}
+		}
+		int slot = (int) sequence & mask;
+		int at = slot * STRIDE;
+		long[] ring = records[stripe];
+		ring[at] = pair(recipe, price);
+		ring[at + 1] = pair(amtPaid, change);
+		ring[at + 2] = outcome.ordinal();
+		ring[at + 3] = now;
+		published[stripe].lazySet(slot, sequence);
+	}
+
+	/**
+	 * @param outcome
+	 * @return the number of drained attempts with the given outcome
+	 */
+	public long getCount(Outcome outcome) {
+		return counts.get(outcome.ordinal());
+	}
+
+	/**
+	 * @return the money taken by drained sales
+	 */
+	public long getRevenue() {
+		return revenue.get();
+	}
+
+	/**
+	 * Waits until every attempt recorded before this call has been
+	 * drained, so the totals include them, or until the ledger has
+	 * been closed.
+	 */
+	public void flush() {
+		for (int s = 0; s < records.length; s++) {
+			long target = sequences.get(claimedAt(s));
+			while (sequences.get(drainedAt(s)) < target && drainer.isAlive()) {
+				LockSupport.unpark(drainer);
+				LockSupport.parkNanos(IDLE_NANOS / 10);
+			}
+		}
+	}
+
+	/**
+	 * Drains what has been recorded and stops the drainer.  Later
+	 * attempts are not recorded.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		LockSupport.unpark(drainer);
+		try {
+			drainer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static int claimedAt(int stripe) {
+		return stripe * 2 * LINE;
+	}
+
+	private static int drainedAt(int stripe) {
+		return stripe * 2 * LINE + LINE;
+	}
+
+	private void drainLoop() {
+		long[] next = new long[records.length];
+		long[] runCounts = new long[OUTCOMES.length];
+		for (;;) {
+			now = System.currentTimeMillis();
+			boolean idle = true;
+			for (int s = 0; s < records.length; s++) {
+				if (drainRun(s, next, runCounts)) {
+					idle = false;
+				}
+			}
+			if (idle) {
+				if (closed && allClaimedDrained(next)) {
+					return;
+				}
+				// Order threads wake the drainer early if a ring fills.
+				LockSupport.parkNanos(IDLE_NANOS);
+			}
+		}
+	}
+
+	/**
+	 * Drains the run of published records at the head of a stripe's
+	 * ring, returning false if there are none.
+	 */
+	private boolean drainRun(int stripe, long[] next, long[] runCounts) {
+		AtomicLongArray ring = published[stripe];
+		long[] stripeRecords = records[stripe];
+		long start = next[stripe];
+		long at = start;
+		int slot = (int) at & mask;
+		if (ring.get(slot) != at) {
+			return false;
+		}
+		long runRevenue = 0;
+		do {
+			int offset = slot * STRIDE;
+			Outcome outcome = OUTCOMES[(int) stripeRecords[offset + 2]];
+			int amtPaid = high(stripeRecords[offset + 1]);
+			int change = low(stripeRecords[offset + 1]);
+			runCounts[outcome.ordinal()]++;
+			if (outcome == Outcome.SOLD) {
+				runRevenue += amtPaid - change;
+			}
+			if (drain != null) {
+				try {
+					drain.sale(high(stripeRecords[offset]), low(stripeRecords[offset]), amtPaid, change, outcome,
+							stripeRecords[offset + 3]);
+				} catch (RuntimeException e) {
+					// A failing drain must not stall the order threads.
+				}
+			}
+			at++;
+			slot = (int) at & mask;
+		} while (at - start <= mask && ring.get(slot) == at);
+		// Totals are published once per run, before the slots are freed.
+		for (int i = 0; i < runCounts.length; i++) {
+			if (runCounts[i] != 0) {
+				counts.lazySet(i, counts.get(i) + runCounts[i]);
+				runCounts[i] = 0;
+			}
+		}
+		revenue.lazySet(revenue.get() + runRevenue);
+		next[stripe] = at;
+		sequences.set(drainedAt(stripe), at);
+		return true;
+	}
+
+	private boolean allClaimedDrained(long[] next) {
+		for (int s = 0; s < next.length; s++) {
+			if (next[s] != sequences.get(claimedAt(s))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long pair(int high, int low) {
+		return ((long) high << 32) | (low & 0xFFFFFFFFL);
+	}
+
+	private static int high(long pair) {
+		return (int) (pair >>> 32);
+	}
+
+	private static int low(long pair) {
+		return (int) pair;
+	}
+}
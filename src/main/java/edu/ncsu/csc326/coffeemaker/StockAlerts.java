@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Low-water marks and listeners of one inventory, created the first
+ * time a mark or listener is set so that other inventories pay for
+ * nothing but a null check.
+ *
+ * The inventory reports which ingredients are low after every change;
+ * only a change in that set queues a notification, and notifications
+ * for every inventory are delivered by one shared thread.
+ */
+final class StockAlerts {
+	/** Mark of an ingredient that is never low */
+	static final int NO_MARK = -1;
+
+	private final Inventory inventory;
+	/** Low-water mark of each ingredient, indexed by ingredient id */
+	private final int[] marks = new int[Inventory.INGREDIENTS];
+	private final List<LowStockListener> listeners = new CopyOnWriteArrayList<LowStockListener>();
+	/** One bit per ingredient id, set while the ingredient is low */
+	private final AtomicInteger low = new AtomicInteger();
+
+	StockAlerts(Inventory inventory) {
+		this.inventory = inventory;
+		Arrays.fill(marks, NO_MARK);
+	}
+
+	void setMark(int ingredient, int units) {
+		marks[ingredient] = units;
+	}
+
+	void addListener(LowStockListener listener) {
+		listeners.add(listener);
+	}
+
+	void removeListener(LowStockListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @return true if the units are at or below the ingredient's mark
+	 */
+	boolean isLow(int ingredient, int units) {
+		return units <= marks[ingredient];
+	}
+
+	/**
+	 * Records which ingredients are low now, one bit per ingredient
+	 * id, and queues a notification for each that crossed its mark.
+	 * Cheap when nothing crossed: one volatile read.
+	 */
+	void update(int lowNow) {
+		for (;;) {
+			int was = low.get();
+			if (was == lowNow) {
+				return;
+			}
+			if (low.compareAndSet(was, lowNow)) {
+				int crossed = was ^ lowNow;
+				for (int i = 0; i < Inventory.INGREDIENTS; i++) {
+					if ((crossed & (1 << i)) != 0) {
+						Dispatcher.QUEUE.add(new Crossing(this, i, (lowNow & (1 << i)) != 0));
+					}
+				}
+				return;
+			}
+		}
+	}
+
+	/** One ingredient crossing its mark, waiting to be delivered */
+	private static final class Crossing {
+		final StockAlerts alerts;
+		final int ingredient;
+		final boolean low;
+
+		Crossing(StockAlerts alerts, int ingredient, boolean low) {
+			this.alerts = alerts;
+			this.ingredient = ingredient;
+			this.low = low;
+		}
+
+		void deliver(int[] units) {
+			Inventory inventory = alerts.inventory;
+			inventory.snapshot(units);
+			for (LowStockListener listener : alerts.listeners) {
+				try {
+					if (low) {
+						listener.lowStock(inventory, ingredient, units[ingredient]);
+					} else {
+						listener.restocked(inventory, ingredient, units[ingredient]);
+					}
+				} catch (RuntimeException e) {
+					// One failing listener must not silence the others.
+				}
+			}
+		}
+	}
+
+	/** Started on first use, so inventories without alerts pay nothing. */
+	private static final class Dispatcher {
+		static final LinkedBlockingQueue<Crossing> QUEUE = new LinkedBlockingQueue<Crossing>();
+
+		static {
+			Thread dispatcher = new Thread(Dispatcher::deliverForever, "low-stock-dispatcher");
+			dispatcher.setDaemon(true);
+			dispatcher.start();
+		}
+
+		private static void deliverForever() {
+			int[] units = new int[Inventory.INGREDIENTS];
+			for (;;) {
+				try {
+					QUEUE.take().deliver(units);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+}
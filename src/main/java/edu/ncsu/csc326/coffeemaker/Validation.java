@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+/**
+ * Result of a recipe or inventory update that checks its input
+ * without throwing, such as {@link Recipe#trySetPrice(String)} or
+ * {@link Inventory#tryAddCoffee(String)}.
+ *
+ * Every rejection is a shared constant carrying the message the
+ * throwing variant would use, so rejecting input allocates nothing
+ * and captures no stack trace.
+ */
+public enum Validation {
+	/** The input was accepted */
+	OK(null),
+	INVALID_PRICE("Price must be a positive integer"),
+	INVALID_COFFEE("Units of coffee must be a positive integer"),
+	INVALID_MILK("Units of milk must be a positive integer"),
+	INVALID_SUGAR("Units of sugar must be a positive integer"),
+	INVALID_CHOCOLATE("Units of chocolate must be a positive integer"),
+	/** Refused by a {@link LockFreeInventory}, whose lanes are bounded */
+	EXCESS_COFFEE("Units of coffee cannot exceed " + LockFreeInventory.MAX_UNITS),
+	EXCESS_MILK("Units of milk cannot exceed " + LockFreeInventory.MAX_UNITS),
+	EXCESS_SUGAR("Units of sugar cannot exceed " + LockFreeInventory.MAX_UNITS),
+	EXCESS_CHOCOLATE("Units of chocolate cannot exceed " + LockFreeInventory.MAX_UNITS),
+	/** Rejections for ingredients registered beyond the four built-in ones */
+	INVALID_UNITS("Units must be a positive integer"),
+	NOT_STOCKED("A lock-free inventory only stocks coffee, milk, sugar and chocolate");
+
+	/** Returned by {@link #parse(String)} for text that is not an int */
+	static final long NOT_AN_INTEGER = Long.MIN_VALUE;
+
+	/** Rejections indexed by ingredient id */
+	private static final Validation[] INVALID = {INVALID_COFFEE, INVALID_MILK, INVALID_SUGAR, INVALID_CHOCOLATE};
+	private static final Validation[] EXCESS = {EXCESS_COFFEE, EXCESS_MILK, EXCESS_SUGAR, EXCESS_CHOCOLATE};
+
+	private final String message;
+
+	private Validation(String message) {
+		this.message = message;
+	}
+
+	/**
+	 * @return true if the input was accepted
+	 */
+	public boolean isValid() {
+		return this == OK;
+	}
+
+	/**
+	 * @return why the input was rejected, or null if it was not
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @param ingredient ingredient id
+	 * @return the rejection of a malformed or negative amount
+	 */
+	static Validation invalid(int ingredient) {
+		return ingredient < INVALID.length ? INVALID[ingredient] : INVALID_UNITS;
+	}
+
+	/**
+	 * @param ingredient ingredient id
+	 * @return the rejection of an amount a lane cannot hold
+	 */
+	static Validation excess(int ingredient) {
+		return EXCESS[ingredient];
+	}
+
+	/**
+	 * Parses text exactly as Integer.parseInt does, but returns
+	 * {@link #NOT_AN_INTEGER} instead of throwing.
+	 * @param text
+	 * @return long
+	 */
+	static long parse(String text) {
+		if (text == null || text.isEmpty()) {
+			return NOT_AN_INTEGER;
+		}
+		int at = 0;
+		boolean negative = false;
+		char first = text.charAt(0);
+		if (first == '-' || first == '+') {
+			negative = first == '-';
+			at = 1;
+			if (text.length() == 1) {
+				return NOT_AN_INTEGER;
+			}
+		}
+		long value = 0;
+		for (; at < text.length(); at++) {
+			int digit = Character.digit(text.charAt(at), 10);
+			if (digit < 0) {
+				return NOT_AN_INTEGER;
+			}
+			value = value * 10 + digit;
+			if (value > (long) Integer.MAX_VALUE + 1) {
+				return NOT_AN_INTEGER;
+			}
+		}
+		value = negative ? -value : value;
+		return value > Integer.MAX_VALUE ? NOT_AN_INTEGER : value;
+	}
+}
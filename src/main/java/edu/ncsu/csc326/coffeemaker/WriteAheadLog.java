@@ -0,0 +1,817 @@
+/*
+ * Copyright (c) 2009,  Sarah Heckman, Laurie Williams, Dright Ho
+ * All Rights Reserved.
+ *
+ * Permission has been explicitly granted to the University of Minnesota
+ * Software Engineering Center to use and distribute this source for
+ * educational purposes, including delivering online education through
+ * Coursera or other entities.
+ *
+ * No warranty is given regarding this software, including warranties as
+ * to the correctness or completeness of this software, including
+ * fitness for purpose.
+ */
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only log of every change to a coffee maker's
+ * inventory and recipe book.
+ *
+ * Mutations are appended to an in-memory buffer and given a log
+ * sequence number (LSN); {@link #sync(long)} then waits until that LSN
+ * is as durable as the {@link FsyncPolicy} promises.  Under
+ * {@link FsyncPolicy#EVERY_COMMIT} the first waiter becomes the leader
+ * and writes and fsyncs everything appended so far, while later waiters
+ * queue behind it and usually find their records already covered: one
+ * fsync commits a whole group of concurrent orders.
+ *
+ * Inventory changes are logged as deltas.  Deltas commute, so replay
+ * sums them and concurrent orders need not be logged in the order they
+ * were applied.  Recipe changes are logged with their slot.
+ *
+ * Amounts are indexed by ingredient id, but a registered ingredient's
+ * id depends on the order of registration, which the next run need not
+ * repeat.  So the snapshot names every ingredient, and the first record
+ * to use a registered id after the log is opened follows one naming
+ * it; recovery registers each name and maps the ids it was logged
+ * under to the ids it has now.
+ *
+ * The log lives in a directory as a snapshot of the whole state at some
+ * LSN plus segments named by the LSN of their first record.  Taking a
+ * checkpoint starts a new segment, writes the snapshot and deletes the
+ * segments it covers, so recovery only replays what came after it.
+ *
+ * Each record is {@code [int length][byte type][payload][int crc32]};
+ * a torn or corrupt tail is truncated away on recovery.
+ */
+public class WriteAheadLog implements Closeable {
+
+	/** How long a mutation waits before it is acknowledged */
+	public enum FsyncPolicy {
+		/** Wait for the record to be fsynced; concurrent waiters share one fsync */
+		EVERY_COMMIT,
+		/** Don't wait; a background thread writes and fsyncs every interval */
+		PERIODIC,
+		/** Wait for the record to reach the OS, but never fsync */
+		NEVER
+	}
+
+	/**
+	 * The state of a coffee maker at one LSN, captured by
+	 * {@link WriteAheadLog#rotate(RecipeBook.Snapshot)}.
+	 */
+	static final class Checkpoint {
+		private final long lsn;
+		private final int[] units;
+		private final RecipeBook.Snapshot recipes;
+
+		private Checkpoint(long lsn, int[] units, RecipeBook.Snapshot recipes) {
+			this.lsn = lsn;
+			this.units = units;
+			this.recipes = recipes;
+		}
+	}
+
+	static final byte INVENTORY_DELTA = 2;
+	static final byte RECIPE_PUT = 3;
+	static final byte RECIPE_DELETE = 4;
+	static final byte INGREDIENT = 5;
+
+	/** Largest payload a record may claim before it is treated as corrupt */
+	private static final int MAX_RECORD = 1 << 20;
+	/** Default interval between background fsyncs for PERIODIC */
+	private static final long DEFAULT_INTERVAL_MILLIS = 10;
+	/** Default number of records between automatic checkpoints */
+	private static final long DEFAULT_CHECKPOINT_RECORDS = 100000;
+
+	private static final String SNAPSHOT = "snapshot";
+	private static final String SEGMENT_SUFFIX = ".log";
+	/** "CMSN" */
+	private static final int SNAPSHOT_MAGIC = 0x434D534E;
+	/** Version 2 added the ingredient names; version 1 only knew the built-ins */
+	private static final byte SNAPSHOT_VERSION = 2;
+
+	private final Path directory;
+	private final FsyncPolicy policy;
+
+	/** Guards current, crc, appendedLsn, loggedUnits and namedIngredients */
+	private final Object appendLock = new Object();
+	private ByteBuffer current = ByteBuffer.allocate(64 * 1024);
+	private final CRC32 crc = new CRC32();
+	private long appendedLsn;
+	/** Inventory as the log records it, as of appendedLsn, by ingredient id */
+	private int[] loggedUnits = new int[Inventory.INGREDIENTS];
+	/** Every id below this has been named in the log since it was opened */
+	private int namedIngredients = Inventory.INGREDIENTS;
+
+	/** Held by the leader writing a group of records */
+	private final ReentrantLock flushLock = new ReentrantLock();
+	/** Only touched while holding flushLock */
+	private ByteBuffer flushing = ByteBuffer.allocate(64 * 1024);
+	/** Segment being appended to; only touched while holding flushLock */
+	private FileChannel channel;
+	private volatile long durableLsn;
+
+	/** LSN at which the next automatic checkpoint is due */
+	private final AtomicLong nextCheckpoint = new AtomicLong(DEFAULT_CHECKPOINT_RECORDS);
+	private volatile long checkpointRecords = DEFAULT_CHECKPOINT_RECORDS;
+	/** Guards writing the snapshot file and lastCheckpoint */
+	private final Object checkpointLock = new Object();
+	private long lastCheckpoint = -1;
+
+	/** Background writer for PERIODIC */
+	private final Thread flusher;
+	/** Guards closed; the flusher waits on it between rounds */
+	private final Object lifecycle = new Object();
+	private boolean closed;
+
+	private WriteAheadLog(Path directory, FsyncPolicy policy, long intervalMillis) {
+		this.directory = directory;
+		this.policy = policy;
+		if (policy == FsyncPolicy.PERIODIC) {
+			flusher = new Thread(() -> flushPeriodically(intervalMillis), "wal-flusher");
+			flusher.setDaemon(true);
+			flusher.start();
+		} else {
+			flusher = null;
+		}
+	}
+
+	/**
+	 * Opens, or creates, the log in the given directory.  Call
+	 * {@link #recover(RecipeBook, Inventory)} before appending.
+	 * @param directory
+	 * @param policy
+	 * @return WriteAheadLog
+	 * @throws IOException if the directory cannot be created
+	 */
+	public static WriteAheadLog open(Path directory, FsyncPolicy policy) throws IOException {
+		return open(directory, policy, DEFAULT_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Opens, or creates, the log in the given directory, fsyncing
+	 * every intervalMillis under {@link FsyncPolicy#PERIODIC}.
+	 * @param directory
+	 * @param policy
+	 * @param intervalMillis
+	 * @return WriteAheadLog
+	 * @throws IOException if the directory cannot be created
+	 */
+	public static WriteAheadLog open(Path directory, FsyncPolicy policy, long intervalMillis) throws IOException {
+		Files.createDirectories(directory);
+		return new WriteAheadLog(directory, policy, intervalMillis);
+	}
+
+	/**
+	 * @return the fsync policy of this log
+	 */
+	public FsyncPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Sets how many records may be logged between automatic
+	 * checkpoints; 0 turns them off.
+	 * @param records
+	 */
+	public void setCheckpointInterval(long records) {
+		if (records < 0) {
+			throw new IllegalArgumentException("Checkpoint interval must not be negative");
+		}
+		checkpointRecords = records;
+		nextCheckpoint.set(records == 0 ? Long.MAX_VALUE : appendedLsn() + records);
+	}
+
+	/**
+	 * Loads the latest snapshot into the recipe book and inventory and
+	 * replays the segments logged after it.  A new log instead takes a
+	 * snapshot of their current contents, so the log always starts
+	 * from a known state.
+	 * @param recipeBook
+	 * @param inventory
+	 * @throws IOException if the log cannot be read or written
+	 */
+	public void recover(RecipeBook recipeBook, Inventory inventory) throws IOException {
+		List<Long> segments = listSegments();
+		Replay replay = new Replay();
+		long lsn = readSnapshot(recipeBook, replay);
+		if (lsn < 0) {
+			if (!segments.isEmpty()) {
+				throw new IOException("Log segments in " + directory + " have no snapshot");
+			}
+			loggedUnits = new int[Ingredients.count()];
+			inventory.snapshot(loggedUnits);
+			lsn = 0;
+			writeSnapshot(new Checkpoint(lsn, loggedUnits.clone(), recipeBook.snapshot()));
+		} else {
+			for (int i = 0; i < segments.size(); i++) {
+				long start = segments.get(i);
+				boolean last = i == segments.size() - 1;
+				if (!last && segments.get(i + 1) <= lsn + 1) {
+					// Covered by the snapshot; left over from a checkpoint cut short.
+					Files.deleteIfExists(segment(start));
+					continue;
+				}
+				if (start > lsn + 1) {
+					throw new IOException("Log is missing records " + (lsn + 1) + " to " + (start - 1));
+				}
+				lsn = replay(start, lsn, last, recipeBook, replay);
+			}
+			loggedUnits = replay.units();
+			inventory.restore(loggedUnits.clone());
+		}
+		long active = segments.isEmpty() ? lsn + 1 : segments.get(segments.size() - 1);
+		flushLock.lock();
+		try {
+			channel = openSegment(active);
+			channel.position(channel.size());
+			synchronized (appendLock) {
+				appendedLsn = lsn;
+			}
+			durableLsn = lsn;
+			setCheckpointInterval(checkpointRecords);
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Appends a restock of the given amounts, indexed by ingredient id.
+	 * @param amounts
+	 * @return long the LSN to pass to {@link #sync(long)}
+	 */
+	public long logRestock(int[] amounts) {
+		return append(INVENTORY_DELTA, amounts, 1, -1, null);
+	}
+
+	/**
+	 * Appends the use of the given amounts, indexed by ingredient id.
+	 * @param amounts
+	 * @return long the LSN to pass to {@link #sync(long)}
+	 */
+	public long logUse(int[] amounts) {
+		return append(INVENTORY_DELTA, amounts, -1, -1, null);
+	}
+
+	/**
+	 * Appends the recipe now held in the given slot.
+	 * @param slot
+	 * @param r
+	 * @return long the LSN to pass to {@link #sync(long)}
+	 */
+	public long logRecipe(int slot, Recipe r) {
+		return append(RECIPE_PUT, r.getRequirements(), 1, slot, r);
+	}
+
+	/**
+	 * Appends the deletion of the recipe in the given slot.
+	 * @param slot
+	 * @return long the LSN to pass to {@link #sync(long)}
+	 */
+	public long logDelete(int slot) {
+		return append(RECIPE_DELETE, null, 1, slot, null);
+	}
+
+	/**
+	 * Waits until the record with the given LSN is as durable as the
+	 * fsync policy promises.
+	 * @param lsn
+	 * @throws IOException if the log cannot be written
+	 */
+	public void sync(long lsn) throws IOException {
+		if (policy != FsyncPolicy.PERIODIC) {
+			flush(lsn, policy == FsyncPolicy.EVERY_COMMIT);
+		}
+	}
+
+	/**
+	 * Returns true to exactly one caller once the log has grown by
+	 * the checkpoint interval since the last automatic checkpoint.
+	 * @param lsn the LSN the caller just logged
+	 * @return boolean
+	 */
+	boolean checkpointDue(long lsn) {
+		long due = nextCheckpoint.get();
+		return lsn >= due && nextCheckpoint.compareAndSet(due, lsn + checkpointRecords);
+	}
+
+	/**
+	 * Ends the current segment at the last appended record and
+	 * captures the state it leaves behind.  The caller must hold
+	 * whatever lock orders its recipe changes with their records, and
+	 * pass the recipe book as of that point; inventory changes need no
+	 * such care because the log keeps its own running total.
+	 * @param recipes
+	 * @return Checkpoint to pass to {@link #checkpoint(Checkpoint)}
+	 * @throws IOException if the segment cannot be written
+	 */
+	Checkpoint rotate(RecipeBook.Snapshot recipes) throws IOException {
+		flushLock.lock();
+		try {
+			long lsn;
+			int[] units;
+			synchronized (appendLock) {
+				ByteBuffer full = current;
+				current = flushing;
+				flushing = full;
+				lsn = appendedLsn;
+				units = loggedUnits.clone();
+			}
+			writeOut(true);
+			if (channel.size() > 0) {
+				channel.close();
+				channel = openSegment(lsn + 1);
+			}
+			durableLsn = Math.max(durableLsn, lsn);
+			return new Checkpoint(lsn, units, recipes);
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the captured state as the latest snapshot and deletes
+	 * the segments it covers.  Orders keep being logged meanwhile.
+	 * @param checkpoint
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	void checkpoint(Checkpoint checkpoint) throws IOException {
+		synchronized (checkpointLock) {
+			if (checkpoint.lsn <= lastCheckpoint) {
+				return;
+			}
+			writeSnapshot(checkpoint);
+			for (long start : listSegments()) {
+				if (start <= checkpoint.lsn) {
+					Files.deleteIfExists(segment(start));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes and fsyncs every record appended so far, then closes
+	 * the log.
+	 * @throws IOException if the log cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (flusher != null) {
+			// Not interrupted: that would close the channel under it.
+			synchronized (lifecycle) {
+				closed = true;
+				lifecycle.notifyAll();
+			}
+			try {
+				flusher.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		force(appendedLsn());
+		flushLock.lock();
+		try {
+			if (channel != null) {
+				channel.close();
+			}
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	private long appendedLsn() {
+		synchronized (appendLock) {
+			return appendedLsn;
+		}
+	}
+
+	private void force(long lsn) throws IOException {
+		flush(lsn, true);
+	}
+
+	/**
+	 * Encodes one record into the append buffer and returns its LSN.
+	 * A RECIPE_PUT carries the slot, name and price before the amounts.
+	 * Ids the log has not named yet are named first, in records of
+	 * their own.
+	 */
+	private long append(byte type, int[] amounts, int sign, int slot, Recipe r) {
+		byte[] name = r == null ? null : r.getName().getBytes(StandardCharsets.UTF_8);
+		int payload = 1;
+		if (slot >= 0) {
+			payload += 4;
+		}
+		if (r != null) {
+			payload += 4 + name.length + 4;
+		}
+		if (amounts != null) {
+			payload += 4 + 4 * amounts.length;
+		}
+		synchronized (appendLock) {
+			while (amounts != null && namedIngredients < amounts.length) {
+				appendName(namedIngredients++);
+			}
+			ensureCapacity(4 + payload + 4);
+			int start = current.position();
+			current.putInt(payload - 1);
+			current.put(type);
+			if (slot >= 0) {
+				current.putInt(slot);
+			}
+			if (r != null) {
+				current.putInt(name.length);
+				current.put(name);
+				current.putInt(r.getPrice());
+			}
+			if (amounts != null) {
+				current.putInt(amounts.length);
+				for (int amount : amounts) {
+					current.putInt(sign * amount);
+				}
+			}
+			crc.reset();
+			crc.update(current.array(), current.arrayOffset() + start + 4, payload);
+			current.putInt((int) crc.getValue());
+			if (type == INVENTORY_DELTA) {
+				if (loggedUnits.length < amounts.length) {
+					loggedUnits = Arrays.copyOf(loggedUnits, amounts.length);
+				}
+				for (int i = 0; i < amounts.length; i++) {
+					loggedUnits[i] += sign * amounts[i];
+				}
+			}
+			return ++appendedLsn;
+		}
+	}
+
+	/**
+	 * Encodes a record giving the name of an ingredient id.  The caller
+	 * holds appendLock.
+	 */
+	private void appendName(int id) {
+		byte[] name = Ingredients.name(id).getBytes(StandardCharsets.UTF_8);
+		int payload = 1 + 4 + 4 + name.length;
+		ensureCapacity(4 + payload + 4);
+		int start = current.position();
+		current.putInt(payload - 1);
+		current.put(INGREDIENT);
+		current.putInt(id);
+		current.putInt(name.length);
+		current.put(name);
+		crc.reset();
+		crc.update(current.array(), current.arrayOffset() + start + 4, payload);
+		current.putInt((int) crc.getValue());
+		appendedLsn++;
+	}
+
+	private void ensureCapacity(int bytes) {
+		if (current.remaining() < bytes) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(current.capacity() * 2, current.position() + bytes));
+			current.flip();
+			larger.put(current);
+			current = larger;
+		}
+	}
+
+	/**
+	 * Group commit: whoever gets the flush lock writes out everything
+	 * appended so far, so waiters that queued behind it are usually
+	 * already durable when they get their turn.
+	 */
+	private void flush(long lsn, boolean fsync) throws IOException {
+		if (durableLsn >= lsn) {
+			return;
+		}
+		flushLock.lock();
+		try {
+			if (durableLsn >= lsn) {
+				return;
+			}
+			long upTo;
+			synchronized (appendLock) {
+				ByteBuffer full = current;
+				current = flushing;
+				flushing = full;
+				upTo = appendedLsn;
+			}
+			writeOut(fsync);
+			durableLsn = upTo;
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/** Writes the swapped-out buffer to the segment; needs flushLock. */
+	private void writeOut(boolean fsync) throws IOException {
+		flushing.flip();
+		while (flushing.hasRemaining()) {
+			channel.write(flushing);
+		}
+		flushing.clear();
+		if (fsync) {
+			channel.force(false);
+		}
+	}
+
+	private void flushPeriodically(long intervalMillis) {
+		for (;;) {
+			synchronized (lifecycle) {
+				if (closed) {
+					return;
+				}
+				try {
+					lifecycle.wait(intervalMillis);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+			try {
+				force(appendedLsn());
+			} catch (IOException e) {
+				// Left for the next round or for close() to report.
+			}
+		}
+	}
+
+	private Path segment(long start) {
+		return directory.resolve(String.format("%019d", start) + SEGMENT_SUFFIX);
+	}
+
+	private FileChannel openSegment(long start) throws IOException {
+		return FileChannel.open(segment(start),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	/** Returns the first LSN of every segment, in order. */
+	private List<Long> listSegments() throws IOException {
+		List<Long> starts = new ArrayList<Long>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				try {
+					starts.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					// Not one of ours.
+				}
+			}
+		}
+		Collections.sort(starts);
+		return starts;
+	}
+
+	/**
+	 * Applies every intact record of a segment after the given LSN,
+	 * summing inventory deltas rather than applying them, and returns
+	 * the LSN of the last record.  A torn tail is truncated away if
+	 * this is the last segment; anywhere else it means lost records.
+	 */
+	private long replay(long start, long after, boolean last, RecipeBook recipeBook, Replay replay) throws IOException {
+		long lsn = start - 1;
+		long validBytes = 0;
+		boolean torn = true;
+		CRC32 check = new CRC32();
+		try (FileChannel in = FileChannel.open(segment(start), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			DataInputStream data = new DataInputStream(new BufferedInputStream(Channels.newInputStream(in), 64 * 1024));
+			try {
+				for (;;) {
+					int length = data.readInt();
+					if (length < 0 || length > MAX_RECORD) {
+						break;
+					}
+					byte[] record = new byte[length + 1];
+					data.readFully(record);
+					int expected = data.readInt();
+					check.reset();
+					check.update(record);
+					if ((int) check.getValue() != expected) {
+						break;
+					}
+					ByteBuffer body = ByteBuffer.wrap(record);
+					byte type = body.get();
+					if (type != INVENTORY_DELTA && type != RECIPE_PUT && type != RECIPE_DELETE && type != INGREDIENT) {
+						break;
+					}
+					if (++lsn > after) {
+						apply(type, body, recipeBook, replay);
+					}
+					validBytes += 4 + record.length + 4;
+				}
+			} catch (EOFException e) {
+				torn = validBytes != in.size();
+			}
+			if (torn) {
+				if (!last) {
+					throw new IOException("Log segment " + segment(start) + " is corrupt after record " + lsn);
+				}
+				in.truncate(validBytes);
+			}
+		}
+		return Math.max(lsn, after);
+	}
+
+	private static void apply(byte type, ByteBuffer body, RecipeBook recipeBook, Replay replay) throws IOException {
+		if (type == INVENTORY_DELTA) {
+			replay.add(replay.map(readAmounts(body)));
+		} else if (type == INGREDIENT) {
+			replay.name(body.getInt(), readString(body));
+		} else if (type == RECIPE_PUT) {
+			int slot = body.getInt();
+			recipeBook.restoreRecipe(slot, readRecipe(body, replay));
+		} else {
+			recipeBook.deleteRecipe(body.getInt());
+		}
+	}
+
+	/**
+	 * Writes the snapshot to a temporary file, fsyncs it and renames
+	 * it into place, so a crash leaves either the old or the new one.
+	 */
+	private void writeSnapshot(Checkpoint checkpoint) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(SNAPSHOT_MAGIC);
+		out.writeByte(SNAPSHOT_VERSION);
+		out.writeLong(checkpoint.lsn);
+		// Every id in the checkpoint was registered before it was taken.
+		int ingredients = Ingredients.count();
+		out.writeInt(ingredients);
+		for (int id = 0; id < ingredients; id++) {
+			byte[] name = Ingredients.name(id).getBytes(StandardCharsets.UTF_8);
+			out.writeInt(name.length);
+			out.write(name);
+		}
+		out.writeInt(checkpoint.units.length);
+		for (int units : checkpoint.units) {
+			out.writeInt(units);
+		}
+		Recipe[] recipes = checkpoint.recipes.getRecipes();
+		int size = checkpoint.recipes.size();
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			byte[] name = recipes[i].getName().getBytes(StandardCharsets.UTF_8);
+			out.writeInt(name.length);
+			out.write(name);
+			out.writeInt(recipes[i].getPrice());
+			int[] amounts = recipes[i].getRequirements();
+			out.writeInt(amounts.length);
+			for (int amount : amounts) {
+				out.writeInt(amount);
+			}
+		}
+		CRC32 check = new CRC32();
+		check.update(bytes.toByteArray());
+		out.writeInt((int) check.getValue());
+		out.flush();
+
+		Path temp = directory.resolve(SNAPSHOT + ".tmp");
+		try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+			while (buffer.hasRemaining()) {
+				file.write(buffer);
+			}
+			file.force(true);
+		}
+		Files.move(temp, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE);
+		lastCheckpoint = checkpoint.lsn;
+	}
+
+	/**
+	 * Loads the snapshot, if there is one, into the recipe book and
+	 * the replay, and returns its LSN; returns -1 if there is none.
+	 */
+	private long readSnapshot(RecipeBook recipeBook, Replay replay) throws IOException {
+		Path file = directory.resolve(SNAPSHOT);
+		if (!Files.exists(file)) {
+			return -1;
+		}
+		byte[] bytes = Files.readAllBytes(file);
+		CRC32 check = new CRC32();
+		check.update(bytes, 0, Math.max(0, bytes.length - 4));
+		ByteBuffer body = ByteBuffer.wrap(bytes);
+		if (bytes.length < 13 || body.getInt(bytes.length - 4) != (int) check.getValue()
+				|| body.getInt() != SNAPSHOT_MAGIC || body.get(4) < 1 || body.get() > SNAPSHOT_VERSION) {
+			throw new IOException("Snapshot " + file + " is corrupt");
+		}
+		int version = body.get(4);
+		long lsn = body.getLong();
+		if (version > 1) {
+			int ingredients = body.getInt();
+			for (int id = 0; id < ingredients; id++) {
+				replay.name(id, readString(body));
+			}
+		}
+		replay.add(replay.map(readAmounts(body)));
+		Recipe[] recipes = new Recipe[body.getInt()];
+		for (int i = 0; i < recipes.length; i++) {
+			recipes[i] = readRecipe(body, replay);
+		}
+		recipeBook.restore(recipes);
+		lastCheckpoint = lsn;
+		return lsn;
+	}
+
+	private static Recipe readRecipe(ByteBuffer body, Replay replay) throws IOException {
+		String name = readString(body);
+		int price = body.getInt();
+		return Recipe.restore(name, price, replay.map(readAmounts(body)));
+	}
+
+	private static String readString(ByteBuffer body) {
+		byte[] bytes = new byte[body.getInt()];
+		body.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static int[] readAmounts(ByteBuffer body) {
+		int[] amounts = new int[body.getInt()];
+		for (int i = 0; i < amounts.length; i++) {
+			amounts[i] = body.getInt();
+		}
+		return amounts;
+	}
+
+	/**
+	 * What recovery has read so far: the id each logged ingredient id
+	 * has in this run, and the inventory summed by this run's ids.
+	 */
+	private static final class Replay {
+		/** Id now of each logged id, or -1 if the log has not named it */
+		private int[] ids = new int[Inventory.INGREDIENTS];
+		private long[] units = new long[Inventory.INGREDIENTS];
+
+		Replay() {
+			for (int id = 0; id < ids.length; id++) {
+				ids[id] = id;
+			}
+		}
+
+		/** Registers the name logged for an id. */
+		void name(int logged, String name) {
+			if (logged >= ids.length) {
+				int from = ids.length;
+				ids = Arrays.copyOf(ids, logged + 1);
+				Arrays.fill(ids, from, logged, -1);
+			}
+			ids[logged] = Ingredients.register(name);
+		}
+
+		/** Returns logged amounts indexed by the ids of this run. */
+		int[] map(int[] amounts) throws IOException {
+			int[] mapped = new int[Ingredients.count()];
+			for (int i = 0; i < amounts.length; i++) {
+				if (amounts[i] == 0) {
+					continue;
+				}
+				int id = i < ids.length ? ids[i] : -1;
+				if (id < 0) {
+					throw new IOException("Log uses ingredient " + i + " without naming it");
+				}
+				mapped[id] += amounts[i];
+			}
+			return mapped;
+		}
+
+		void add(int[] delta) {
+			if (units.length < delta.length) {
+				units = Arrays.copyOf(units, delta.length);
+			}
+			for (int i = 0; i < delta.length; i++) {
+				units[i] += delta[i];
+			}
+		}
+
+		int[] units() {
+			int[] sums = new int[Math.max(units.length, Ingredients.count())];
+			for (int i = 0; i < units.length; i++) {
+				sums[i] = (int) units[i];
+			}
+			return sums;
+		}
+	}
+}
@@ -21,6 +21,15 @@ package edu.ncsu.csc326.coffeemaker;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -235,30 +244,30 @@ public class CoffeeMakerTest {
 
 	/**
 	 * Given a coffee maker with 4 valid recipe
-	 * The coffee maker should not able to add it, since they can add just 3.
+	 * The recipe book should grow to hold all of them, in the order added.
 	 */
 	@Test
 	public void testOverRecipes() {
-		//coffeeMaker.addRecipe(recipe1);
-		//coffeeMaker.addRecipe(recipe2);
-		//coffeeMaker.addRecipe(recipe3);
-		//coffeeMaker.addRecipe(recipe4);
 		for(Recipe r: recipeList){
-			coffeeMaker.addRecipe(r);
+			assertTrue(coffeeMaker.addRecipe(r));
 		}
-		assertEquals(3, coffeeMaker.getRecipes().length);
+		assertTrue(coffeeMaker.addRecipe(recipe5));
+		assertTrue(coffeeMaker.getRecipes().length >= 5);
+		assertEquals("Latte", coffeeMaker.getRecipes()[2].getName());
+		assertEquals("Big Chocolate", coffeeMaker.getRecipes()[4].getName());
 	}
 
 	/**
-	 * Given a coffee maker with 4 valid recipe
-	 * The coffee maker should not able to add it, since they can add just 3.
+	 * Given a coffee maker with 3 valid recipe
+	 * The coffee maker should still be able to add a fourth, since there is no fixed limit.
 	 */
 	@Test
 	public void testAddExceedAmountOfRecipe(){
 		coffeeMaker.addRecipe(recipe1);
 		coffeeMaker.addRecipe(recipe2);
 		coffeeMaker.addRecipe(recipe3);
-		assertFalse(coffeeMaker.addRecipe(recipe4));
+		assertTrue(coffeeMaker.addRecipe(recipe4));
+		assertEquals(65, coffeeMaker.makeCoffee(3, 130));
 	}
 
 	/**
@@ -420,4 +429,588 @@ public class CoffeeMakerTest {
 		when(mockCoffeeMaker.getRecipes()).thenReturn(anotherRecipeList);
 		assertEquals(1000, coffeeMaker.makeCoffee(0, 1000));
 	}
+
+	/**
+	 * Given a coffee maker with a lock-free inventory
+	 * When we make a coffee
+	 * Then the inventory is reduced exactly like the synchronized one.
+	 */
+	@Test
+	public void testLockFreeInventoryReducedCorrectly() {
+		CoffeeMaker lockFreeCoffeeMaker = new CoffeeMaker(new RecipeBook(), new LockFreeInventory());
+		lockFreeCoffeeMaker.addRecipe(recipe1);
+		assertEquals(0, lockFreeCoffeeMaker.makeCoffee(0, 50));
+		String expectedInventory = "Coffee: 12\nMilk: 14\nSugar: 14\nChocolate: 15\n";
+		assertEquals(expectedInventory, lockFreeCoffeeMaker.checkInventory());
+	}
+
+	/**
+	 * Given a lock-free inventory without enough chocolate
+	 * When we try to use the ingredients of a recipe
+	 * Then nothing is deducted.
+	 */
+	@Test
+	public void testLockFreeInventoryAllOrNothing() {
+		Inventory lockFreeInventory = new LockFreeInventory();
+		assertFalse(lockFreeInventory.useIngredients(recipe2));
+		assertEquals(15, lockFreeInventory.getCoffee());
+		assertEquals(15, lockFreeInventory.getChocolate());
+	}
+
+	/**
+	 * Given a coffee maker with a lock-free inventory
+	 * When a batch of orders runs the chocolate out
+	 * Then the later orders fail and keep their money.
+	 */
+	@Test
+	public void testLockFreeMakeCoffeeBatch() {
+		CoffeeMaker lockFreeCoffeeMaker = new CoffeeMaker(new RecipeBook(), new LockFreeInventory());
+		lockFreeCoffeeMaker.addRecipe(recipe4);
+		int[] change = new int[4];
+		assertEquals(3, lockFreeCoffeeMaker.makeCoffeeBatch(
+				new int[] {0, 0, 0, 0}, new int[] {65, 70, 65, 65}, change));
+		assertArrayEquals(new int[] {0, 5, 0, 65}, change);
+	}
+
+	/**
+	 * Given two coffee makers in the same JVM
+	 * When one of them makes a coffee and the other is created afterwards
+	 * Then neither inventory affects the other.
+	 */
+	@Test
+	public void testInventoriesAreIndependent() {
+		coffeeMaker.addRecipe(recipe1);
+		coffeeMaker.makeCoffee(0, 50);
+		CoffeeMaker otherCoffeeMaker = new CoffeeMaker();
+		assertEquals("Coffee: 12\nMilk: 14\nSugar: 14\nChocolate: 15\n", coffeeMaker.checkInventory());
+		assertEquals("Coffee: 15\nMilk: 15\nSugar: 15\nChocolate: 15\n", otherCoffeeMaker.checkInventory());
+	}
+
+	/**
+	 * Given a coffee maker with two recipes
+	 * When a batch of orders is made with one short payment, one unknown
+	 * recipe and more mochas than there is chocolate for
+	 * Then each order gets its own change, in arrival order.
+	 */
+	@Test
+	public void testMakeCoffeeBatch() {
+		coffeeMaker.addRecipe(recipe1);
+		coffeeMaker.addRecipe(recipe4);
+		int[] change = new int[7];
+		int made = coffeeMaker.makeCoffeeBatch(
+				new int[] {0, 1, 0, 3, 1, 1, 1},
+				new int[] {60, 65, 10, 50, 70, 65, 65},
+				change);
+		assertEquals(4, made);
+		assertArrayEquals(new int[] {10, 0, 10, 50, 5, 0, 65}, change);
+	}
+
+	/**
+	 * Given a recipe book that has grown past its initial size
+	 * When we look recipes up by name, including a deleted one
+	 * Then we get their stable positions, or -1.
+	 */
+	@Test
+	public void testRecipeBookIndexOf() {
+		RecipeBook book = new RecipeBook();
+		for (int i = 0; i < 100; i++) {
+			Recipe r = new Recipe();
+			r.setName("Recipe " + i);
+			assertTrue(book.addRecipe(r));
+		}
+		assertEquals(42, book.indexOf("Recipe 42"));
+		assertEquals("Recipe 42", book.deleteRecipe(42));
+		assertEquals(-1, book.indexOf("Recipe 42"));
+		assertEquals(99, book.indexOf("Recipe 99"));
+		assertEquals(-1, book.indexOf("Espresso"));
+	}
+
+	/**
+	 * Given a snapshot of a recipe book
+	 * When a recipe is edited afterwards
+	 * Then the snapshot still shows the old recipe and a newer version is published.
+	 */
+	@Test
+	public void testRecipeBookSnapshotIsStable() {
+		RecipeBook book = new RecipeBook();
+		book.addRecipe(recipe1);
+		RecipeBook.Snapshot before = book.snapshot();
+		book.editRecipe(0, recipe3);
+		assertEquals(50, before.getRecipes()[0].getPrice());
+		assertEquals(100, book.getRecipes()[0].getPrice());
+		assertTrue(book.snapshot().getVersion() > before.getVersion());
+	}
+
+	/**
+	 * Given a coffee maker keeping a sales ledger
+	 * When orders succeed, fail for lack of money or stock, or name no recipe
+	 * Then every attempt is counted by outcome and only sales add
+	 * revenue, until the ledger is closed.
+	 */
+	@Test
+	public void testSalesLedgerRecordsEveryAttempt() {
+		List<Integer> changes = new ArrayList<Integer>();
+		SalesLedger ledger = new SalesLedger(2,
+				(recipe, price, paid, change, outcome, timeMillis) -> changes.add(change));
+		coffeeMaker.setSalesLedger(ledger);
+		coffeeMaker.addRecipe(recipe1);
+		coffeeMaker.addRecipe(recipe2);
+		assertEquals(10, coffeeMaker.makeCoffee(0, 60));
+		assertEquals(40, coffeeMaker.makeCoffee(0, 40));
+		assertEquals(75, coffeeMaker.makeCoffee(1, 75));
+		assertEquals(5, coffeeMaker.makeCoffee(2, 5));
+		coffeeMaker.makeCoffeeBatch(new int[] {0, 0}, new int[] {50, 10}, new int[2]);
+		ledger.close();
+
+		assertEquals(2, ledger.getCount(SalesLedger.Outcome.SOLD));
+		assertEquals(2, ledger.getCount(SalesLedger.Outcome.INSUFFICIENT_FUNDS));
+		assertEquals(1, ledger.getCount(SalesLedger.Outcome.OUT_OF_STOCK));
+		assertEquals(1, ledger.getCount(SalesLedger.Outcome.NO_SUCH_RECIPE));
+		assertEquals(100, ledger.getRevenue());
+		assertEquals(Arrays.asList(10, 40, 75, 5, 0, 10), changes);
+
+		// A closed ledger, full or not, no longer holds up orders.
+		for (int i = 0; i < 3; i++) {
+			assertEquals(40, coffeeMaker.makeCoffee(0, 40));
+		}
+		ledger.flush();
+		assertEquals(2, ledger.getCount(SalesLedger.Outcome.INSUFFICIENT_FUNDS));
+	}
+
+	/**
+	 * Given a coffee maker with metrics attached
+	 * When orders are made while another thread holds the inventory
+	 * Then outcomes are counted, latencies are recorded per recipe and
+	 * the wait for the inventory shows up as contention.
+	 *
+	 * @throws InterruptedException  if the test is interrupted.
+	 * @throws InventoryException  if the added quantities are rejected.
+	 */
+	@Test
+	public void testMetricsRecordOrdersAndContention() throws InterruptedException, InventoryException {
+		CoffeeMaker maker = new CoffeeMaker(new RecipeBook(), inventory);
+		Metrics metrics = new Metrics();
+		maker.setMetrics(metrics);
+		maker.addRecipe(recipe1);
+		maker.addRecipe(recipe2);
+		Thread order;
+		synchronized (inventory) {
+			order = new Thread(() -> maker.makeCoffee(0, 50));
+			order.start();
+			Thread.sleep(20);
+		}
+		order.join();
+		assertEquals(40, maker.makeCoffee(0, 40));
+		assertEquals(75, maker.makeCoffee(1, 75));
+		maker.addInventory("1", "1", "0", "1");
+
+		Metrics.Snapshot snapshot = metrics.snapshot();
+		assertEquals(1, snapshot.getCount(SalesLedger.Outcome.SOLD));
+		assertEquals(1, snapshot.getCount(SalesLedger.Outcome.INSUFFICIENT_FUNDS));
+		assertEquals(1, snapshot.getCount(SalesLedger.Outcome.OUT_OF_STOCK));
+		assertTrue(snapshot.getContended(Metrics.Lock.INVENTORY) >= 1);
+		assertTrue(snapshot.getLockWait(Metrics.Lock.INVENTORY).getMax() >= 10000000L);
+		assertEquals(2, snapshot.getRecipeLatency(0).getCount());
+		assertEquals(1, snapshot.getRecipeLatency(1).getCount());
+		assertEquals(3, snapshot.getLatency(Metrics.Operation.MAKE_COFFEE).getCount());
+		assertEquals(1, snapshot.getLatency(Metrics.Operation.ADD_INVENTORY).getCount());
+		assertEquals(2, snapshot.getLatency(Metrics.Operation.ADD_RECIPE).getCount());
+		assertTrue(snapshot.toString().contains("coffeemaker_orders_total{outcome=\"SOLD\"} 1\n"));
+	}
+
+	/**
+	 * Given a coffee maker taking pipelined orders
+	 * When a reservation is paid short, then paid in full, and then
+	 * settled a second time
+	 * Then the short payment puts the ingredients back and only the
+	 * full one uses them.
+	 */
+	@Test
+	public void testReserveThenPurchase() {
+		coffeeMaker.addRecipe(recipe1);
+		Reservation reservation = coffeeMaker.reserve(0, 1, TimeUnit.MINUTES);
+		assertEquals(40, coffeeMaker.purchase(reservation, 40));
+		assertEquals(15, coffeeMaker.checkInventory(new InventorySnapshot()).getCoffee());
+
+		reservation = coffeeMaker.reserve(0, 1, TimeUnit.MINUTES);
+		assertEquals(12, coffeeMaker.checkInventory(new InventorySnapshot()).getCoffee());
+		assertEquals(10, coffeeMaker.purchase(reservation, 60));
+		assertEquals(60, coffeeMaker.purchase(reservation, 60));
+		assertEquals(12, coffeeMaker.checkInventory(new InventorySnapshot()).getCoffee());
+		assertNull(coffeeMaker.reserve(1, 1, TimeUnit.MINUTES));
+	}
+
+	/**
+	 * Given a reservation made on one coffee maker
+	 * When it is paid for on another
+	 * Then the purchase is refused.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testPurchaseRefusesAnotherMachinesReservation() {
+		coffeeMaker.addRecipe(recipe1);
+		CoffeeMaker other = new CoffeeMaker();
+		other.addRecipe(recipe1);
+		other.purchase(coffeeMaker.reserve(0, 1, TimeUnit.MINUTES), 50);
+	}
+
+	/**
+	 * Given a script of commands, some of them refused or malformed
+	 * When it is run in batch mode
+	 * Then every command gets one result line, in order.
+	 *
+	 * @throws IOException  never, for in-memory streams.
+	 */
+	@Test
+	public void testBatchRunner() throws IOException {
+		String script = "# end of day\n"
+				+ "add-recipe,Coffee,50,3,1,1,0\n"
+				+ "make-coffee,1,60\n"
+				+ "make-coffee,1,20\n"
+				+ "make-coffee,2,60\n"
+				+ "make-coffee,1,-5\n"
+				+ "add-inventory,1,2,3,-4\n"
+				+ "edit-recipe,1,40,3,1,1,0\n"
+				+ "make-coffee,1,40\n"
+				+ "make-coffee,1,40\n"
+				+ "make-coffee,1,40\n"
+				+ "make-coffee,1,40\n"
+				+ "make-coffee,1,40\n"
+				+ "check-inventory\n"
+				+ "brew\n"
+				+ "delete-recipe,1\n";
+		StringWriter out = new StringWriter();
+		long commands = new BatchRunner(coffeeMaker, out).run(new BufferedReader(new StringReader(script)));
+		assertEquals(15, commands);
+		assertEquals("2,ok\n"
+				+ "3,ok,10\n"
+				+ "4,rejected,INSUFFICIENT_FUNDS,20\n"
+				+ "5,rejected,NO_SUCH_RECIPE,60\n"
+				+ "6,error,Amount paid must be a positive integer\n"
+				+ "7,error,Units of chocolate must be a positive integer\n"
+				+ "8,ok,Coffee\n"
+				+ "9,ok,0\n"
+				+ "10,ok,0\n"
+				+ "11,ok,0\n"
+				+ "12,ok,0\n"
+				+ "13,rejected,OUT_OF_STOCK,40\n"
+				+ "14,ok,0,10,10,15\n"
+				+ "15,error,Unknown command brew\n"
+				+ "16,ok,Coffee\n", out.toString());
+	}
+
+	/**
+	 * Given a few threads ordering Zipf-distributed recipes while
+	 * others restock and edit the recipes
+	 * When the simulation finishes
+	 * Then, for both inventories, the stock left is exactly the
+	 * starting stock plus restocks less what the sold orders used.
+	 *
+	 * @throws InterruptedException  if the test is interrupted.
+	 */
+	@Test
+	public void testOrderSimulatorReconciles() throws InterruptedException {
+		for (Inventory stock : new Inventory[] {new Inventory(), new LockFreeInventory()}) {
+			OrderSimulator simulator = new OrderSimulator();
+			simulator.setThreads(4);
+			simulator.setDuration(200, TimeUnit.MILLISECONDS);
+			simulator.setRecipes(5);
+			simulator.setZipfExponent(1.1);
+			simulator.setRestocksPerThousand(20);
+			simulator.setEditsPerThousand(50);
+			simulator.setRestockUnits(20);
+			OrderSimulator.Report report = simulator.run(new CoffeeMaker(new RecipeBook(), stock));
+			assertTrue(report.getSold() > 0);
+			assertTrue(report.getEdits() > 0);
+			for (int i = 0; i < Inventory.INGREDIENTS; i++) {
+				assertEquals(report.toString(), 0, report.getDiscrepancy(i));
+			}
+		}
+	}
+
+	/**
+	 * Given two machines, one emptied behind the router's back
+	 * When orders are routed until the fleet runs out, and then the
+	 * empty machine is restocked through the router
+	 * Then every order the fleet can make is made, the stale machine
+	 * costs at most one failover, and the restocked machine serves
+	 * the next order.
+	 */
+	@Test
+	public void testFleetRouterFailsOver() {
+		CoffeeMaker first = new CoffeeMaker(new RecipeBook(), new Inventory());
+		CoffeeMaker second = new CoffeeMaker(new RecipeBook(), new Inventory());
+		first.addRecipe(recipe1);
+		second.addRecipe(recipe1);
+		FleetRouter router = new FleetRouter(first, second);
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0, first.makeCoffee(0, 50));
+		}
+
+		assertEquals(40, router.makeCoffee(0, 40));
+		for (int i = 0; i < 5; i++) {
+			assertEquals(10, router.makeCoffee(0, 60));
+		}
+		assertEquals(60, router.makeCoffee(0, 60));
+		assertTrue(router.getFailovers() <= 1);
+		assertEquals(0, second.checkInventory(new InventorySnapshot()).getCoffee());
+
+		assertTrue(router.addInventory(0, 3, 0, 0, 0).isValid());
+		assertEquals(0, router.makeCoffee(0, 50));
+		assertEquals(0, first.checkInventory(new InventorySnapshot()).getCoffee());
+	}
+
+	/**
+	 * Given two machines the router has seen run dry
+	 * When one is restocked directly, without the router
+	 * Then the next routed order is still made, by that machine.
+	 */
+	@Test
+	public void testFleetRouterFindsDirectRestocks() {
+		CoffeeMaker first = new CoffeeMaker(new RecipeBook(), new Inventory());
+		CoffeeMaker second = new CoffeeMaker(new RecipeBook(), new Inventory());
+		first.addRecipe(recipe1);
+		second.addRecipe(recipe1);
+		FleetRouter router = new FleetRouter(first, second);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(10, router.makeCoffee(0, 60));
+		}
+		assertEquals(60, router.makeCoffee(0, 60));
+
+		assertTrue(second.tryAddInventory(3, 0, 0, 0).isValid());
+		assertEquals(10, router.makeCoffee(0, 60));
+		assertEquals(0, second.checkInventory(new InventorySnapshot()).getCoffee());
+		assertEquals(60, router.makeCoffee(0, 60));
+	}
+
+	/**
+	 * Given two machines with a recipe using a registered ingredient
+	 * that only the second has in stock
+	 * When the recipe is ordered through a router
+	 * Then the order is made by the second machine until it runs out.
+	 *
+	 * @throws RecipeException  if an amount cannot be parsed.
+	 */
+	@Test
+	public void testFleetRouterPlacesRegisteredIngredients() throws RecipeException {
+		int vanilla = Ingredients.register("Vanilla");
+		Recipe latte = new Recipe();
+		latte.setName("Vanilla Latte");
+		latte.setPrice("60");
+		latte.setAmtMilk("1");
+		latte.setAmount(vanilla, "2");
+		CoffeeMaker first = new CoffeeMaker(new RecipeBook(), new Inventory());
+		CoffeeMaker second = new CoffeeMaker(new RecipeBook(), new Inventory());
+		first.addRecipe(latte);
+		second.addRecipe(latte);
+		assertEquals(Validation.OK, second.tryAddUnits(vanilla, "4"));
+		FleetRouter router = new FleetRouter(first, second);
+		assertEquals(0, router.makeCoffee(0, 60));
+		assertEquals(0, router.makeCoffee(0, 60));
+		assertEquals(60, router.makeCoffee(0, 60));
+		assertEquals(13, second.checkInventory(new InventorySnapshot()).getMilk());
+		assertEquals(15, first.checkInventory(new InventorySnapshot()).getMilk());
+	}
+
+	/**
+	 * Given coin tubes holding three 10s and two 25s
+	 * When 30 in change is dispensed, and then orders need 30 and
+	 * 50 in change
+	 * Then the 30 comes out as three 10s where largest-first would
+	 * fail, the next order needing 30 is refused without using any
+	 * ingredients, and 50 comes out as two 25s while the 100 paid
+	 * goes in as four.
+	 */
+	@Test
+	public void testCoinChangerRefusesBeforeUsingIngredients() {
+		CoinChanger changer = new CoinChanger(new int[] {25, 10}, 200);
+		changer.deposit(10, 3);
+		changer.deposit(25, 2);
+		assertTrue(changer.canMakeChange(30));
+		assertArrayEquals(new int[] {3, 0}, changer.dispense(30));
+		assertFalse(changer.canMakeChange(30));
+
+		coffeeMaker.addRecipe(recipe1);
+		coffeeMaker.setCoinChanger(changer);
+		assertEquals(80, coffeeMaker.makeCoffee(0, 80));
+		assertEquals(15, coffeeMaker.checkInventory(new InventorySnapshot()).getCoffee());
+		assertEquals(50, coffeeMaker.makeCoffee(0, 100));
+		assertEquals(12, coffeeMaker.checkInventory(new InventorySnapshot()).getCoffee());
+		assertEquals(4, changer.getCount(25));
+		assertEquals(0, coffeeMaker.makeCoffee(0, 50));
+	}
+
+	/**
+	 * Given empty coin tubes for 25s and 10s
+	 * When a batch of orders is paid in amounts
+	 * Then an order needing change the tubes cannot make is refused,
+	 * and each sale's payment goes into the tubes as the fewest coins
+	 * that make it, so later orders in the batch get change from it.
+	 */
+	@Test
+	public void testBatchPaymentsMakeLaterChange() {
+		CoinChanger changer = new CoinChanger(new int[] {10, 25}, 200);
+		coffeeMaker.addRecipe(recipe1);
+		coffeeMaker.setCoinChanger(changer);
+		int[] change = new int[4];
+		assertEquals(2, coffeeMaker.makeCoffeeBatch(
+				new int[] {0, 0, 0, 0}, new int[] {75, 50, 75, 60}, change));
+		assertArrayEquals(new int[] {75, 0, 25, 60}, change);
+		assertEquals(4, changer.getCount(25));
+		assertEquals(0, changer.getCount(10));
+		assertArrayEquals(new int[] {2, 2}, changer.tendered(70));
+		assertNull(changer.tendered(15));
+	}
+
+	/**
+	 * Given empty coin tubes for 25s and 10s
+	 * When orders are paid in coins
+	 * Then an order needing change no coins paid so far can make is
+	 * refused and its coins kept out of the tubes, while later change
+	 * is made from the coins of earlier sales.
+	 */
+	@Test
+	public void testCoinPaymentsMakeLaterChange() {
+		CoinChanger changer = new CoinChanger(new int[] {10, 25}, 200);
+		coffeeMaker.addRecipe(recipe1);
+		coffeeMaker.setCoinChanger(changer);
+		assertEquals(75, coffeeMaker.makeCoffee(0, new int[] {0, 3}));
+		assertEquals(0, changer.getCount(25));
+		assertEquals(0, coffeeMaker.makeCoffee(0, new int[] {0, 2}));
+		assertEquals(2, changer.getCount(25));
+		assertEquals(25, coffeeMaker.makeCoffee(0, new int[] {0, 3}));
+		assertEquals(4, changer.getCount(25));
+		assertEquals(60, coffeeMaker.makeCoffee(0, new int[] {6, 0}));
+		assertEquals(0, changer.getCount(10));
+		assertEquals(9, coffeeMaker.checkInventory(new InventorySnapshot()).getCoffee());
+	}
+
+	/**
+	 * Given a menu board following a coffee maker with three recipes
+	 * When orders drain the chocolate, a restock refills it and a
+	 * recipe is edited
+	 * Then the board shows what can be made after every change, and
+	 * an availability already read does not change under its reader.
+	 */
+	@Test
+	public void testAvailabilityFollowsStockAndRecipes() {
+		coffeeMaker.addRecipe(recipe1);
+		coffeeMaker.addRecipe(recipe2);
+		Availability board = coffeeMaker.getAvailability();
+		assertTrue(board.canMake(0));
+		assertFalse(board.canMake(1));
+		coffeeMaker.addRecipe(recipe4);
+		Availability full = coffeeMaker.getAvailability();
+		assertEquals(2, full.count());
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, coffeeMaker.makeCoffee(2, 65));
+		}
+		Availability drained = coffeeMaker.getAvailability();
+		assertFalse(drained.canMake(2));
+		assertEquals(0, drained.next(0));
+		assertEquals(-1, drained.next(1));
+		assertTrue(full.canMake(2));
+
+		assertTrue(coffeeMaker.tryAddInventory(0, 0, 0, 20).isValid());
+		assertTrue(coffeeMaker.getAvailability().canMake(1));
+		assertTrue(coffeeMaker.getAvailability().canMake(2));
+		coffeeMaker.editRecipe(0, recipe5);
+		assertFalse(coffeeMaker.getAvailability().canMake(0));
+		assertEquals(1, coffeeMaker.getAvailability().next(0));
+	}
+
+	/**
+	 * Given a coffee maker with a coffee and a latte recipe
+	 * When a latte is sold, milk and then coffee are restocked and
+	 * the coffee recipe is edited into a mocha
+	 * Then the servings left of each follow the ingredient that runs
+	 * out first.
+	 */
+	@Test
+	public void testMaxServings() {
+		coffeeMaker.addRecipe(recipe1);
+		coffeeMaker.addRecipe(recipe3);
+		int[] servings = coffeeMaker.getMaxServings(null);
+		assertArrayEquals(new int[] {5, 5, 0, 0}, servings);
+
+		assertEquals(0, coffeeMaker.makeCoffee(1, 100));
+		assertSame(servings, coffeeMaker.getMaxServings(servings));
+		assertArrayEquals(new int[] {4, 4, 0, 0}, servings);
+		assertTrue(coffeeMaker.tryAddInventory(0, 30, 0, 0).isValid());
+		assertEquals(4, coffeeMaker.getMaxServings(1));
+		assertTrue(coffeeMaker.tryAddInventory(30, 0, 0, 0).isValid());
+		assertEquals(14, coffeeMaker.getMaxServings(0));
+		assertEquals(14, coffeeMaker.getMaxServings(1));
+
+		coffeeMaker.editRecipe(0, recipe2);
+		assertEquals(0, coffeeMaker.getMaxServings(0));
+		assertEquals(0, coffeeMaker.getMaxServings(7));
+
+		// In place: the latte's servings follow, the mocha's are kept.
+		assertTrue(coffeeMaker.getRecipes()[1].trySetAmtMilk("6").isValid());
+		assertEquals(7, coffeeMaker.getMaxServings(1));
+		assertArrayEquals(new int[] {0, 7, 0, 0}, coffeeMaker.getMaxServings(servings));
+	}
+
+	/**
+	 * Given a coffee maker with a lock-free inventory and a menu board
+	 * When a recipe is changed in place rather than through the book
+	 * Then the board and the servings follow the new amounts, and
+	 * only changes to recipes the book holds count as its edits.
+	 *
+	 * @throws RecipeException  if the new amount cannot be parsed.
+	 */
+	@Test
+	public void testAvailabilityFollowsRecipesChangedInPlace() throws RecipeException {
+		CoffeeMaker lockFreeCoffeeMaker = new CoffeeMaker(new RecipeBook(), new LockFreeInventory());
+		lockFreeCoffeeMaker.addRecipe(recipe1);
+		assertTrue(lockFreeCoffeeMaker.getAvailability().canMake(0));
+		assertEquals(5, lockFreeCoffeeMaker.getMaxServings(0));
+
+		lockFreeCoffeeMaker.getRecipes()[0].setAmtCoffee("20");
+		assertFalse(lockFreeCoffeeMaker.getAvailability().canMake(0));
+		assertEquals(0, lockFreeCoffeeMaker.getMaxServings(0));
+		assertTrue(lockFreeCoffeeMaker.tryAddInventory(5, 0, 0, 0).isValid());
+		assertTrue(lockFreeCoffeeMaker.getAvailability().canMake(0));
+		assertEquals(1, lockFreeCoffeeMaker.getMaxServings(0));
+
+		RecipeBook book = new RecipeBook();
+		book.addRecipe(recipe2);
+		long edits = book.getRecipeEdits();
+		recipe3.setAmtMilk("2");
+		new Recipe().setAmtMilk("2");
+		assertEquals(edits, book.getRecipeEdits());
+		recipe2.setAmtMilk("2");
+		assertEquals(edits + 1, book.getRecipeEdits());
+		book.deleteRecipe(0);
+		recipe2.setAmtMilk("3");
+		assertEquals(edits + 1, book.getRecipeEdits());
+	}
+
+	/**
+	 * Given a coffee maker with coffee, mocha, hot chocolate and big
+	 * chocolate recipes
+	 * When its recipes are searched by the start of their names
+	 * Then matches are found whatever the case, in order of name, and
+	 * follow deletes and edits.
+	 */
+	@Test
+	public void testFindRecipesByPrefix() {
+		coffeeMaker.addRecipe(recipe1);
+		coffeeMaker.addRecipe(recipe2);
+		coffeeMaker.addRecipe(recipe4);
+		coffeeMaker.addRecipe(recipe5);
+
+		assertArrayEquals(new int[] {0}, coffeeMaker.findRecipes("co", 10));
+		assertArrayEquals(new int[] {3, 0, 2, 1}, coffeeMaker.findRecipes("", 10));
+		assertArrayEquals(new int[] {2}, coffeeMaker.findRecipes("HOT c", 10));
+		assertArrayEquals(new int[] {3, 0}, coffeeMaker.findRecipes("", 2));
+		assertEquals(0, coffeeMaker.findRecipes("Latte", 10).length);
+
+		coffeeMaker.deleteRecipe(0);
+		assertEquals(0, coffeeMaker.findRecipes("Coffee", 10).length);
+		coffeeMaker.editRecipe(1, recipe3);
+		assertArrayEquals(new int[] {1}, coffeeMaker.findRecipes("m", 10));
+		assertArrayEquals(new int[] {3, 2, 1}, coffeeMaker.findRecipes("", 10));
+	}
 }
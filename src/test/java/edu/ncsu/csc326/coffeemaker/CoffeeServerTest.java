@@ -0,0 +1,221 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Tests for serving a CoffeeMaker over localhost.
+ */
+public class CoffeeServerTest {
+
+	private CoffeeMaker coffeeMaker;
+	private CoffeeServer server;
+	private InetSocketAddress address;
+
+	@Before
+	public void setUp() throws IOException, RecipeException {
+		coffeeMaker = new CoffeeMaker();
+		Recipe recipe = new Recipe();
+		recipe.setName("Coffee");
+		recipe.setPrice("50");
+		recipe.setAmtCoffee("1");
+		recipe.setAmtMilk("1");
+		coffeeMaker.addRecipe(recipe);
+		server = CoffeeServer.start(coffeeMaker, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+	}
+
+	/**
+	 * Given a server for a coffee maker with one recipe
+	 * When a client uses every request type
+	 * Then each answers as the coffee maker itself would.
+	 *
+	 * @throws IOException  if the server cannot be reached.
+	 */
+	@Test
+	public void testRequests() throws IOException {
+		try (CoffeeClient client = new CoffeeClient(address)) {
+			Recipe[] recipes = client.getRecipes();
+			assertEquals(1, recipes.length);
+			assertEquals("Coffee", recipes[0].getName());
+			assertEquals(50, recipes[0].getPrice());
+			assertEquals(1, recipes[0].getAmtMilk());
+
+			assertEquals(25, client.makeCoffee(0, 75));
+			assertEquals(40, client.makeCoffee(0, 40));
+			assertEquals(60, client.makeCoffee(3, 60));
+			assertEquals(Validation.OK, client.addInventory(1, 2, 3, 4));
+			assertEquals(Validation.INVALID_SUGAR, client.addInventory(1, 1, -1, 1));
+
+			int[] units = new int[Inventory.INGREDIENTS];
+			client.checkInventory(units);
+			assertArrayEquals(new int[] {15, 16, 18, 19}, units);
+		}
+	}
+
+	/**
+	 * Given a server for a coffee maker whose coin tubes hold one 25
+	 * When a client pipelines orders needing 25, 10, no change and too
+	 * little money
+	 * Then each order is answered with its own outcome, including the
+	 * one refused for want of change.
+	 *
+	 * @throws IOException  if the server cannot be reached.
+	 */
+	@Test
+	public void testPipelinedOutcomes() throws IOException {
+		CoinChanger changer = new CoinChanger(new int[] {25, 10}, 100);
+		changer.deposit(25, 1);
+		coffeeMaker.setCoinChanger(changer);
+		try (CoffeeClient client = new CoffeeClient(address)) {
+			int[] change = new int[5];
+			SalesLedger.Outcome[] outcomes = new SalesLedger.Outcome[5];
+			assertEquals(2, client.makeCoffee(new int[] {0, 0, 0, 0, 1}, new int[] {75, 60, 50, 40, 50},
+					change, outcomes));
+			assertArrayEquals(new int[] {25, 60, 0, 40, 50}, change);
+			assertArrayEquals(new SalesLedger.Outcome[] {SalesLedger.Outcome.SOLD, SalesLedger.Outcome.NO_CHANGE,
+					SalesLedger.Outcome.SOLD, SalesLedger.Outcome.INSUFFICIENT_FUNDS,
+					SalesLedger.Outcome.NO_SUCH_RECIPE}, outcomes);
+		}
+	}
+
+	/**
+	 * Given a server that has already sent its recipes
+	 * When a recipe in the book is edited in place
+	 * Then the next request for the recipes gets the edit.
+	 *
+	 * @throws IOException  if the server cannot be reached.
+	 * @throws RecipeException  if an amount cannot be parsed.
+	 */
+	@Test
+	public void testRecipeEditedInPlace() throws IOException, RecipeException {
+		try (CoffeeClient client = new CoffeeClient(address)) {
+			assertEquals(50, client.getRecipes()[0].getPrice());
+			Recipe recipe = coffeeMaker.getRecipes()[0];
+			recipe.setPrice("60");
+			recipe.setAmtSugar("2");
+			Recipe[] recipes = client.getRecipes();
+			assertEquals(60, recipes[0].getPrice());
+			assertEquals(2, recipes[0].getAmtSugar());
+		}
+	}
+
+	/**
+	 * Given a server for a coffee maker with a recipe using a
+	 * registered ingredient
+	 * When a client asks for the recipes
+	 * Then it gets every recipe with its built-in amounts.
+	 *
+	 * @throws IOException  if the server cannot be reached.
+	 * @throws RecipeException  if an amount cannot be parsed.
+	 */
+	@Test
+	public void testRecipeWithRegisteredIngredient() throws IOException, RecipeException {
+		Recipe vanilla = new Recipe();
+		vanilla.setName("Vanilla Latte");
+		vanilla.setPrice("70");
+		vanilla.setAmtCoffee("1");
+		vanilla.setAmtMilk("2");
+		vanilla.setAmount(Ingredients.register("Vanilla"), "1");
+		coffeeMaker.addRecipe(vanilla);
+		try (CoffeeClient client = new CoffeeClient(address)) {
+			Recipe[] recipes = client.getRecipes();
+			assertEquals(2, recipes.length);
+			assertEquals("Vanilla Latte", recipes[1].getName());
+			assertEquals(70, recipes[1].getPrice());
+			assertEquals(2, recipes[1].getAmtMilk());
+			assertEquals("Coffee", recipes[0].getName());
+		}
+	}
+
+	/**
+	 * Given several clients each pipelining thousands of orders
+	 * When they order at once and the coffee runs out
+	 * Then every order gets its own answer and the inventory accounts
+	 * for exactly the orders reported sold.
+	 *
+	 * @throws Exception  if the server cannot be reached.
+	 */
+	@Test
+	public void testPipelinedClients() throws Exception {
+		coffeeMaker.addInventory(3000, 10000, 0, 0);
+		AtomicInteger sold = new AtomicInteger();
+		AtomicInteger answered = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		Exception[] failure = new Exception[1];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				try (CoffeeClient client = new CoffeeClient(address)) {
+					int[] recipe = new int[2000];
+					int[] paid = new int[recipe.length];
+					int[] change = new int[recipe.length];
+					SalesLedger.Outcome[] outcomes = new SalesLedger.Outcome[recipe.length];
+					Arrays.fill(paid, 60);
+					sold.addAndGet(client.makeCoffee(recipe, paid, change, outcomes));
+					for (int i = 0; i < recipe.length; i++) {
+						assertEquals(outcomes[i] == SalesLedger.Outcome.SOLD ? 10 : 60, change[i]);
+						if (outcomes[i] != SalesLedger.Outcome.SOLD) {
+							assertEquals(SalesLedger.Outcome.OUT_OF_STOCK, outcomes[i]);
+						}
+						answered.incrementAndGet();
+					}
+				} catch (Exception | AssertionError e) {
+					synchronized (failure) {
+						failure[0] = new Exception(e);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		assertEquals(8000, answered.get());
+		assertEquals(3015, sold.get());
+		InventorySnapshot snapshot = coffeeMaker.checkInventory(new InventorySnapshot());
+		assertEquals(0, snapshot.getCoffee());
+		assertEquals(10015 - 3015, snapshot.getMilk());
+	}
+
+	/**
+	 * Given a client that sends a frame longer than any request
+	 * When the server reads it
+	 * Then that connection is closed and others are still served.
+	 *
+	 * @throws IOException  if the server cannot be reached.
+	 */
+	@Test
+	public void testOversizedFrameClosesConnection() throws IOException {
+		try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+			OutputStream out = socket.getOutputStream();
+			out.write(ByteBuffer.allocate(8).putInt(1 << 20).putInt(0).array());
+			out.flush();
+			assertEquals(-1, socket.getInputStream().read());
+		}
+		try (CoffeeClient client = new CoffeeClient(address)) {
+			assertEquals(0, client.makeCoffee(0, 50));
+		}
+	}
+}
@@ -0,0 +1,551 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Unit tests for the Inventory class and its lock-free variant.
+ */
+public class InventoryTest {
+
+	private CoffeeMaker coffeeMaker;
+	private InventorySnapshot snapshot;
+
+	@Before
+	public void setUp() {
+		coffeeMaker = new CoffeeMaker();
+		snapshot = new InventorySnapshot();
+	}
+
+	/**
+	 * Given a coffee maker with the default inventory
+	 * When we take a snapshot and render it
+	 * Then it matches checkInventory().
+	 *
+	 * @throws IOException  never, for a StringBuilder.
+	 * @throws InventoryException  if the added quantities are rejected.
+	 */
+	@Test
+	public void testSnapshotMatchesCheckInventory() throws IOException, InventoryException {
+		coffeeMaker.addInventory("5", "0", "0", "1");
+		StringBuilder out = new StringBuilder();
+		coffeeMaker.checkInventory(snapshot).appendTo(out);
+		assertEquals(coffeeMaker.checkInventory(), out.toString());
+		assertEquals(20, snapshot.getCoffee());
+		assertEquals(16, snapshot.getChocolate());
+	}
+
+	/**
+	 * Given a lock-free inventory
+	 * When we copy its counts into an array
+	 * Then every ingredient is at its id.
+	 */
+	@Test
+	public void testLockFreeSnapshot() {
+		Inventory inventory = new LockFreeInventory();
+		inventory.setMilk(7);
+		int[] units = new int[Inventory.INGREDIENTS];
+		inventory.snapshot(units);
+		assertArrayEquals(new int[] {15, 7, 15, 15}, units);
+	}
+
+	/**
+	 * Given a dashboard polling the inventory with a reused snapshot
+	 * and output buffer
+	 * When it polls many times
+	 * Then the polling path allocates nothing.
+	 *
+	 * @throws IOException  never, for a StringBuilder.
+	 */
+	@Test
+	public void testSnapshotPollingDoesNotAllocate() throws IOException {
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		StringBuilder out = new StringBuilder(256);
+		int polls = 100000;
+
+		for (int i = 0; i < polls; i++) {
+			poll(out);
+		}
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < polls; i++) {
+			poll(out);
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+		// Reading the counter itself costs a few bytes; anything per poll
+		// would add up to megabytes.
+		assertTrue("polling allocated " + allocated + " bytes", allocated < 1024);
+	}
+
+	private void poll(StringBuilder out) throws IOException {
+		out.setLength(0);
+		coffeeMaker.checkInventory(snapshot).appendTo(out);
+	}
+
+	/**
+	 * Given an inventory with a reservation that times out
+	 * When the timeout passes
+	 * Then the ingredients are back and the reservation can no longer
+	 * be committed, while one with a timeout too long to add to the
+	 * clock stays pending.
+	 *
+	 * @throws InterruptedException  if the test is interrupted.
+	 * @throws RecipeException  if the recipe amount is rejected.
+	 */
+	@Test
+	public void testReservationTimesOut() throws InterruptedException, RecipeException {
+		Inventory inventory = new Inventory();
+		Recipe recipe = new Recipe();
+		recipe.setAmtCoffee("5");
+		Reservation reservation = inventory.reserve(recipe, 10, TimeUnit.MILLISECONDS);
+		assertEquals(10, inventory.getCoffee());
+		long deadline = System.currentTimeMillis() + 5000;
+		while (reservation.isPending() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertFalse(reservation.commit());
+		assertFalse(reservation.release());
+		assertEquals(15, inventory.getCoffee());
+
+		reservation = inventory.reserve(recipe, Long.MAX_VALUE, TimeUnit.DAYS);
+		Thread.sleep(20);
+		assertTrue(reservation.isPending());
+		assertTrue(reservation.release());
+	}
+
+	/**
+	 * Given a lock-free inventory with coffee out on a reservation
+	 * When it is restocked up to the limit and the reservation released
+	 * Then a restock leaving no room for the held coffee is refused, and
+	 * the released coffee is all back.
+	 *
+	 * @throws RecipeException  if the recipe amount is rejected.
+	 */
+	@Test
+	public void testLockFreeRestockLeavesRoomForReservations() throws RecipeException {
+		LockFreeInventory inventory = new LockFreeInventory();
+		Recipe recipe = new Recipe();
+		recipe.setAmtCoffee("5");
+		Reservation reservation = inventory.reserve(recipe, 1, TimeUnit.MINUTES);
+		assertEquals(10, inventory.getCoffee());
+		assertEquals(Validation.EXCESS_COFFEE, inventory.tryAddInventory(LockFreeInventory.MAX_UNITS - 14, 0, 0, 0));
+		assertEquals(Validation.EXCESS_COFFEE, inventory.tryAddCoffee(String.valueOf(LockFreeInventory.MAX_UNITS - 14)));
+		assertEquals(Validation.OK, inventory.tryAddInventory(LockFreeInventory.MAX_UNITS - 15, 0, 0, 0));
+		assertTrue(reservation.release());
+		assertEquals(LockFreeInventory.MAX_UNITS, inventory.getCoffee());
+
+		reservation = inventory.reserve(recipe, 1, TimeUnit.MINUTES);
+		assertTrue(reservation.commit());
+		assertEquals(Validation.OK, inventory.tryAddInventory(5, 0, 0, 0));
+		assertEquals(LockFreeInventory.MAX_UNITS, inventory.getCoffee());
+	}
+
+	/**
+	 * Given both inventories and many threads reserving, committing,
+	 * releasing and abandoning reservations at once
+	 * When every reservation has been settled
+	 * Then exactly the committed ingredients are gone and stock never
+	 * went negative.
+	 *
+	 * @throws InterruptedException  if the test is interrupted.
+	 * @throws RecipeException  if a recipe amount is rejected.
+	 */
+	@Test
+	public void testConcurrentReservationsNeverOversell() throws InterruptedException, RecipeException {
+		for (Inventory inventory : new Inventory[] {new Inventory(), new LockFreeInventory()}) {
+			inventory.setCoffee(1000);
+			inventory.setMilk(2000);
+			Recipe recipe = new Recipe();
+			recipe.setAmtCoffee("1");
+			recipe.setAmtMilk("2");
+
+			AtomicInteger committed = new AtomicInteger();
+			AtomicInteger negative = new AtomicInteger();
+			List<Reservation> abandoned = new ArrayList<Reservation>();
+			Thread[] threads = new Thread[8];
+			for (int t = 0; t < threads.length; t++) {
+				threads[t] = new Thread(() -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					List<Reservation> mine = new ArrayList<Reservation>();
+					int[] units = new int[Inventory.INGREDIENTS];
+					for (int i = 0; i < 5000; i++) {
+						Reservation reservation = inventory.reserve(recipe, random.nextInt(1, 5), TimeUnit.MILLISECONDS);
+						if (reservation != null) {
+							int choice = random.nextInt(4);
+							if (choice < 2) {
+								if (reservation.commit()) {
+									committed.incrementAndGet();
+								}
+							} else if (choice == 2) {
+								reservation.release();
+							} else {
+								mine.add(reservation);
+							}
+						}
+						inventory.snapshot(units);
+						if (units[Inventory.COFFEE] < 0 || units[Inventory.MILK] < 0) {
+							negative.incrementAndGet();
+						}
+					}
+					synchronized (abandoned) {
+						abandoned.addAll(mine);
+					}
+				});
+				threads[t].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			long deadline = System.currentTimeMillis() + 10000;
+			for (Reservation reservation : abandoned) {
+				while (reservation.isPending() && System.currentTimeMillis() < deadline) {
+					Thread.sleep(1);
+				}
+				assertFalse(reservation.isPending());
+			}
+
+			assertEquals(0, negative.get());
+			assertTrue(committed.get() > 0);
+			assertEquals(1000 - committed.get(), inventory.getCoffee());
+			assertEquals(2000 - 2 * committed.get(), inventory.getMilk());
+		}
+	}
+
+	/**
+	 * Given both inventories and many threads placing orders for
+	 * recipes that share ingredients, alone and in batches
+	 * When the stock runs out
+	 * Then both modes sell the same number of the same recipe, every
+	 * sale took all of its ingredients and every refusal none.
+	 *
+	 * @throws InterruptedException  if the test is interrupted.
+	 */
+	@Test
+	public void testContendedOrdersAreAllOrNothing() throws InterruptedException {
+		int[][] amounts = {{3, 1, 0, 0}, {0, 2, 1, 0}, {1, 0, 2, 1}};
+		Recipe[] recipes = new Recipe[amounts.length];
+		for (int r = 0; r < recipes.length; r++) {
+			recipes[r] = Recipe.restore("Recipe " + r, 50, amounts[r]);
+		}
+		int[] sold = new int[2];
+		Inventory[] inventories = {new Inventory(), new LockFreeInventory()};
+		for (int mode = 0; mode < inventories.length; mode++) {
+			Inventory inventory = inventories[mode];
+			inventory.restore(new int[] {3000, 3000, 3000, 3000});
+			AtomicInteger[] served = {new AtomicInteger(), new AtomicInteger(), new AtomicInteger()};
+			AtomicInteger negative = new AtomicInteger();
+			Thread[] threads = new Thread[8];
+			for (int t = 0; t < threads.length; t++) {
+				threads[t] = new Thread(() -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					Recipe[] batch = new Recipe[4];
+					int[] which = new int[batch.length];
+					boolean[] taken = new boolean[batch.length];
+					int[] units = new int[Inventory.INGREDIENTS];
+					for (int i = 0; i < 4000; i++) {
+						if (random.nextBoolean()) {
+							int r = random.nextInt(recipes.length);
+							if (inventory.useIngredients(recipes[r])) {
+								served[r].incrementAndGet();
+							}
+						} else {
+							for (int k = 0; k < batch.length; k++) {
+								which[k] = random.nextInt(recipes.length);
+								batch[k] = recipes[which[k]];
+							}
+							inventory.useIngredients(batch, taken);
+							for (int k = 0; k < batch.length; k++) {
+								if (taken[k]) {
+									served[which[k]].incrementAndGet();
+								}
+							}
+						}
+						inventory.snapshot(units);
+						for (int unit : units) {
+							if (unit < 0) {
+								negative.incrementAndGet();
+							}
+						}
+					}
+				});
+				threads[t].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			assertEquals(0, negative.get());
+			for (int i = 0; i < Inventory.INGREDIENTS; i++) {
+				int used = 0;
+				for (int r = 0; r < recipes.length; r++) {
+					used += served[r].get() * amounts[r][i];
+				}
+				assertEquals(3000 - used, inventory.getUnits(i));
+			}
+			for (Recipe recipe : recipes) {
+				assertFalse(inventory.enoughIngredients(recipe));
+			}
+
+			// With one recipe left on the menu, the count sold is fixed.
+			inventory.restore(new int[] {5000, 3000, 0, 0});
+			Recipe latte = Recipe.restore("Latte", 50, new int[] {1, 1, 0, 0});
+			AtomicInteger lattes = new AtomicInteger();
+			for (int t = 0; t < threads.length; t++) {
+				threads[t] = new Thread(() -> {
+					while (inventory.useIngredients(latte)) {
+						lattes.incrementAndGet();
+					}
+				});
+				threads[t].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			sold[mode] = lattes.get();
+			assertEquals(2000, inventory.getCoffee());
+			assertEquals(0, inventory.getMilk());
+		}
+		assertEquals(3000, sold[0]);
+		assertEquals(sold[0], sold[1]);
+	}
+
+	/**
+	 * Given an inventory with a low-water mark on coffee and a listener
+	 * that blocks
+	 * When orders take coffee down past the mark and it is refilled
+	 * Then the listener hears of each crossing once, and orders never
+	 * wait for it.
+	 *
+	 * @throws InterruptedException  if interrupted while waiting.
+	 * @throws InventoryException  if the added quantities are rejected.
+	 * @throws RecipeException  if the recipe amounts are rejected.
+	 */
+	@Test
+	public void testLowStockListenersHearCrossings()
+			throws InterruptedException, InventoryException, RecipeException {
+		for (Inventory inventory : new Inventory[] {new Inventory(), new LockFreeInventory()}) {
+			Recipe recipe = new Recipe();
+			recipe.setAmtCoffee("4");
+			BlockingQueue<String> heard = new LinkedBlockingQueue<String>();
+			CountDownLatch release = new CountDownLatch(1);
+			inventory.setLowWaterMark(Inventory.COFFEE, 5);
+			inventory.addLowStockListener(new LowStockListener() {
+				public void lowStock(Inventory inventory, int ingredient, int units) {
+					heard.add("low " + ingredient);
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+
+				public void restocked(Inventory inventory, int ingredient, int units) {
+					heard.add("restocked " + ingredient + " " + units);
+				}
+			});
+
+			assertTrue(inventory.useIngredients(recipe)); // 11
+			assertTrue(inventory.useIngredients(recipe)); // 7
+			assertNull(heard.poll(50, TimeUnit.MILLISECONDS));
+			assertTrue(inventory.useIngredients(recipe)); // 3
+			assertEquals("low 0", heard.poll(5, TimeUnit.SECONDS));
+			// The listener is blocked; orders carry on regardless.
+			assertFalse(inventory.useIngredients(recipe));
+			inventory.setCoffee(1);
+			inventory.addCoffee("20");
+			release.countDown();
+			assertEquals("restocked 0 21", heard.poll(5, TimeUnit.SECONDS));
+			assertNull(heard.poll(50, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	/**
+	 * Given both inventories
+	 * When four typed amounts are added and one of them is rejected
+	 * Then none of them is added.
+	 *
+	 * @throws InventoryException  if the valid amounts are rejected.
+	 */
+	@Test
+	public void testTypedRestockIsAllOrNothing() throws InventoryException {
+		for (Inventory inventory : new Inventory[] {new Inventory(), new LockFreeInventory()}) {
+			inventory.addInventory(5, 0, 2, 1);
+			inventory.snapshot(snapshot.units);
+			assertEquals("Coffee: 20\nMilk: 15\nSugar: 17\nChocolate: 16\n", snapshot.toString());
+			try {
+				inventory.addInventory(1, 1, -1, 1);
+				fail("expected InventoryException");
+			} catch (InventoryException e) {
+				assertEquals("Units of sugar must be a positive integer", e.getMessage());
+			}
+			assertEquals(20, inventory.getCoffee());
+			assertEquals(17, inventory.getSugar());
+		}
+		LockFreeInventory inventory = new LockFreeInventory();
+		try {
+			inventory.addInventory(1, 1, 1, LockFreeInventory.MAX_UNITS);
+			fail("expected InventoryException");
+		} catch (InventoryException e) {
+			assertEquals("Units of chocolate cannot exceed " + LockFreeInventory.MAX_UNITS, e.getMessage());
+		}
+		assertEquals(15, inventory.getCoffee());
+	}
+
+	/**
+	 * Given a delivery manifest with a header, a comment and more lines
+	 * than fit in one batch
+	 * When the coffee maker is restocked from it
+	 * Then every line is added; a malformed line is reported by number.
+	 *
+	 * @throws IOException  never, for an in-memory manifest.
+	 * @throws InventoryException  if the manifest is rejected.
+	 */
+	@Test
+	public void testRestockFromManifest() throws IOException, InventoryException {
+		StringBuilder manifest = new StringBuilder("ingredient,units\n# morning delivery\n");
+		for (int i = 0; i < DeliveryManifest.DEFAULT_BATCH_LINES + 10; i++) {
+			manifest.append(i % 2 == 0 ? "coffee, 2\n" : " MILK,1\n");
+		}
+		manifest.append("\nchocolate,7");
+		long lines = coffeeMaker.restock(new ByteArrayInputStream(manifest.toString().getBytes(StandardCharsets.UTF_8)));
+		assertEquals(DeliveryManifest.DEFAULT_BATCH_LINES + 11, lines);
+		coffeeMaker.checkInventory(snapshot);
+		assertEquals(15 + DeliveryManifest.DEFAULT_BATCH_LINES + 10, snapshot.getCoffee());
+		assertEquals(15 + DeliveryManifest.DEFAULT_BATCH_LINES / 2 + 5, snapshot.getMilk());
+		assertEquals(22, snapshot.getChocolate());
+
+		try {
+			coffeeMaker.restock(new ByteArrayInputStream("sugar,3\nsugar,-3\n".getBytes(StandardCharsets.UTF_8)));
+			fail("expected InventoryException");
+		} catch (InventoryException e) {
+			assertEquals("Line 2: units of sugar must be a positive integer", e.getMessage());
+		}
+		assertEquals(15, coffeeMaker.checkInventory(snapshot).getSugar());
+	}
+
+	/**
+	 * Given a registered ingredient beside the built-in ones
+	 * When a manifest naming it restocks a coffee maker, and then a
+	 * lock-free one
+	 * Then the first stocks it with the built-ins, and the second
+	 * refuses the batch and adds nothing.
+	 *
+	 * @throws IOException  never, for an in-memory manifest.
+	 * @throws InventoryException  if the manifest is rejected.
+	 */
+	@Test
+	public void testRestockRegisteredIngredient() throws IOException, InventoryException {
+		int vanilla = Ingredients.register("Vanilla");
+		byte[] manifest = "coffee,1\nVanilla,4\nVanilla,2\n".getBytes(StandardCharsets.UTF_8);
+		Inventory inventory = new Inventory();
+		assertEquals(3, new CoffeeMaker(new RecipeBook(), inventory).restock(new ByteArrayInputStream(manifest)));
+		assertEquals(16, inventory.getCoffee());
+		assertEquals(6, inventory.getUnits(vanilla));
+
+		LockFreeInventory lockFree = new LockFreeInventory();
+		try {
+			new CoffeeMaker(new RecipeBook(), lockFree).restock(new ByteArrayInputStream(manifest));
+			fail("expected InventoryException");
+		} catch (InventoryException e) {
+			assertEquals("Lines 1-3: " + Validation.NOT_STOCKED.getMessage(), e.getMessage());
+		}
+		assertEquals(15, lockFree.getCoffee());
+	}
+
+	/**
+	 * Given a recipe and both inventories
+	 * When malformed or out-of-range amounts are offered to the
+	 * non-throwing updates
+	 * Then each returns the rejection the throwing setter would report,
+	 * and nothing changes.
+	 */
+	@Test
+	public void testValidationReportsWithoutThrowing() {
+		Recipe recipe = new Recipe();
+		assertEquals(Validation.OK, recipe.trySetPrice("50"));
+		assertEquals(Validation.INVALID_PRICE, recipe.trySetPrice("fifty"));
+		assertEquals(Validation.INVALID_MILK, recipe.trySetAmtMilk("-1"));
+		assertEquals(Validation.INVALID_COFFEE, recipe.trySetAmtCoffee("99999999999"));
+		assertEquals(50, recipe.getPrice());
+		assertEquals(0, recipe.getAmtMilk());
+		try {
+			recipe.setAmtChocolate("1.5");
+			fail("expected RecipeException");
+		} catch (RecipeException e) {
+			assertEquals(Validation.INVALID_CHOCOLATE.getMessage(), e.getMessage());
+		}
+
+		for (Inventory inventory : new Inventory[] {new Inventory(), new LockFreeInventory()}) {
+			assertEquals(Validation.OK, inventory.tryAddCoffee("+5"));
+			assertEquals(Validation.INVALID_MILK, inventory.tryAddMilk(""));
+			assertEquals(Validation.INVALID_CHOCOLATE, inventory.tryAddInventory(1, 1, 1, -1));
+			assertEquals(20, inventory.getCoffee());
+			assertEquals(15, inventory.getMilk());
+		}
+		LockFreeInventory inventory = new LockFreeInventory();
+		assertEquals(Validation.EXCESS_MILK, inventory.tryAddMilk(Integer.toString(LockFreeInventory.MAX_UNITS)));
+		assertEquals(15, inventory.getMilk());
+	}
+
+	/**
+	 * Given oat milk and caramel registered as ingredients
+	 * When a recipe uses them alongside coffee
+	 * Then it is made only once they are stocked, takes them along
+	 * with the coffee, and a lock-free inventory refuses them.
+	 *
+	 * @throws InventoryException  if the added quantities are rejected.
+	 * @throws RecipeException  if the recipe amounts are rejected.
+	 */
+	@Test
+	public void testRegisteredIngredients() throws InventoryException, RecipeException {
+		int oatMilk = Ingredients.register("Oat milk");
+		int caramel = Ingredients.register("Caramel");
+		assertEquals(oatMilk, Ingredients.register("Oat milk"));
+		assertEquals("Caramel", Ingredients.name(caramel));
+		assertTrue(caramel >= Inventory.INGREDIENTS);
+
+		Recipe latte = new Recipe();
+		latte.setName("Oat caramel latte");
+		latte.setPrice("60");
+		latte.setAmtCoffee("2");
+		latte.setAmount(oatMilk, "3");
+		latte.setAmount(caramel, "1");
+		assertEquals(2, latte.getAmount(Inventory.COFFEE));
+
+		Inventory inventory = new Inventory();
+		assertEquals(0, inventory.getUnits(oatMilk));
+		assertFalse(inventory.useIngredients(latte));
+		inventory.addUnits(oatMilk, "5");
+		inventory.addUnits(caramel, "1");
+		assertTrue(inventory.useIngredients(latte));
+		assertEquals(13, inventory.getCoffee());
+		assertEquals(2, inventory.getUnits(oatMilk));
+		assertEquals(0, inventory.getUnits(caramel));
+		assertFalse(inventory.useIngredients(latte));
+		assertEquals(Validation.INVALID_UNITS, inventory.tryAddUnits(caramel, "-1"));
+
+		Inventory lockFree = new LockFreeInventory();
+		assertEquals(Validation.NOT_STOCKED, lockFree.tryAddUnits(oatMilk, "5"));
+		assertFalse(lockFree.useIngredients(latte));
+	}
+}
@@ -0,0 +1,205 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Unit tests for recovering a CoffeeMaker from its WriteAheadLog.
+ */
+public class WriteAheadLogTest {
+
+	private Path directory;
+	private Recipe recipe1;
+	private Recipe recipe2;
+
+	@Before
+	public void setUp() throws IOException, RecipeException {
+		directory = Files.createTempDirectory("coffeemaker");
+
+		recipe1 = new Recipe();
+		recipe1.setName("Coffee");
+		recipe1.setPrice("50");
+		recipe1.setAmtCoffee("3");
+		recipe1.setAmtMilk("1");
+
+		recipe2 = new Recipe();
+		recipe2.setName("Mocha");
+		recipe2.setPrice("75");
+		recipe2.setAmtCoffee("3");
+		recipe2.setAmtChocolate("3");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		clear();
+	}
+
+	private void clear() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	private Path lastSegment() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.toString().endsWith(".log")).sorted().reduce((a, b) -> b).get();
+		}
+	}
+
+	/**
+	 * Given a durable coffee maker that sold coffee, was restocked and
+	 * had its recipes changed
+	 * When it is reopened from the same log
+	 * Then the inventory and recipes are exactly as they were.
+	 *
+	 * @throws IOException  if the log cannot be used.
+	 * @throws InventoryException  if the added quantities are rejected.
+	 */
+	@Test
+	public void testRecoverRestoresState() throws IOException, InventoryException {
+		for (WriteAheadLog.FsyncPolicy policy : WriteAheadLog.FsyncPolicy.values()) {
+			clear();
+			WriteAheadLog log = WriteAheadLog.open(directory, policy);
+			CoffeeMaker coffeeMaker = new CoffeeMaker(new RecipeBook(), new Inventory(), log);
+			coffeeMaker.addRecipe(recipe1);
+			coffeeMaker.addRecipe(recipe2);
+			assertEquals(0, coffeeMaker.makeCoffee(0, 50));
+			coffeeMaker.addInventory("5", "0", "0", "2");
+			coffeeMaker.deleteRecipe(0);
+			coffeeMaker.makeCoffeeBatch(new int[] {1, 1}, new int[] {75, 75}, new int[2]);
+			String inventory = coffeeMaker.checkInventory();
+			log.close();
+
+			log = WriteAheadLog.open(directory, policy);
+			CoffeeMaker recovered = new CoffeeMaker(new RecipeBook(), new Inventory(), log);
+			assertEquals(inventory, recovered.checkInventory());
+			assertEquals("", recovered.getRecipes()[0].getName());
+			assertEquals("Mocha", recovered.getRecipes()[1].getName());
+			assertEquals(3, recovered.getRecipes()[1].getAmtChocolate());
+			log.close();
+		}
+	}
+
+	/**
+	 * Given a log whose last record was cut short by a crash
+	 * When it is reopened
+	 * Then every complete record is replayed and the torn one dropped.
+	 *
+	 * @throws IOException  if the log cannot be used.
+	 */
+	@Test
+	public void testTornTailIsDropped() throws IOException {
+		WriteAheadLog log = WriteAheadLog.open(directory, WriteAheadLog.FsyncPolicy.EVERY_COMMIT);
+		CoffeeMaker coffeeMaker = new CoffeeMaker(new RecipeBook(), new Inventory(), log);
+		coffeeMaker.addRecipe(recipe1);
+		assertEquals(0, coffeeMaker.makeCoffee(0, 50));
+		long complete = Files.size(lastSegment());
+		assertEquals(0, coffeeMaker.makeCoffee(0, 50));
+		log.close();
+		try (FileChannel channel = FileChannel.open(lastSegment(), StandardOpenOption.WRITE)) {
+			channel.truncate(Files.size(lastSegment()) - 3);
+		}
+
+		log = WriteAheadLog.open(directory, WriteAheadLog.FsyncPolicy.EVERY_COMMIT);
+		CoffeeMaker recovered = new CoffeeMaker(new RecipeBook(), new Inventory(), log);
+		assertEquals(12, recovered.checkInventory(new InventorySnapshot()).getCoffee());
+		assertEquals(complete, Files.size(lastSegment()));
+		log.close();
+	}
+
+	/**
+	 * Given a durable coffee maker that took a checkpoint and then
+	 * kept selling
+	 * When it is reopened
+	 * Then the snapshot and the log after it give back the same state,
+	 * and only the segment after the checkpoint is kept.
+	 *
+	 * @throws IOException  if the log cannot be used.
+	 * @throws InventoryException  if the added quantities are rejected.
+	 */
+	@Test
+	public void testRecoverFromCheckpoint() throws IOException, InventoryException {
+		WriteAheadLog log = WriteAheadLog.open(directory, WriteAheadLog.FsyncPolicy.NEVER);
+		log.setCheckpointInterval(0);
+		CoffeeMaker coffeeMaker = new CoffeeMaker(new RecipeBook(), new Inventory(), log);
+		coffeeMaker.addRecipe(recipe1);
+		coffeeMaker.addRecipe(recipe2);
+		assertEquals(0, coffeeMaker.makeCoffee(1, 75));
+		coffeeMaker.addInventory("5", "0", "0", "2");
+		coffeeMaker.checkpoint();
+		assertEquals(0, coffeeMaker.makeCoffee(0, 50));
+		coffeeMaker.deleteRecipe(1);
+		String inventory = coffeeMaker.checkInventory();
+		log.close();
+
+		log = WriteAheadLog.open(directory, WriteAheadLog.FsyncPolicy.NEVER);
+		CoffeeMaker recovered = new CoffeeMaker(new RecipeBook(), new Inventory(), log);
+		assertEquals(inventory, recovered.checkInventory());
+		assertEquals("Coffee", recovered.getRecipes()[0].getName());
+		assertEquals("", recovered.getRecipes()[1].getName());
+		assertEquals(0, recovered.makeCoffee(0, 50));
+		log.close();
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(1, files.filter(file -> file.toString().endsWith(".log")).count());
+		}
+	}
+
+	/**
+	 * Given a durable coffee maker with a recipe using a registered
+	 * ingredient, restocked with it and selling that recipe
+	 * When it is reopened, takes a checkpoint, sells again and is
+	 * reopened once more
+	 * Then the registered ingredient's stock and the recipe's amount
+	 * of it survive both the log and the snapshot.
+	 *
+	 * @throws IOException  if the log cannot be used.
+	 * @throws RecipeException  if an amount cannot be parsed.
+	 */
+	@Test
+	public void testRecoverRegisteredIngredients() throws IOException, RecipeException {
+		int vanilla = Ingredients.register("Vanilla");
+		Recipe latte = new Recipe();
+		latte.setName("Vanilla Latte");
+		latte.setPrice("60");
+		latte.setAmtCoffee("1");
+		latte.setAmount(vanilla, "2");
+		WriteAheadLog log = WriteAheadLog.open(directory, WriteAheadLog.FsyncPolicy.NEVER);
+		CoffeeMaker coffeeMaker = new CoffeeMaker(new RecipeBook(), new Inventory(), log);
+		coffeeMaker.addRecipe(latte);
+		assertEquals(Validation.OK, coffeeMaker.tryAddUnits(vanilla, "9"));
+		assertEquals(0, coffeeMaker.makeCoffee(0, 60));
+		assertEquals(1, coffeeMaker.makeCoffeeBatch(new int[] {0}, new int[] {60}, new int[1]));
+		log.close();
+
+		log = WriteAheadLog.open(directory, WriteAheadLog.FsyncPolicy.NEVER);
+		Inventory inventory = new Inventory();
+		CoffeeMaker recovered = new CoffeeMaker(new RecipeBook(), inventory, log);
+		assertEquals(5, inventory.getUnits(vanilla));
+		assertEquals(2, recovered.getRecipes()[0].getAmount(vanilla));
+		recovered.checkpoint();
+		assertEquals(0, recovered.makeCoffee(0, 60));
+		log.close();
+
+		log = WriteAheadLog.open(directory, WriteAheadLog.FsyncPolicy.NEVER);
+		inventory = new Inventory();
+		recovered = new CoffeeMaker(new RecipeBook(), inventory, log);
+		assertEquals(3, inventory.getUnits(vanilla));
+		assertEquals(12, inventory.getCoffee());
+		assertEquals(2, recovered.getRecipes()[0].getAmount(vanilla));
+		log.close();
+	}
+}